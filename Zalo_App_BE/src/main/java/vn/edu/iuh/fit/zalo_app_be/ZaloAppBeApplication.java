@@ -3,9 +3,11 @@ package vn.edu.iuh.fit.zalo_app_be;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableMongoAuditing
+@EnableMongoAuditing(dateTimeProviderRef = "auditingDateTimeProvider")
+@EnableScheduling
 public class ZaloAppBeApplication {
 
     public static void main(String[] args) {
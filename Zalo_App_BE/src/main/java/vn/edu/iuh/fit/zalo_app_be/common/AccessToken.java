@@ -0,0 +1,13 @@
+package vn.edu.iuh.fit.zalo_app_be.common;
+
+import java.time.Instant;
+
+/**
+ * A verified access token together with the claims a STOMP session needs, so later frames can
+ * be checked against it without parsing the JWT again.
+ */
+public record AccessToken(String token, String username, String userId, Instant expiresAt) {
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !now.isBefore(expiresAt);
+    }
+}
@@ -0,0 +1,32 @@
+package vn.edu.iuh.fit.zalo_app_be.common;
+
+/**
+ * Canonical conversation key stored on every message: the group id for group chats,
+ * otherwise the two user ids in sorted order so both directions map to the same key.
+ */
+public final class ConversationKeys {
+    private static final String SEPARATOR = "_";
+
+    private ConversationKeys() {
+    }
+
+    public static String direct(String userId, String otherUserId) {
+        return userId.compareTo(otherUserId) <= 0
+                ? userId + SEPARATOR + otherUserId
+                : otherUserId + SEPARATOR + userId;
+    }
+
+    public static String group(String groupId) {
+        return groupId;
+    }
+
+    public static String of(String senderId, String receiverId, String groupId) {
+        if (groupId != null) {
+            return group(groupId);
+        }
+        if (senderId == null || receiverId == null) {
+            return null;
+        }
+        return direct(senderId, receiverId);
+    }
+}
@@ -0,0 +1,36 @@
+package vn.edu.iuh.fit.zalo_app_be.common;
+
+import vn.edu.iuh.fit.zalo_app_be.exception.InvalidDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Opaque position inside a conversation, ordered by (createdAt, id).
+ * Encoded as url-safe base64 of "createdAt|id" so clients just echo it back.
+ * <p>
+ * The catch-up stream reuses the encoding for (updatedAt, id) positions. A history cursor is a
+ * valid starting point there too, since no message is updated before it was created.
+ */
+public record MessageCursor(LocalDateTime createdAt, String id) {
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int idx = raw.lastIndexOf(SEPARATOR);
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, idx)), raw.substring(idx + 1));
+        } catch (Exception e) {
+            throw new InvalidDataException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -33,7 +33,7 @@ import static org.springframework.security.config.http.SessionCreationPolicy.STA
 @RequiredArgsConstructor
 public class AppConfig {
 
-    private final String[] whitelistedUrls = {"/auth/**", "/ws/**"};
+    private final String[] whitelistedUrls = {"/auth/**", "/ws/**", "/ws-native"};
 
     private final CustomizeRequestFilter requestFilter;
 
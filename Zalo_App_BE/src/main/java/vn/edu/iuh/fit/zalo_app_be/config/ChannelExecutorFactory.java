@@ -0,0 +1,187 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the executors behind the STOMP inbound, outbound and broker channels from
+ * {@code app.websocket.executors.{channel}.*}. Each channel runs in one of three modes:
+ * <ul>
+ *     <li>{@code direct}: no executor, messages are handled on the sending thread</li>
+ *     <li>{@code pool}: a bounded pool that grows from core to max size once the queue is full.
+ *     What happens beyond that is set by {@code saturation}: {@code reject} fails the send, which
+ *     on the inbound channel drops the frame and answers the client with an ERROR frame;
+ *     {@code caller-runs} handles the message on the sending thread, which is what
+ *     {@code ExecutorSubscribableChannel} does with any rejected task, so it slows the sender down
+ *     instead of losing the message</li>
+ *     <li>{@code virtual}: one virtual thread per message, capped at {@code max-concurrency}
+ *     in flight. Needs Java 21</li>
+ * </ul>
+ * Every executor reports active tasks, queue wait and rejections tagged with its channel,
+ * plus pool size and queue depth in pool mode.
+ */
+@Component
+@Slf4j(topic = "CHANNEL-EXECUTORS")
+public class ChannelExecutorFactory {
+    private static final String PREFIX = "app.websocket.executors.";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final List<ThreadPoolTaskExecutor> pools = new ArrayList<>();
+    private final List<SimpleAsyncTaskExecutor> virtualExecutors = new ArrayList<>();
+
+    public ChannelExecutorFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public enum Mode {
+        DIRECT, POOL, VIRTUAL
+    }
+
+    public enum Saturation {
+        REJECT, CALLER_RUNS
+    }
+
+    /**
+     * Thrown when a pool in {@code reject} mode is full. Deliberately not a
+     * {@link RejectedExecutionException}, which the channel would answer by running the task inline.
+     */
+    public static class ChannelSaturatedException extends RuntimeException {
+        public ChannelSaturatedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Executor for {@code channel}, or null in direct mode. The defaults apply to settings
+     * missing from the configuration.
+     */
+    public Executor create(String channel, Mode defaultMode, Saturation defaultSaturation,
+                           int defaultCoreSize, int defaultMaxSize, int defaultQueueCapacity) {
+        String mode = environment.getProperty(PREFIX + channel + ".mode", defaultMode.name());
+        return switch (Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT))) {
+            case DIRECT -> {
+                log.info("STOMP {} channel runs on the sending thread", channel);
+                yield null;
+            }
+            case POOL -> pool(channel, saturation(channel, defaultSaturation),
+                    property(channel, "core-pool-size", defaultCoreSize),
+                    property(channel, "max-pool-size", defaultMaxSize),
+                    property(channel, "queue-capacity", defaultQueueCapacity),
+                    property(channel, "keep-alive-seconds", 60));
+            case VIRTUAL -> virtual(channel, property(channel, "max-concurrency", 1000));
+        };
+    }
+
+    private ThreadPoolTaskExecutor pool(String channel, Saturation saturation, int coreSize, int maxSize, int queueCapacity, int keepAliveSeconds) {
+        Metrics metrics = new Metrics(channel);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("stomp-" + channel + "-");
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(Math.max(coreSize, maxSize));
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setTaskDecorator(metrics);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            metrics.rejected.increment();
+            if (saturation == Saturation.REJECT) {
+                throw new ChannelSaturatedException("STOMP " + channel + " executor is saturated");
+            }
+            // The channel runs rejected tasks on the sending thread
+            throw new RejectedExecutionException("STOMP " + channel + " executor is saturated");
+        });
+        executor.initialize();
+
+        Tags tags = Tags.of("channel", channel);
+        Gauge.builder("chat.websocket.executor.pool_size", executor, ThreadPoolTaskExecutor::getPoolSize).tags(tags).register(meterRegistry);
+        Gauge.builder("chat.websocket.executor.max_pool_size", executor, ThreadPoolTaskExecutor::getMaxPoolSize).tags(tags).register(meterRegistry);
+        Gauge.builder("chat.websocket.executor.queued", executor, ThreadPoolTaskExecutor::getQueueSize).tags(tags).register(meterRegistry);
+        Gauge.builder("chat.websocket.executor.queue_capacity", executor, ThreadPoolTaskExecutor::getQueueCapacity).tags(tags).register(meterRegistry);
+        pools.add(executor);
+        log.info("STOMP {} channel runs on a pool of {}..{} threads with a queue of {}, {} when full",
+                channel, coreSize, executor.getMaxPoolSize(), queueCapacity, saturation.name().toLowerCase(Locale.ROOT));
+        return executor;
+    }
+
+    private SimpleAsyncTaskExecutor virtual(String channel, int maxConcurrency) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("stomp-" + channel + "-");
+        try {
+            executor.setVirtualThreads(true);
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("Virtual threads need Java 21, set " + PREFIX + channel + ".mode to pool", e);
+        }
+        // Past the limit the submitting thread waits, which pushes back on the client connection
+        executor.setConcurrencyLimit(maxConcurrency);
+        executor.setTaskDecorator(new Metrics(channel));
+        Gauge.builder("chat.websocket.executor.max_concurrency", () -> maxConcurrency)
+                .tags(Tags.of("channel", channel)).register(meterRegistry);
+        virtualExecutors.add(executor);
+        log.info("STOMP {} channel runs on virtual threads, at most {} at once", channel, maxConcurrency);
+        return executor;
+    }
+
+    private Saturation saturation(String channel, Saturation defaultSaturation) {
+        String saturation = environment.getProperty(PREFIX + channel + ".saturation", defaultSaturation.name());
+        return Saturation.valueOf(saturation.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    private int property(String channel, String name, int defaultValue) {
+        return environment.getProperty(PREFIX + channel + "." + name, Integer.class, defaultValue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.forEach(ThreadPoolTaskExecutor::shutdown);
+        virtualExecutors.forEach(SimpleAsyncTaskExecutor::close);
+    }
+
+    /**
+     * Wraps each task to measure how long it waited and how many run at once.
+     */
+    private class Metrics implements TaskDecorator {
+        private final AtomicInteger active = new AtomicInteger();
+        private final Timer wait;
+        private final Counter rejected;
+
+        Metrics(String channel) {
+            Tags tags = Tags.of("channel", channel);
+            Gauge.builder("chat.websocket.executor.active", active, AtomicInteger::get).tags(tags).register(meterRegistry);
+            this.wait = Timer.builder("chat.websocket.executor.wait").tags(tags).register(meterRegistry);
+            this.rejected = Counter.builder("chat.websocket.executor.rejected").tags(tags).register(meterRegistry);
+        }
+
+        @Override
+        public Runnable decorate(Runnable task) {
+            long submitted = System.nanoTime();
+            return () -> {
+                wait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.auditing.DateTimeProvider;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+@Configuration
+public class MongoConfig {
+    /**
+     * Mongo stores dates with millisecond precision, so audit timestamps are truncated up front.
+     * This keeps the in-memory value of a freshly saved document equal to what is read back,
+     * which history cursors built on createdAt rely on.
+     */
+    @Bean
+    public DateTimeProvider auditingDateTimeProvider() {
+        return () -> Optional.of(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+    }
+}
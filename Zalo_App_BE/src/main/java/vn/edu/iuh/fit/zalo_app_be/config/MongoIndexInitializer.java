@@ -0,0 +1,48 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes declared with @Indexed / @CompoundIndex once the app is up.
+ * Auto index creation is off, and doing it here on a background thread keeps startup
+ * independent of the database being reachable.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j(topic = "MONGO-INDEX-INITIALIZER")
+public class MongoIndexInitializer {
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread worker = new Thread(this::ensureIndexes, "mongo-index-initializer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void ensureIndexes() {
+        var mappingContext = mongoTemplate.getConverter().getMappingContext();
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            try {
+                IndexOperations indexOps = mongoTemplate.indexOps(entity.getType());
+                resolver.resolveIndexFor(entity.getType()).forEach(indexOps::ensureIndex);
+            } catch (Exception e) {
+                log.error("Failed to ensure indexes for {}: {}", entity.getCollection(), e.getMessage());
+            }
+        }
+        log.info("Mongo indexes ensured");
+    }
+}
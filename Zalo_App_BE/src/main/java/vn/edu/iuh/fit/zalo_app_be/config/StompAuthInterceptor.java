@@ -0,0 +1,150 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.common.AccessToken;
+import vn.edu.iuh.fit.zalo_app_be.model.User;
+import vn.edu.iuh.fit.zalo_app_be.service.JwtService;
+import vn.edu.iuh.fit.zalo_app_be.service.UserServiceDetail;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.RevokedTokenRegistry;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Authenticates a STOMP session once, on CONNECT: the JWT is verified, the user loaded and bound
+ * to the session as its Principal. SEND and SUBSCRIBE frames are then authorized from session
+ * state only, the token's expiry and revocation are checked in memory.
+ * <p>
+ * A frame may carry a newer token in its Authorization header, it replaces the session's token
+ * when it belongs to the same user. Rejected frames throw, which makes Spring answer the client
+ * with an ERROR frame.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j(topic = "STOMP-AUTH")
+public class StompAuthInterceptor implements ChannelInterceptor {
+    public static final String USER_ID_ATTRIBUTE = "userId";
+    private static final String TOKEN_ATTRIBUTE = "accessToken";
+    private static final String USER_PREFIX = "/user/";
+
+    private final JwtService jwtService;
+    private final UserServiceDetail userServiceDetail;
+    private final RevokedTokenRegistry revokedTokenRegistry;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            authenticate(accessor);
+        } else if (StompCommand.SEND.equals(command) || StompCommand.SUBSCRIBE.equals(command)) {
+            authorize(accessor, command);
+        }
+        return message;
+    }
+
+    private void authenticate(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = sessionAttributes(accessor);
+        AccessToken token = verify(bearerToken(accessor));
+        if (token == null) {
+            log.warn("Missing JWT token on CONNECT, sessionId={}", accessor.getSessionId());
+            throw new AccessDeniedException("Missing JWT token");
+        }
+
+        User user = (User) userServiceDetail.userDetailsService().loadUserByUsername(token.username());
+        if (user == null) {
+            log.warn("User not found for username: {}, sessionId={}", token.username(), accessor.getSessionId());
+            throw new AccessDeniedException("User not found");
+        }
+        String claimedUserId = accessor.getFirstNativeHeader(USER_ID_ATTRIBUTE);
+        if (claimedUserId != null && !claimedUserId.equals(user.getId())) {
+            log.warn("CONNECT claims userId {} but token belongs to {}, sessionId={}", claimedUserId, user.getId(), accessor.getSessionId());
+            throw new AccessDeniedException("Token does not belong to user " + claimedUserId);
+        }
+
+        accessor.setUser(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        attributes.put(USER_ID_ATTRIBUTE, user.getId());
+        attributes.put(TOKEN_ATTRIBUTE, token);
+        log.info("Authenticated user: {} ({}), sessionId={}", user.getUsername(), user.getId(), accessor.getSessionId());
+    }
+
+    private void authorize(StompHeaderAccessor accessor, StompCommand command) {
+        Map<String, Object> attributes = sessionAttributes(accessor);
+        Principal principal = accessor.getUser();
+        String userId = (String) attributes.get(USER_ID_ATTRIBUTE);
+        if (principal == null || userId == null) {
+            throw new AccessDeniedException("Session is not authenticated");
+        }
+
+        AccessToken token = (AccessToken) attributes.get(TOKEN_ATTRIBUTE);
+        String header = bearerToken(accessor);
+        if (header != null && !header.equals(token.token())) {
+            token = renew(attributes, header, userId);
+        }
+        if (token.isExpired(Instant.now())) {
+            throw new AccessDeniedException("Access token expired");
+        }
+        if (revokedTokenRegistry.isRevoked(token.token())) {
+            throw new AccessDeniedException("Access Denied, token is blacklisted");
+        }
+
+        if (StompCommand.SUBSCRIBE.equals(command)) {
+            String destination = accessor.getDestination();
+            if (destination != null && destination.startsWith(USER_PREFIX)
+                    && !destination.startsWith(USER_PREFIX + userId + "/")) {
+                log.warn("User {} tried to subscribe to {}", userId, destination);
+                throw new AccessDeniedException("Cannot subscribe to another user's queue");
+            }
+        }
+    }
+
+    private AccessToken renew(Map<String, Object> attributes, String header, String userId) {
+        AccessToken renewed = verify(header);
+        if (!userId.equals(renewed.userId())) {
+            throw new AccessDeniedException("Token does not belong to the session's user");
+        }
+        attributes.put(TOKEN_ATTRIBUTE, renewed);
+        return renewed;
+    }
+
+    private AccessToken verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            return jwtService.verifyAccessToken(token);
+        } catch (Exception e) {
+            throw new AccessDeniedException("Invalid JWT token: " + e.getMessage());
+        }
+    }
+
+    private String bearerToken(StompHeaderAccessor accessor) {
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return null;
+        }
+        return authHeader.substring(7).trim();
+    }
+
+    private Map<String, Object> sessionAttributes(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null) {
+            throw new AccessDeniedException("No session attributes for session " + accessor.getSessionId());
+        }
+        return attributes;
+    }
+}
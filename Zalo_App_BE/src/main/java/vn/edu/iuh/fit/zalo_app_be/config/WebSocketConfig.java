@@ -5,41 +5,55 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.messaging.simp.stomp.StompCommand;
-import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
-import org.springframework.messaging.support.MessageBuilder;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.config.annotation.web.socket.AbstractSecurityWebSocketMessageBrokerConfigurer;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
-import vn.edu.iuh.fit.zalo_app_be.common.TokenType;
-import vn.edu.iuh.fit.zalo_app_be.service.JwtService;
-import vn.edu.iuh.fit.zalo_app_be.service.UserServiceDetail;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.BinaryFrameCodec;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.ClusterFanout;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.OutboundBackpressure;
+
+import java.util.List;
+import java.util.concurrent.Executor;
 
 @Configuration
 @EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 @Slf4j(topic = "WEB-SOCKET-CONFIG")
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
-    private final JwtService jwtService;
-    private final UserServiceDetail userServiceDetail;
+    private final StompAuthInterceptor stompAuthInterceptor;
+    private final ClusterFanout clusterFanout;
+    private final ChannelExecutorFactory channelExecutorFactory;
+    private final OutboundBackpressure outboundBackpressure;
+    private final BinaryFrameCodec binaryFrameCodec;
 
     @Value("${app.frontend.url}")
     private String urlFrontend;
 
+    @Value("${app.websocket.transport.send-time-limit-ms:15000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${app.websocket.transport.send-buffer-size-limit-kb:1024}")
+    private int sendBufferSizeLimitKb;
+
+    @Value("${app.websocket.transport.message-size-limit-kb:128}")
+    private int messageSizeLimitKb;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/user", "/queue", "/topic");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // Relays application messages to the other instances, see ClusterFanout
+        config.configureBrokerChannel().interceptors(clusterFanout);
+        Executor brokerExecutor = channelExecutorFactory.create("broker", ChannelExecutorFactory.Mode.DIRECT,
+                ChannelExecutorFactory.Saturation.CALLER_RUNS, 4, 16, 10000);
+        if (brokerExecutor != null) {
+            config.configureBrokerChannel().executor(brokerExecutor);
+        }
     }
 
     @Override
@@ -48,80 +62,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOrigins(urlFrontend)
                 .setAllowedOriginPatterns("http://localhost:*")
                 .withSockJS();
+        // Plain WebSocket without SockJS framing, the only endpoint that can negotiate binary CBOR frames
+        registry.addEndpoint("/ws-native")
+                .setAllowedOrigins(urlFrontend)
+                .setAllowedOriginPatterns("http://localhost:*")
+                .addInterceptors(binaryFrameCodec.nativeTransport());
     }
 
     @Override
-    public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(new ChannelInterceptor() {
-            @Override
-            public Message<?> preSend(Message<?> message, MessageChannel channel) {
-                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
-                StompCommand command = accessor.getCommand();
-                log.info("Command: {}", command);
-                String destination = accessor.getDestination();
-                String sessionId = accessor.getSessionId();
-                String authHeader = accessor.getFirstNativeHeader("Authorization");
-                log.debug("Processing STOMP frame: command={}, destination={}, headers={}",
-                        command, destination, accessor.getNativeHeader("Authorization"));
-
-                if (command == null) {
-                    log.error("Invalid STOMP frame: null command, sessionId={}", sessionId);
-                    StompHeaderAccessor error = StompHeaderAccessor.create(StompCommand.ERROR);
-                    error.setMessage("Invalid STOMP frame: null command");
-                    error.setSessionId(sessionId);
-                    return MessageBuilder.createMessage(new byte[0], error.getMessageHeaders());
-                }
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Only used for frames sent as application/cbor, JSON stays the default
+        messageConverters.add(binaryFrameCodec.messageConverter());
+        return true;
+    }
 
-                if (StompCommand.CONNECT.equals(command) || StompCommand.SEND.equals(command) || StompCommand.SUBSCRIBE.equals(command)) {
-                    if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                        String token = authHeader.substring(7).trim();
-                        try {
-                            String username = jwtService.extractUsername(token, TokenType.ACCESS_TOKEN);
-                            UserDetails userDetails = userServiceDetail.userDetailsService().loadUserByUsername(username);
-                            log.info("Authenticated user: {} for command {}, sessionId = {}", userDetails.getUsername(), command, sessionId);
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Authenticates on CONNECT only, later frames are checked against the session, see StompAuthInterceptor
+        registration.interceptors(stompAuthInterceptor, binaryFrameCodec);
+        // Handlers block on Mongo and Cloudinary, a bounded pool or virtual threads keep one slow
+        // write from holding up every other session. A full pool rejects the frame with an ERROR
+        // frame rather than running the handler on the transport thread
+        Executor executor = channelExecutorFactory.create("inbound", ChannelExecutorFactory.Mode.POOL,
+                ChannelExecutorFactory.Saturation.REJECT, 16, 64, 1000);
+        if (executor != null) {
+            registration.executor(executor);
+        }
+    }
 
-                            if (userDetails == null) {
-                                log.error("User not found for username: {}, sessionId={}", username, sessionId);
-                                StompHeaderAccessor error = StompHeaderAccessor.create(StompCommand.ERROR);
-                                error.setMessage("User not found");
-                                error.setSessionId(sessionId);
-                                return MessageBuilder.createMessage(new byte[0], error.getMessageHeaders());
-                            }
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Hard limits per session. OutboundBackpressure acts on slow clients well before these,
+        // exceeding them closes the session without a resume cursor
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimitKb * 1024)
+                .setMessageSizeLimit(messageSizeLimitKb * 1024)
+                .addDecoratorFactory(outboundBackpressure);
+    }
 
-                            SecurityContextHolder.getContext().setAuthentication(
-                                    new UsernamePasswordAuthenticationToken(
-                                            userDetails,
-                                            null,
-                                            userDetails.getAuthorities()
-                                    )
-                            );
-                            
-                            // Lưu userId vào session attributes để dùng trong event listener
-                            if (StompCommand.CONNECT.equals(command)) {
-                                String userId = accessor.getFirstNativeHeader("userId");
-                                if (userId != null && accessor.getSessionAttributes() != null) {
-                                    accessor.getSessionAttributes().put("userId", userId);
-                                    log.info("Stored userId in session: {}", userId);
-                                }
-                            }
-                        } catch (Exception e) {
-                            StompHeaderAccessor error = StompHeaderAccessor.create(StompCommand.ERROR);
-                            error.setMessage("Invalid JWT token: " + e.getMessage());
-                            error.setSessionId(accessor.getSessionId());
-                            return MessageBuilder.createMessage(new byte[0], error.getMessageHeaders());
-                        }
-                    } else {
-                        log.error("Missing or invalid Authorization header for command {}, sessionId={}: {}",
-                                command, sessionId, authHeader);
-                        StompHeaderAccessor error = StompHeaderAccessor.create(StompCommand.ERROR);
-                        error.setMessage("Missing JWT token");
-                        error.setSessionId(sessionId);
-                        return MessageBuilder.createMessage(new byte[0], error.getMessageHeaders());
-                    }
-                }
-                log.debug("Forwarding STOMP frame: command={}, destination={}", command, destination);
-                return message;
-            }
-        });
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(outboundBackpressure, binaryFrameCodec);
+        // A full pool writes on the sending thread, dropping chat frames would lose them for good
+        Executor executor = channelExecutorFactory.create("outbound", ChannelExecutorFactory.Mode.POOL,
+                ChannelExecutorFactory.Saturation.CALLER_RUNS, 8, 32, 10000);
+        if (executor != null) {
+            registration.executor(executor);
+        }
     }
-}
\ No newline at end of file
+}
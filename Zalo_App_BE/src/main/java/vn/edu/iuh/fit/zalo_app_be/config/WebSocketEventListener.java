@@ -6,14 +6,16 @@ import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 import vn.edu.iuh.fit.zalo_app_be.common.UserActiveStatus;
 import vn.edu.iuh.fit.zalo_app_be.model.User;
 import vn.edu.iuh.fit.zalo_app_be.repository.UserRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.ClusterFanout;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.OutboundBackpressure;
 
-import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,23 +28,20 @@ public class WebSocketEventListener {
     
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterFanout clusterFanout;
 
     @EventListener
-    public void handleWebSocketConnectListener(SessionConnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        
-        // Lấy userId từ header thay vì Principal
-        String userId = headerAccessor.getFirstNativeHeader("userId");
+    public void handleWebSocketConnectListener(SessionConnectedEvent event) {
+        // Published once StompAuthInterceptor accepted the CONNECT, the user is the verified Principal
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        String userId = event.getUser() instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User principal ? principal.getId() : null;
         
-        log.info("WebSocket CONNECT event received. UserId from header: {}", userId);
+        log.info("WebSocket CONNECTED event received. UserId: {}", userId);
         
         if (userId != null && !userId.isEmpty()) {
             log.info("User connected with ID: {}", userId);
-            
-            // Lưu userId vào session attributes để dùng khi disconnect
-            if (headerAccessor.getSessionAttributes() != null) {
-                headerAccessor.getSessionAttributes().put("userId", userId);
-            }
+            clusterFanout.sessionOpened(sessionId, userId);
             
             // Tìm user theo ID
             Optional<User> userOptional = userRepository.findById(userId);
@@ -59,7 +58,7 @@ public class WebSocketEventListener {
                 log.warn("User not found in database with ID: {}", userId);
             }
         } else {
-            log.warn("UserId header is missing in connect event");
+            log.warn("Connected session has no authenticated user, sessionId={}", sessionId);
         }
     }
 
@@ -71,6 +70,7 @@ public class WebSocketEventListener {
         String userId = (String) headerAccessor.getSessionAttributes().get("userId");
         
         log.info("WebSocket DISCONNECT event received. UserId: {}", userId);
+        clusterFanout.sessionClosed(event.getSessionId());
         
         if (userId != null && !userId.isEmpty()) {
             log.info("User disconnected with ID: {}", userId);
@@ -106,7 +106,8 @@ public class WebSocketEventListener {
         // Gửi thông báo tới tất cả friends qua endpoint /queue/status
         for (String friendId : friendIds) {
             try {
-                messagingTemplate.convertAndSendToUser(friendId, "/queue/status", statusChangeMessage);
+                messagingTemplate.convertAndSendToUser(friendId, "/queue/status", statusChangeMessage,
+                        Map.<String, Object>of(OutboundBackpressure.COALESCE_KEY_HEADER, userId));
                 log.debug("Sent status change notification to friend: {}", friendId);
             } catch (Exception e) {
                 log.error("Failed to send status change to friend {}: {}", friendId, e.getMessage());
@@ -6,19 +6,30 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.ReadUpToRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.SyncRequest;
 import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.User;
 import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageSyncService;
 import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
 
+import java.security.Principal;
+import java.util.List;
+
 @Controller
 @RequiredArgsConstructor
 @Slf4j(topic = "CHAT-CONTROLLER")
 public class ChatController {
     private final WebSocketService webSocketService;
     private final MessageService messageService;
+    private final MessageSyncService messageSyncService;
 
     @MessageMapping("/chat.send")
     public void sendMessage(@Payload MessageRequest request) {
@@ -33,33 +44,80 @@ public class ChatController {
                 throw new RuntimeException("Invalid message request: missing receiverId or groupId");
             }
 
-            MessageResponse response = messageService.saveMessage(request);
+            // Delivery runs when the group commit containing this message completes, not on the inbound thread
+            messageService.saveMessageAsync(request).whenComplete((result, error) -> {
+                if (error != null) {
+                    log.error("Error persisting message: sender={}, receiver={}, error={}",
+                            request.getSenderId(), request.getReceiverId(), error.getMessage());
+                    return;
+                }
+                if (result.duplicate()) {
+                    // Resent after a reconnect: only the sender learns the original id, nothing is fanned out again
+                    acknowledge(request, result.response());
+                    return;
+                }
+                deliver(request, result.response());
+            });
+        } catch (Exception e) {
+            log.error("Error processing message: sender={}, receiver={}, error={}",
+                    request.getSenderId(), request.getReceiverId(), e.getMessage());
+            throw e;
+        }
 
-            request.setId(response.getId());
-            request.setRecalled(response.isRecalled());
-            request.setDeletedByUsers(response.getDeletedByUsers());
-            request.setSenderId(request.getSenderId());
-            request.setReceiverId(request.getReceiverId());
-            request.setGroupId(request.getGroupId());
-            request.setContent(request.getContent());
-            request.setType(request.getType() != null ? request.getType() : MessageType.TEXT);
+    }
 
-            if (request.getGroupId() != null) {
-                webSocketService.sendGroupMessage(request);
-                log.info("Group message sent from {} to group {}: {}",
-                        request.getSenderId(), request.getGroupId(), request.getContent());
-            } else {
-                webSocketService.sendMessage(request);
-                log.info("Message sent from {} to {}: {}",
-                        request.getSenderId(), request.getReceiverId(), request.getContent());
-            }
+    private void deliver(MessageRequest request, MessageResponse response) {
+        request.setId(response.getId());
+        request.setSeq(response.getSeq());
+        request.setRecalled(response.isRecalled());
+        request.setDeletedByUsers(response.getDeletedByUsers());
+        request.setType(request.getType() != null ? request.getType() : MessageType.TEXT);
+
+        if (request.getGroupId() != null) {
+            webSocketService.sendGroupMessage(request);
+            log.info("Group message sent from {} to group {}: {}",
+                    request.getSenderId(), request.getGroupId(), request.getContent());
+        } else {
+            webSocketService.sendMessage(request);
+            log.info("Message sent from {} to {}: {}",
+                    request.getSenderId(), request.getReceiverId(), request.getContent());
+        }
+    }
 
+    private void acknowledge(MessageRequest request, MessageResponse original) {
+        request.setId(original.getId());
+        request.setSeq(original.getSeq());
+        request.setRecalled(original.isRecalled());
+        request.setDeletedByUsers(original.getDeletedByUsers());
+        request.setType(original.getType());
+        webSocketService.acknowledgeSend(request);
+        log.info("Duplicate send from {} acknowledged with message {}", request.getSenderId(), original.getId());
+    }
+
+    @MessageMapping("/chat.sync")
+    public void sync(@Payload SyncRequest request, Principal principal) {
+        // The session's verified user, a userId in the payload is ignored
+        String userId = sessionUserId(principal);
+        log.debug("Processing sync request: userId={}, conversations={}",
+                userId, request.getConversations() != null ? request.getConversations().size() : 0);
+        try {
+            messageSyncService.stream(userId, request);
         } catch (Exception e) {
-            log.error("Error processing message: sender={}, receiver={}, error={}",
-                    request.getSenderId(), request.getReceiverId(), e.getMessage());
+            log.error("Error processing sync request: userId={}, error={}", userId, e.getMessage());
             throw e;
         }
+    }
 
+    /**
+     * Id of the user the session authenticated as at CONNECT.
+     */
+    private String sessionUserId(Principal principal) {
+        String userId = principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+        if (userId == null) {
+            throw new AccessDeniedException("Session is not authenticated");
+        }
+        return userId;
     }
 
     @MessageMapping("/chat.recall")
@@ -74,11 +132,11 @@ public class ChatController {
                 throw new RuntimeException("Invalid recall message request: missing messageId or userId");
             }
 
-            messageService.recallMessage(messageId, userId);
+            MessageResponse response = messageService.recallMessage(messageId, userId);
             if (request.getGroupId() != null) {
-                webSocketService.notifyGroupRecall(messageId, userId, request.getGroupId());
+                webSocketService.notifyGroupRecall(response, userId, request.getGroupId());
             } else {
-                webSocketService.notifyRecall(messageId, userId);
+                webSocketService.notifyRecall(response, userId);
             }
             log.info("Message recalled: messageId={}, userId={}",
                     messageId, userId);
@@ -101,11 +159,11 @@ public class ChatController {
                 throw new RuntimeException("Invalid delete message request: missing messageId or userId");
             }
 
-            messageService.deleteMessage(messageId, userId);
+            MessageResponse response = messageService.deleteMessage(messageId, userId);
             if (request.getGroupId() != null) {
-                webSocketService.notifyGroupDelete(messageId, userId, request.getGroupId());
+                webSocketService.notifyGroupDelete(response, userId, request.getGroupId());
             } else {
-                webSocketService.notifyDelete(messageId, userId);
+                webSocketService.notifyDelete(response, userId);
             }
             log.info("Message deleted: messageId={}, userId={}",
                     messageId, userId);
@@ -117,17 +175,18 @@ public class ChatController {
     }
 
     @MessageMapping("/chat.forward")
-    public void forwardMessage(@Payload MessageRequest request) {
+    public void forwardMessage(@Payload MessageRequest request, Principal principal) {
         String messageId = request.getId();
-        String userId = request.getSenderId();
+        // Visibility of the source is checked for this user, a senderId in the payload is ignored
+        String userId = sessionUserId(principal);
         String receiverId = request.getReceiverId();
         String groupId = request.getGroupId();
 
         log.debug("Processing forward message request: messageId={}, userId={}, receiverId={}, groupId={}",
                 messageId, userId, receiverId, groupId);
         try {
-            if (messageId == null || userId == null || (receiverId == null && groupId == null)) {
-                throw new RuntimeException("Invalid forward message request: missing messageId, userId or receiverId");
+            if (messageId == null || (receiverId == null && groupId == null)) {
+                throw new RuntimeException("Invalid forward message request: missing messageId or receiverId");
             }
 
             MessageResponse response = messageService.forwardMessage(messageId, userId, receiverId, groupId);
@@ -145,6 +204,37 @@ public class ChatController {
         }
     }
 
+    @MessageMapping("/chat.forward-many")
+    public void forwardMessageToMany(@Payload MessageRequest request, Principal principal) {
+        String messageId = request.getId();
+        String userId = sessionUserId(principal);
+        List<String> receiverIds = request.getReceiverIds() != null ? request.getReceiverIds() : List.of();
+        List<String> groupIds = request.getGroupIds() != null ? request.getGroupIds() : List.of();
+
+        log.debug("Processing multi forward request: messageId={}, userId={}, receivers={}, groups={}",
+                messageId, userId, receiverIds.size(), groupIds.size());
+        try {
+            if (messageId == null || (receiverIds.isEmpty() && groupIds.isEmpty())) {
+                throw new RuntimeException("Invalid forward message request: missing messageId or targets");
+            }
+
+            // Every copy is stored before the first delivery goes out
+            List<MessageResponse> responses = messageService.forwardMessage(messageId, userId, receiverIds, groupIds);
+            for (MessageResponse response : responses) {
+                if (response.getGroupId() != null) {
+                    webSocketService.sendGroupMessage(new MessageRequest(userId, null, response.getGroupId(), MessageType.FORWARD, response));
+                } else {
+                    webSocketService.sendMessage(new MessageRequest(userId, response.getReceiverId(), null, MessageType.FORWARD, response));
+                }
+            }
+            log.info("Message forwarded: messageId={}, userId={}, targets={}", messageId, userId, responses.size());
+        } catch (Exception e) {
+            log.error("Error processing multi forward: messageId={}, userId={}, error={}",
+                    messageId, userId, e.getMessage());
+            throw e;
+        }
+    }
+
     @MessageMapping("/chat.read")
     public void readMessage(@Payload MessageRequest request) {
         String messageId = request.getId();
@@ -158,8 +248,8 @@ public class ChatController {
                 throw new RuntimeException("Invalid read message request: missing messageId or userId");
             }
 
-            messageService.readMessage(messageId, receiverId);
-            webSocketService.notifyRead(messageId, senderId);
+            MessageResponse response = messageService.readMessage(messageId, receiverId);
+            webSocketService.notifyRead(response, senderId);
             log.info("Message read: messageId={}, userId={}",
                     messageId, receiverId);
         } catch (Exception e) {
@@ -169,6 +259,25 @@ public class ChatController {
         }
     }
 
+    @MessageMapping("/chat.read-up-to")
+    public void readUpTo(@Payload ReadUpToRequest request, Principal principal) {
+        // Marks read, clears unread counters and sends receipts, so only ever for the session's own user
+        String readerId = sessionUserId(principal);
+        if (request.getReaderId() != null && !request.getReaderId().equals(readerId)) {
+            throw new AccessDeniedException("Cannot mark conversations read for another user");
+        }
+        request.setReaderId(readerId);
+        log.debug("Processing read-up-to request: readerId={}, otherUserId={}, groupId={}, messageId={}",
+                readerId, request.getOtherUserId(), request.getGroupId(), request.getMessageId());
+        try {
+            ReadReceiptResponse receipt = messageService.markConversationRead(request);
+            webSocketService.notifyReadUpTo(receipt);
+        } catch (Exception e) {
+            log.error("Error processing read-up-to: readerId={}, error={}", readerId, e.getMessage());
+            throw e;
+        }
+    }
+
     @MessageMapping("/chat.edit")
     public void editMessage(@Payload MessageRequest request) {
         String messageId = request.getId();
@@ -183,11 +292,11 @@ public class ChatController {
                 throw new RuntimeException("Invalid edit message request: missing messageId, userId or content");
             }
 
-            messageService.editMessage(messageId, userId, content);
+            MessageResponse response = messageService.editMessage(messageId, userId, content);
             if (request.getGroupId() != null) {
-                webSocketService.notifyGroupEdit(messageId, userId, request.getGroupId());
+                webSocketService.notifyGroupEdit(response, userId, request.getGroupId());
             } else {
-                webSocketService.notifyEdit(messageId, userId, content);
+                webSocketService.notifyEdit(response, userId);
             }
             log.info("Message edited: messageId={}, userId={}, content={}",
                     messageId, userId, content);
@@ -210,8 +319,8 @@ public class ChatController {
                 throw new IllegalArgumentException("Invalid pin message request: missing messageId or userId");
             }
 
-            messageService.pinMessage(messageId, userId);
-            webSocketService.notifyPin(messageId, userId);
+            MessageResponse response = messageService.pinMessage(messageId, userId);
+            webSocketService.notifyPin(response, userId);
             log.info("Message pinned: messageId={}, userId={}",
                     messageId, userId);
         } catch (Exception e) {
@@ -234,8 +343,8 @@ public class ChatController {
                 throw new IllegalArgumentException("Invalid unpin message request: missing messageId or userId");
             }
 
-            messageService.unpinMessage(messageId, userId);
-            webSocketService.notifyUnpin(messageId, userId);
+            MessageResponse response = messageService.unpinMessage(messageId, userId);
+            webSocketService.notifyUnpin(response, userId);
             log.info("Message unpinned: messageId={}, userId={}",
                     messageId, userId);
         } catch (Exception e) {
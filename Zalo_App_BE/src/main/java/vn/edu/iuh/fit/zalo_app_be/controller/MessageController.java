@@ -4,6 +4,7 @@ package vn.edu.iuh.fit.zalo_app_be.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -11,12 +12,24 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.SyncRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ConversationPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MediaPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessagePageResponse;
 import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageSearchPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.UnreadCountResponse;
 import vn.edu.iuh.fit.zalo_app_be.repository.UserRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.ConversationSummaryService;
 import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageSyncService;
+import vn.edu.iuh.fit.zalo_app_be.service.UnreadCounterService;
 import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -29,15 +42,28 @@ public class MessageController {
     private final MessageService messageService;
     private final UserRepository userRepository;
     private final WebSocketService webSocketService;
+    private final UnreadCounterService unreadCounterService;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageSyncService messageSyncService;
 
     @GetMapping("/chat-history/{userId}")
-    public ResponseEntity<List<MessageResponse>> getChatHistory(@PathVariable String userId) {
-        return ResponseEntity.ok(messageService.getChatHistory(userId));
+    public ResponseEntity<MessagePageResponse> getChatHistory(
+            @PathVariable String userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(messageService.getChatHistory(userId, before, after, limit));
     }
 
     @GetMapping("/chat-history/group/{groupId}")
-    public ResponseEntity<List<MessageResponse>> getGroupChatHistory(@PathVariable String groupId) {
-        return ResponseEntity.ok(messageService.getGroupChatHistory(groupId));
+    public ResponseEntity<MessagePageResponse> getGroupChatHistory(
+            @PathVariable String groupId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(messageService.getGroupChatHistory(groupId, before, after, limit));
     }
 
     @PostMapping("/upload-file")
@@ -137,17 +163,105 @@ public class MessageController {
     public List<MessageResponse> searchMessages(
             @RequestParam String otherUserId,
             @RequestParam(required = false) String groupId,
-            @RequestParam String keyword
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
     ) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String userId = userRepository.findByUsername(authentication.getName()).getId();
         log.debug("Searching messages: userId={}, otherUserId={}, groupId={}, keyword={}", userId, otherUserId, groupId, keyword);
 
         try {
-            return messageService.searchMessages(userId, otherUserId, groupId, keyword);
+            return messageService.searchMessages(userId, otherUserId, groupId, keyword, page, size);
         } catch (Exception e) {
             log.error("Error searching messages: {}", e.getMessage());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error searching messages");
         }
     }
+
+    @GetMapping("/search/all")
+    public ResponseEntity<MessageSearchPageResponse> searchAllMessages(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) List<MessageType> types,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Searching all messages: userId={}, keyword={}, types={}, from={}, to={}", userId, keyword, types, from, to);
+
+        return ResponseEntity.ok(messageService.searchAllMessages(userId, keyword, types, from, to, cursor, limit));
+    }
+
+    @GetMapping("/media")
+    public ResponseEntity<MediaPageResponse> getMedia(
+            @RequestParam(required = false) String otherUserId,
+            @RequestParam(required = false) String groupId,
+            @RequestParam(required = false) List<MessageType> types,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "30") int limit
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Getting media: userId={}, otherUserId={}, groupId={}, types={}, before={}", userId, otherUserId, groupId, types, before);
+
+        return ResponseEntity.ok(messageService.getMedia(userId, otherUserId, groupId, types, before, limit));
+    }
+
+    @GetMapping("/detail/{messageId}")
+    public ResponseEntity<MessageResponse> getMessageDetail(@PathVariable String messageId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Getting message detail: userId={}, messageId={}", userId, messageId);
+
+        return ResponseEntity.ok(messageService.getMessageDetail(messageId, userId));
+    }
+
+    @GetMapping("/range")
+    public ResponseEntity<List<MessageResponse>> getMessagesBySeq(
+            @RequestParam(required = false) String otherUserId,
+            @RequestParam(required = false) String groupId,
+            @RequestParam long fromSeq,
+            @RequestParam long toSeq
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Getting messages by sequence: userId={}, otherUserId={}, groupId={}, from={}, to={}", userId, otherUserId, groupId, fromSeq, toSeq);
+
+        return ResponseEntity.ok(messageService.getMessagesBySeq(userId, otherUserId, groupId, fromSeq, toSeq));
+    }
+
+    @PostMapping("/sync")
+    public ResponseEntity<List<SyncBatchResponse>> sync(@RequestBody SyncRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        request.setUserId(userId);
+        log.debug("Syncing conversations: userId={}, conversations={}", userId,
+                request.getConversations() != null ? request.getConversations().size() : 0);
+
+        return ResponseEntity.ok(messageSyncService.nextBatches(userId, request));
+    }
+
+    @GetMapping("/unread-counts")
+    public List<UnreadCountResponse> getUnreadCounts() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Getting unread counts: userId={}", userId);
+
+        return unreadCounterService.getUnreadCounts(userId);
+    }
+
+    @GetMapping("/conversations")
+    public ResponseEntity<ConversationPageResponse> getConversations(
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userId = userRepository.findByUsername(authentication.getName()).getId();
+        log.debug("Getting conversations: userId={}, before={}", userId, before);
+
+        return ResponseEntity.ok(conversationSummaryService.getConversations(userId, before, limit));
+    }
 }
@@ -20,10 +20,13 @@ import java.util.Map;
 @NoArgsConstructor
 public class MessageRequest {
     private String id;
+    private String clientMsgId; // generated by the client, a resend with the same id is not stored twice
     private String senderId;
     private String receiverId;
     private String content;
     private String groupId;
+    private List<String> receiverIds; // forward to several friends at once
+    private List<String> groupIds; // forward to several groups at once
     private MessageType type;
     private List<String> imageUrls;
     private List<Map<String, String>> videoInfos;
@@ -36,6 +39,7 @@ public class MessageRequest {
     private boolean recalled;
     private boolean isPinned;
     private LocalDateTime pinnedAt;
+    private Long seq;
     private MessageResponse response;
 
     public MessageRequest(String senderId, String receiverId, String groupId, MessageType messageType, MessageResponse response) {
@@ -58,6 +62,7 @@ public class MessageRequest {
             this.forwardedFrom = response.getForwardedFrom();
             this.isPinned = response.isPinned();
             this.pinnedAt = response.getPinnedAt();
+            this.seq = response.getSeq();
         }
     }
 }
@@ -0,0 +1,18 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.request;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class ReadUpToRequest {
+    private String readerId;
+    private String otherUserId; // for 1:1 conversations
+    private String groupId; // for group conversations
+    private String messageId; // newest message the reader has seen
+    private LocalDateTime readUpTo; // alternative to messageId
+}
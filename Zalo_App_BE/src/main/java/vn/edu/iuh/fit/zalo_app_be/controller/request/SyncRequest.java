@@ -0,0 +1,25 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.request;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class SyncRequest {
+    private String userId;
+    private List<ConversationCursor> conversations;
+    private int batchSize; // messages per batch, server default when 0
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class ConversationCursor {
+        private String otherUserId; // for 1:1 conversations
+        private String groupId; // for group conversations
+        private String cursor; // last sync cursor, or the afterCursor of the newest history page seen
+    }
+}
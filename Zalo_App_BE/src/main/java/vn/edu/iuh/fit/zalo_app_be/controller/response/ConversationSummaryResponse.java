@@ -0,0 +1,25 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class ConversationSummaryResponse {
+    private String conversationId;
+    private String otherUserId;
+    private String groupId;
+    private String lastMessageId;
+    private String lastSenderId;
+    private String lastMessagePreview;
+    private MessageType lastMessageType;
+    private LocalDateTime lastMessageAt;
+    private long unreadCount;
+}
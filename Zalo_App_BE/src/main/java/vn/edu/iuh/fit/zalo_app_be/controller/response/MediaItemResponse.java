@@ -0,0 +1,25 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class MediaItemResponse {
+    private String messageId;
+    private String senderId;
+    private MessageType type;
+    private String url; // file url, or the first image of an image group
+    private List<String> imageUrls; // every image of an IMAGE_GROUP message, null otherwise
+    private String thumbnail;
+    private String fileName;
+    private LocalDateTime createAt;
+}
@@ -0,0 +1,18 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class MediaPageResponse {
+    private List<MediaItemResponse> items; // newest first
+    private String nextCursor; // pass as "before" to load older items
+    private boolean hasMore;
+}
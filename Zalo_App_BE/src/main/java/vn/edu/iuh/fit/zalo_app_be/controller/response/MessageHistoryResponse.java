@@ -0,0 +1,17 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * A message as history lists, sync batches and the tail cache carry it. Detail-only fields are
+ * left unset and dropped from the JSON; full responses keep every field.
+ */
+@Getter
+@Setter
+@SuperBuilder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageHistoryResponse extends MessageResponse {
+}
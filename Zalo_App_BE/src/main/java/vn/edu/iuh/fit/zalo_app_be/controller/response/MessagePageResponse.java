@@ -0,0 +1,19 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class MessagePageResponse {
+    private List<MessageResponse> messages; // oldest first
+    private String beforeCursor; // pass as "before" to load older messages
+    private String afterCursor; // pass as "after" to load newer messages
+    private boolean hasMore; // more messages exist in the requested direction
+}
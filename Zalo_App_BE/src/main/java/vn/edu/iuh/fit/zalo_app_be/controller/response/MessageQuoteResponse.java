@@ -0,0 +1,24 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class MessageQuoteResponse {
+    private String id;
+    private String senderId;
+    private MessageType type;
+    private String content; // truncated text, or the recall placeholder
+    private String thumbnail; // first image or video thumbnail, if any
+    private String fileName;
+    private boolean recalled;
+    private LocalDateTime createAt;
+}
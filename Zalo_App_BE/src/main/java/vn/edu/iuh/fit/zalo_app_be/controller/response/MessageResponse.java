@@ -11,9 +11,9 @@ package vn.edu.iuh.fit.zalo_app_be.controller.response;
  */
 
 import lombok.AllArgsConstructor;
-import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.experimental.SuperBuilder;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.model.MessageReference;
@@ -24,7 +24,7 @@ import java.util.Map;
 
 @Getter
 @Setter
-@Builder
+@SuperBuilder
 @AllArgsConstructor
 public class MessageResponse {
     private String id;
@@ -48,4 +48,8 @@ public class MessageResponse {
     private LocalDateTime updateAt;
     private boolean isPinned;
     private LocalDateTime pinnedAt;
+    private MessageQuoteResponse replyToMessage; // hydrated replyToMessageId, null when not loaded
+    private MessageQuoteResponse forwardedMessage; // hydrated forwardedFrom.messageId, null when not loaded
+    private String clientMsgId;
+    private Long seq;
 }
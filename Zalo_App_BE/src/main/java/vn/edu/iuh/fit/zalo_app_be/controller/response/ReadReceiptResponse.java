@@ -0,0 +1,21 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class ReadReceiptResponse {
+    private String conversationId;
+    private String readerId;
+    private String otherUserId;
+    private String groupId;
+    private LocalDateTime readUpTo;
+    private long updatedCount; // 1:1 messages flipped to read by this call
+}
@@ -0,0 +1,20 @@
+package vn.edu.iuh.fit.zalo_app_be.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+public class SyncBatchResponse {
+    private String otherUserId;
+    private String groupId;
+    private List<MessageResponse> messages; // current state of new and changed messages, in change order
+    private String cursor; // pass back to continue after this batch
+    private boolean hasMore; // more changes exist after cursor
+}
@@ -0,0 +1,31 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a one-off data backfill, shared by every instance so a finished backfill is not
+ * scanned again after a restart or on another node.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "backfill_markers")
+public class BackfillMarker {
+    public static final String CONVERSATION_IDS = "conversation-ids";
+    public static final String CONVERSATION_SUMMARIES = "conversation-summaries";
+    // Present while the bucket layout is kept up to date, removed by any instance running without it
+    public static final String MESSAGE_BUCKETS = "message-buckets";
+
+    @Id
+    private String id; // name of the backfill
+    private LocalDateTime completedAt;
+    private String resumeAfter; // last key processed by a backfill still running
+}
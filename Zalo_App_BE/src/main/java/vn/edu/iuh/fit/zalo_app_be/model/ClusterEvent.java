@@ -0,0 +1,29 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One broker message relayed between backend instances. Stored in a capped collection by the
+ * Mongo cluster bus, handed over in memory by the local one.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "cluster_events")
+public class ClusterEvent {
+    private String id;
+    private String origin; // node that published the event
+    private List<String> targets; // nodes that should deliver it, null for every node
+    private String destination;
+    private String contentType;
+    private byte[] payload;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,29 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user holding at least one WebSocket session on a node. Refreshed by the node while the
+ * user stays connected, so entries of a crashed node expire on their own.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "cluster_presence")
+public class ClusterPresence {
+    @Id
+    private String id; // nodeId:userId
+    private String nodeId;
+    private String userId;
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+}
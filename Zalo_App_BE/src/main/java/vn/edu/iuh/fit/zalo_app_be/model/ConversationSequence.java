@@ -0,0 +1,23 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Highest message sequence handed out for a conversation. Instances reserve blocks from it
+ * with one atomic increment, see ConversationSequenceAllocator.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "conversation_sequences")
+public class ConversationSequence {
+    @Id
+    private String conversationId;
+    private long last;
+}
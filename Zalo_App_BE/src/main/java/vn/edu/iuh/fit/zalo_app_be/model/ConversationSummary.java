@@ -0,0 +1,43 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per user and conversation with the latest message, so the inbox is a single
+ * indexed range scan instead of a history load per friend and group.
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "conversation_summaries")
+@CompoundIndexes({
+        @CompoundIndex(name = "conversation_user_idx", def = "{'conversationId': 1, 'userId': 1}", unique = true),
+        @CompoundIndex(name = "user_activity_idx", def = "{'userId': 1, 'lastMessageAt': -1, '_id': -1}")
+})
+public class ConversationSummary {
+    @Id
+    private String id;
+    private String userId; // owner of this inbox row
+    private String conversationId;
+    private String otherUserId; // peer for 1:1 conversations
+    private String groupId;
+    private String lastMessageId;
+    private String lastSenderId;
+    private String lastMessagePreview;
+    private MessageType lastMessageType;
+    private LocalDateTime lastMessageAt;
+    private LocalDateTime updatedAt;
+}
@@ -9,6 +9,8 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
@@ -21,6 +23,22 @@ import java.util.Map;
 @Getter
 @Setter
 @Document(collection = "messages")
+@CompoundIndexes({
+        // hiddenFor trails the sort keys so the index scan skips rows hidden for the viewer. It is multikey,
+        // so $ne cannot be answered exactly from the bounds and each candidate is still fetched and filtered
+        @CompoundIndex(name = "conversation_visible_idx", def = "{'conversationId': 1, 'createdAt': -1, '_id': -1, 'hiddenFor': 1}"),
+        @CompoundIndex(name = "conversation_media_idx", def = "{'conversationId': 1, 'type': 1, 'createdAt': -1, '_id': -1}"),
+        // Catch-up after a reconnect: new messages and later recalls, edits, pins and deletes in write order
+        @CompoundIndex(name = "conversation_changes_idx", def = "{'conversationId': 1, 'updatedAt': 1, '_id': 1}"),
+        // Search index catch-up after a restart: every change since its last commit, across conversations
+        @CompoundIndex(name = "changes_idx", def = "{'updatedAt': 1, '_id': 1}"),
+        @CompoundIndex(name = "conversation_pinned_idx", def = "{'conversationId': 1, 'isPinned': 1, 'createdAt': -1}"),
+        @CompoundIndex(name = "sender_client_msg_idx", def = "{'senderId': 1, 'clientMsgId': 1}", unique = true,
+                partialFilter = "{'clientMsgId': {'$type': 'string'}}"),
+        @CompoundIndex(name = "conversation_seq_idx", def = "{'conversationId': 1, 'seq': 1}", unique = true,
+                partialFilter = "{'seq': {'$type': 'long'}}"),
+        @CompoundIndex(name = "group_history_idx", def = "{'groupId': 1, 'createdAt': -1, '_id': -1}")
+})
 @AllArgsConstructor
 @NoArgsConstructor
 public class Message {
@@ -30,12 +48,14 @@ public class Message {
     @Indexed
     private String receiverId;
     private String groupId;
+    private String conversationId; // sorted user pair or group id, see ConversationKeys
     private String content;
     private MessageType type;
     private boolean recalled;
     private List<String> imageUrls;
     private List<Map<String, String>> videoInfos; // For video {url, thumbnail}
     private Map<String, LocalDateTime> deleteBy; // {userId , time}
+    private List<String> hiddenFor; // users who deleted the message for themselves, keys of deleteBy
     private MessageReference forwardedFrom; // For forwarded message {messageId, originalSenderId}
     private String fileName; // original name of file
     private String thumbnail; // thumbnail of video
@@ -52,5 +72,7 @@ public class Message {
     private boolean isRead;
     private String replyToMessageId;
     private boolean editId;
+    private String clientMsgId; // client generated, unique per sender when present
+    private Long seq; // per-conversation sequence, increasing but not gap free; null on messages older than sequencing
 }
 
@@ -0,0 +1,36 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Consecutive old messages of one conversation moved out of the hot messages collection and
+ * stored as a single gzip-compressed BSON payload. Segments are written once and never patched.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "message_archive")
+@CompoundIndexes({
+        @CompoundIndex(name = "conversation_last_idx", def = "{'conversationId': 1, 'last': -1}"),
+        @CompoundIndex(name = "conversation_first_idx", def = "{'conversationId': 1, 'first': 1}")
+})
+public class MessageArchiveSegment {
+    @Id
+    private String id; // conversationId:firstMessageId, so re-archiving the same chunk overwrites it
+    private String conversationId;
+    private LocalDateTime first; // createdAt of the oldest message in the segment
+    private LocalDateTime last; // createdAt of the newest message in the segment
+    private int count;
+    private byte[] payload; // gzip of a BSON document {messages: [...]}, oldest first
+    private LocalDateTime archivedAt;
+}
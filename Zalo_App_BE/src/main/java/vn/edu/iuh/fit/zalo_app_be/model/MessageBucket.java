@@ -0,0 +1,43 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Up to a fixed number of consecutive messages of one conversation packed into a single
+ * document, so a history page reads one or two documents instead of one per message.
+ * <p>
+ * Live buckets receive new messages by in-place append; migrated buckets are written once
+ * from the messages collection, and the oldest of them is flagged {@code origin} to mark the
+ * conversation's bucketed history as complete.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "message_buckets")
+@CompoundIndexes({
+        @CompoundIndex(name = "conversation_last_idx", def = "{'conversationId': 1, 'last': -1}"),
+        @CompoundIndex(name = "conversation_open_idx", def = "{'conversationId': 1, 'live': 1, 'count': 1}")
+})
+public class MessageBucket {
+    @Id
+    private String id;
+    private String conversationId;
+    private LocalDateTime first; // createdAt of the oldest message in the bucket
+    private LocalDateTime last; // createdAt of the newest message in the bucket
+    private int count;
+    private boolean live;
+    private boolean origin;
+    // Raw documents in the same shape as the messages collection, oldest first
+    private List<org.bson.Document> messages;
+}
@@ -0,0 +1,26 @@
+package vn.edu.iuh.fit.zalo_app_be.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "unread_counters")
+@CompoundIndex(name = "user_conversation_idx", def = "{'userId': 1, 'conversationId': 1}", unique = true)
+public class UnreadCounter {
+    @Id
+    private String id;
+    private String userId;
+    private String conversationId;
+    private long count;
+    private LocalDateTime updatedAt;
+}
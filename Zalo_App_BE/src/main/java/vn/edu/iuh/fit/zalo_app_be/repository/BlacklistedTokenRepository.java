@@ -1,12 +1,18 @@
-
 package vn.edu.iuh.fit.zalo_app_be.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 import vn.edu.iuh.fit.zalo_app_be.model.BlacklistedToken;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 
 @Repository
 public interface BlacklistedTokenRepository extends MongoRepository<BlacklistedToken, String> {
     boolean existsByToken(String token);
+
+    List<BlacklistedToken> findByExpiryDateAfter(LocalDateTime now);
+
+    List<BlacklistedToken> findByCreateAtAfter(LocalDateTime since);
 }
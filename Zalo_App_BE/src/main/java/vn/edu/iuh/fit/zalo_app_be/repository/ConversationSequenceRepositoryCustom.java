@@ -0,0 +1,10 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+public interface ConversationSequenceRepositoryCustom {
+    /**
+     * Atomically reserve the next {@code count} sequence numbers of the conversation, creating
+     * its counter on first use. Returns the highest reserved number, the block is
+     * {@code (result - count, result]}.
+     */
+    long reserve(String conversationId, int count);
+}
@@ -0,0 +1,24 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.fit.zalo_app_be.model.ConversationSequence;
+
+@RequiredArgsConstructor
+public class ConversationSequenceRepositoryCustomImpl implements ConversationSequenceRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public long reserve(String conversationId, int count) {
+        ConversationSequence sequence = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(conversationId)),
+                new Update().inc("last", count),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                ConversationSequence.class);
+        return sequence.getLast();
+    }
+}
@@ -0,0 +1,26 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.ConversationSummary;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ConversationSummaryRepositoryCustom {
+    /**
+     * Upsert each row unless it already points at a newer message, so late or replayed
+     * writes never move a conversation backwards.
+     */
+    void upsertLatest(Collection<ConversationSummary> summaries);
+
+    /**
+     * Refresh the preview of rows whose last message is {@code messageId}; limited to
+     * {@code userId} when it is not null.
+     */
+    void updatePreview(String conversationId, String messageId, String userId, String preview);
+
+    /**
+     * Newest activity first, {@code limit + 1} rows so the caller can tell whether more exist.
+     */
+    List<ConversationSummary> findPage(String userId, MessageCursor before, int limit);
+}
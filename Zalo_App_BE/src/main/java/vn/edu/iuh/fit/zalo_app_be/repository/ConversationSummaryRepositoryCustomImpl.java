@@ -0,0 +1,83 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.ConversationSummary;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ConversationSummaryRepositoryCustomImpl implements ConversationSummaryRepositoryCustom {
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void upsertLatest(Collection<ConversationSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversationSummary.class);
+        for (ConversationSummary summary : summaries) {
+            Query query = Query.query(Criteria.where("conversationId").is(summary.getConversationId())
+                    .and("userId").is(summary.getUserId())
+                    .and("lastMessageAt").lte(summary.getLastMessageAt()));
+            Update update = new Update()
+                    .set("otherUserId", summary.getOtherUserId())
+                    .set("groupId", summary.getGroupId())
+                    .set("lastMessageId", summary.getLastMessageId())
+                    .set("lastSenderId", summary.getLastSenderId())
+                    .set("lastMessagePreview", summary.getLastMessagePreview())
+                    .set("lastMessageType", summary.getLastMessageType())
+                    .set("lastMessageAt", summary.getLastMessageAt())
+                    .set("updatedAt", now);
+            bulk.upsert(query, update);
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // A row holding a newer message fails the guard, the upsert then collides with the
+            // unique key; that is the intended no-op, anything else is a real failure
+            boolean onlyStale = e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyStale) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void updatePreview(String conversationId, String messageId, String userId, String preview) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId).and("lastMessageId").is(messageId);
+        if (userId != null) {
+            criteria = criteria.and("userId").is(userId);
+        }
+        mongoTemplate.updateMulti(new Query(criteria),
+                new Update().set("lastMessagePreview", preview).set("updatedAt", LocalDateTime.now()),
+                ConversationSummary.class);
+    }
+
+    @Override
+    public List<ConversationSummary> findPage(String userId, MessageCursor before, int limit) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (before != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("lastMessageAt").lt(before.createdAt()),
+                    Criteria.where("lastMessageAt").is(before.createdAt()).and("_id").lt(before.id())
+            );
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "lastMessageAt").and(Sort.by(Sort.Direction.DESC, "_id")))
+                .limit(limit + 1);
+        return mongoTemplate.find(query, ConversationSummary.class);
+    }
+}
@@ -0,0 +1,9 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageArchiveSegment;
+
+@Repository
+public interface MessageArchiveRepository extends MongoRepository<MessageArchiveSegment, String>, MessageArchiveRepositoryCustom {
+}
@@ -0,0 +1,29 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.util.List;
+
+public interface MessageArchiveRepositoryCustom {
+    /**
+     * Compress the messages (oldest first, one conversation) into a segment, overwriting a
+     * segment left behind by an interrupted run over the same chunk. Returns the segment id,
+     * which is derived from the first message.
+     */
+    String writeSegment(String conversationId, List<Message> chunk);
+
+    /**
+     * Replace the segment with one holding only {@code archived}, or delete it when that is
+     * empty. Used when some messages of the chunk changed and stayed in the hot collection.
+     */
+    void replaceSegment(String segmentId, String conversationId, List<Message> archived);
+
+    /**
+     * Up to {@code limit + 1} archived messages of the conversation inside the cursor range and
+     * visible to {@code viewerId} (null for all), in
+     * the same order the hot history query returns them: newest first, or oldest first when only
+     * {@code after} is given.
+     */
+    List<Message> findPage(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit);
+}
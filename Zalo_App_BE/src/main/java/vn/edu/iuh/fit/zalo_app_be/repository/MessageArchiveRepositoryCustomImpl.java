@@ -0,0 +1,154 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import com.mongodb.MongoClientSettings;
+import lombok.RequiredArgsConstructor;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageArchiveSegment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RequiredArgsConstructor
+public class MessageArchiveRepositoryCustomImpl implements MessageArchiveRepositoryCustom {
+    private static final Comparator<Message> OLDEST_FIRST =
+            Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
+    private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public String writeSegment(String conversationId, List<Message> chunk) {
+        List<Document> messages = new ArrayList<>(chunk.size());
+        for (Message message : chunk) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(message, document);
+            document.remove("_class");
+            messages.add(document);
+        }
+
+        MessageArchiveSegment segment = new MessageArchiveSegment();
+        segment.setId(conversationId + ":" + chunk.get(0).getId());
+        segment.setConversationId(conversationId);
+        segment.setFirst(chunk.get(0).getCreatedAt());
+        segment.setLast(chunk.get(chunk.size() - 1).getCreatedAt());
+        segment.setCount(chunk.size());
+        segment.setPayload(compress(new Document("messages", messages)));
+        segment.setArchivedAt(LocalDateTime.now());
+        mongoTemplate.save(segment);
+        return segment.getId();
+    }
+
+    @Override
+    public void replaceSegment(String segmentId, String conversationId, List<Message> archived) {
+        // The id follows the first message, write the smaller segment before dropping the old one
+        String replacement = archived.isEmpty() ? null : writeSegment(conversationId, archived);
+        if (!segmentId.equals(replacement)) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(segmentId)), MessageArchiveSegment.class);
+        }
+    }
+
+    @Override
+    public List<Message> findPage(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit) {
+        // Same rule as the hot query: walk forwards only when no upper bound is given
+        boolean forward = after != null && before == null;
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (before != null) {
+            criteria = criteria.and("first").lte(before.createdAt());
+        }
+        if (after != null) {
+            criteria = criteria.and("last").gte(after.createdAt());
+        }
+        Query query = new Query(criteria)
+                .with(forward ? Sort.by(Sort.Direction.ASC, "first") : Sort.by(Sort.Direction.DESC, "last"))
+                .cursorBatchSize(2);
+        Comparator<Message> order = forward ? OLDEST_FIRST : OLDEST_FIRST.reversed();
+
+        Map<String, Message> collected = new LinkedHashMap<>();
+        try (Stream<MessageArchiveSegment> segments = mongoTemplate.stream(query, MessageArchiveSegment.class)) {
+            Iterator<MessageArchiveSegment> iterator = segments.iterator();
+            while (iterator.hasNext()) {
+                MessageArchiveSegment segment = iterator.next();
+                if (collected.size() > limit) {
+                    // Segments arrive in page order, stop once the next one cannot reach into the page
+                    LocalDateTime boundary = collected.values().stream().sorted(order).skip(limit)
+                            .findFirst().orElseThrow().getCreatedAt();
+                    if (forward ? segment.getFirst().isAfter(boundary) : segment.getLast().isBefore(boundary)) {
+                        break;
+                    }
+                }
+                for (Message message : decompress(segment)) {
+                    if (inRange(message, before, after) && isVisible(message, viewerId)) {
+                        // A copy archived again after a crash mid-move, keep the newer one
+                        collected.merge(message.getId(), message, MessageArchiveRepositoryCustomImpl::newer);
+                    }
+                }
+            }
+        }
+        return collected.values().stream().sorted(order).limit(limit + 1L).toList();
+    }
+
+    private static Message newer(Message current, Message candidate) {
+        if (current.getUpdatedAt() == null) {
+            return candidate;
+        }
+        return candidate.getUpdatedAt() != null && candidate.getUpdatedAt().isAfter(current.getUpdatedAt()) ? candidate : current;
+    }
+
+    private boolean inRange(Message message, MessageCursor before, MessageCursor after) {
+        return (before == null || compare(message, before) < 0) && (after == null || compare(message, after) > 0);
+    }
+
+    private boolean isVisible(Message message, String viewerId) {
+        return viewerId == null || message.getDeleteBy() == null || !message.getDeleteBy().containsKey(viewerId);
+    }
+
+    private int compare(Message message, MessageCursor cursor) {
+        int byTime = message.getCreatedAt().compareTo(cursor.createdAt());
+        return byTime != 0 ? byTime : message.getId().compareTo(cursor.id());
+    }
+
+    private byte[] compress(Document document) {
+        ByteBuf buffer = new RawBsonDocument(document, CODEC).getByteBuffer();
+        byte[] bson = new byte[buffer.remaining()];
+        buffer.get(bson);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bson.length / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bson);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to compress archive segment", e);
+        }
+        return out.toByteArray();
+    }
+
+    private List<Message> decompress(MessageArchiveSegment segment) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(segment.getPayload()))) {
+            Document document = new RawBsonDocument(gzip.readAllBytes()).decode(CODEC);
+            return document.getList("messages", Document.class).stream()
+                    .map(raw -> mongoTemplate.getConverter().read(Message.class, raw))
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt archive segment " + segment.getId(), e);
+        }
+    }
+}
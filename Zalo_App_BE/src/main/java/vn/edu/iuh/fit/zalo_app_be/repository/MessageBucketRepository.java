@@ -0,0 +1,10 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageBucket;
+
+@Repository
+public interface MessageBucketRepository extends MongoRepository<MessageBucket, String>, MessageBucketRepositoryCustom {
+    boolean existsByConversationIdAndOriginIsTrue(String conversationId);
+}
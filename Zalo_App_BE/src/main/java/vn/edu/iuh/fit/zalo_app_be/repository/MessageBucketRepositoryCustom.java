@@ -0,0 +1,52 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface MessageBucketRepositoryCustom {
+    /**
+     * Push the message into the conversation's open live bucket, opening a new one when the
+     * current bucket is full.
+     */
+    void append(Message message, int capacity);
+
+    /**
+     * Replace the stored copy of a message after recall, edit, delete, read or pin.
+     */
+    void replace(Message message);
+
+    /**
+     * Newest {@code limit + 1} messages older than {@code before} and visible to {@code viewerId}
+     * (null for all), newest first, read from as few buckets as possible. Empty when the bucketed history runs out before the page is full
+     * and the conversation was never migrated, the caller then reads the messages collection.
+     */
+    Optional<List<Message>> findNewest(String conversationId, String viewerId, MessageCursor before, int limit);
+
+    /**
+     * Mirror a direct-conversation read receipt onto the bucketed copies.
+     */
+    void markReadUpTo(String conversationId, String readerId, LocalDateTime readUpTo);
+
+    /**
+     * Pack every message of the conversation created before {@code createdBefore} into migrated
+     * buckets, replacing any earlier attempt. The origin bucket is written last so an interrupted
+     * migration is never mistaken for a complete one, then messages changed while packing are
+     * replaced again. Returns the number of messages packed.
+     */
+    long migrate(String conversationId, LocalDateTime createdBefore, int capacity);
+
+    /**
+     * Drop the origin flag of the conversation, so reads go back to the messages collection until
+     * it is migrated again.
+     */
+    void invalidate(String conversationId);
+
+    /**
+     * {@link #invalidate(String)} for every conversation.
+     */
+    void invalidateAll();
+}
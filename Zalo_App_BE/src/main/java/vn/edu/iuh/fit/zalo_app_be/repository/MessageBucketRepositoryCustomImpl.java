@@ -0,0 +1,221 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageBucket;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class MessageBucketRepositoryCustomImpl implements MessageBucketRepositoryCustom {
+    private static final Comparator<Message> NEWEST_FIRST =
+            Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId).reversed();
+    private static final LocalDateTime EMPTY_ORIGIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void append(Message message, int capacity) {
+        Query query = Query.query(Criteria.where("conversationId").is(message.getConversationId())
+                .and("live").is(true)
+                .and("count").lt(capacity));
+        // $sort keeps the array ordered when concurrent sends land slightly out of order
+        Update update = new Update()
+                .push("messages").sort(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).each(toDocument(message))
+                .inc("count", 1)
+                .min("first", message.getCreatedAt())
+                .max("last", message.getCreatedAt());
+        mongoTemplate.upsert(query, update, MessageBucket.class);
+    }
+
+    @Override
+    public void replace(Message message) {
+        // The time range narrows the update to the one or two buckets that can hold the message
+        Query query = Query.query(Criteria.where("conversationId").is(message.getConversationId())
+                .and("last").gte(message.getCreatedAt())
+                .and("first").lte(message.getCreatedAt())
+                .and("messages._id").is(toStoredId(message.getId())));
+        mongoTemplate.updateMulti(query, new Update().set("messages.$", toDocument(message)), MessageBucket.class);
+    }
+
+    @Override
+    public void markReadUpTo(String conversationId, String readerId, LocalDateTime readUpTo) {
+        Query query = Query.query(Criteria.where("conversationId").is(conversationId)
+                .and("first").lte(readUpTo)
+                .and("messages").elemMatch(Criteria.where("receiverId").is(readerId).and("isRead").is(false)));
+        Update update = new Update()
+                .set("messages.$[unread].isRead", true)
+                .set("messages.$[unread].status", MessageStatus.READ)
+                .filterArray(Criteria.where("unread.receiverId").is(readerId)
+                        .and("unread.isRead").is(false)
+                        .and("unread.createdAt").lte(readUpTo));
+        mongoTemplate.updateMulti(query, update, MessageBucket.class);
+    }
+
+    @Override
+    public Optional<List<Message>> findNewest(String conversationId, String viewerId, MessageCursor before, int limit) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (before != null) {
+            criteria = criteria.and("first").lte(before.createdAt());
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "last")).cursorBatchSize(2);
+
+        // Live and migrated buckets may overlap, keep the most recently changed copy of each message
+        // and only then drop the ones hidden from the viewer, an older copy may not be hidden yet
+        Map<String, Message> collected = new LinkedHashMap<>();
+        boolean sawOrigin = false;
+        try (Stream<MessageBucket> buckets = mongoTemplate.stream(query, MessageBucket.class)) {
+            Iterator<MessageBucket> iterator = buckets.iterator();
+            while (iterator.hasNext()) {
+                MessageBucket bucket = iterator.next();
+                List<Message> visible = visible(collected, viewerId);
+                if (visible.size() > limit && bucket.getLast().isBefore(visible.get(limit).getCreatedAt())) {
+                    // Buckets come newest first, nothing further down can enter the page
+                    return Optional.of(visible.subList(0, limit + 1));
+                }
+                for (Document raw : bucket.getMessages()) {
+                    Message message = mongoTemplate.getConverter().read(Message.class, raw);
+                    if (before == null || isBefore(message, before)) {
+                        collected.merge(message.getId(), message, MessageBucketRepositoryCustomImpl::newer);
+                    }
+                }
+                sawOrigin |= bucket.isOrigin();
+            }
+        }
+        if (!sawOrigin) {
+            return Optional.empty();
+        }
+        List<Message> visible = visible(collected, viewerId);
+        return Optional.of(visible.subList(0, Math.min(visible.size(), limit + 1)));
+    }
+
+    @Override
+    public long migrate(String conversationId, LocalDateTime createdBefore, int capacity) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        mongoTemplate.remove(Query.query(Criteria.where("conversationId").is(conversationId).and("live").is(false)), MessageBucket.class);
+
+        Query query = Query.query(Criteria.where("conversationId").is(conversationId).and("createdAt").lt(createdBefore))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+        MessageBucket originBucket = null;
+        List<Message> chunk = new ArrayList<>(capacity);
+        long packed = 0;
+        try (Stream<Message> history = mongoTemplate.stream(query, Message.class)) {
+            Iterator<Message> iterator = history.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                packed++;
+                if (chunk.size() == capacity) {
+                    originBucket = flush(conversationId, chunk, originBucket);
+                    chunk = new ArrayList<>(capacity);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            originBucket = flush(conversationId, chunk, originBucket);
+        }
+        if (originBucket == null) {
+            // Nothing to pack yet, still record that the conversation is fully bucketed; the epoch
+            // range keeps the empty origin inside every "before" scan
+            originBucket = newBucket(conversationId, List.of());
+            originBucket.setFirst(EMPTY_ORIGIN_TIME);
+            originBucket.setLast(EMPTY_ORIGIN_TIME);
+        }
+        originBucket.setOrigin(true);
+        mongoTemplate.insert(originBucket);
+
+        // A replace() that ran while packing missed the buckets not inserted yet
+        Query changed = Query.query(Criteria.where("conversationId").is(conversationId)
+                .and("createdAt").lt(createdBefore)
+                .and("updatedAt").gte(startedAt));
+        try (Stream<Message> stale = mongoTemplate.stream(changed, Message.class)) {
+            stale.forEach(this::replace);
+        }
+        return packed;
+    }
+
+    @Override
+    public void invalidate(String conversationId) {
+        mongoTemplate.updateMulti(Query.query(Criteria.where("conversationId").is(conversationId).and("origin").is(true)),
+                Update.update("origin", false), MessageBucket.class);
+    }
+
+    @Override
+    public void invalidateAll() {
+        mongoTemplate.updateMulti(Query.query(Criteria.where("origin").is(true)), Update.update("origin", false), MessageBucket.class);
+    }
+
+    /**
+     * Insert the chunk as a migrated bucket, except the very first (oldest) chunk, which is held
+     * back and returned so it can be written last as the origin.
+     */
+    private MessageBucket flush(String conversationId, List<Message> chunk, MessageBucket originBucket) {
+        MessageBucket bucket = newBucket(conversationId, chunk);
+        if (originBucket == null) {
+            return bucket;
+        }
+        mongoTemplate.insert(bucket);
+        return originBucket;
+    }
+
+    private MessageBucket newBucket(String conversationId, List<Message> chunk) {
+        MessageBucket bucket = new MessageBucket();
+        bucket.setConversationId(conversationId);
+        bucket.setCount(chunk.size());
+        bucket.setLive(false);
+        bucket.setFirst(chunk.isEmpty() ? null : chunk.get(0).getCreatedAt());
+        bucket.setLast(chunk.isEmpty() ? null : chunk.get(chunk.size() - 1).getCreatedAt());
+        bucket.setMessages(chunk.stream().map(this::toDocument).toList());
+        return bucket;
+    }
+
+    private Document toDocument(Message message) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(message, document);
+        document.remove("_class");
+        return document;
+    }
+
+    private Object toStoredId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    private boolean isBefore(Message message, MessageCursor cursor) {
+        int byTime = message.getCreatedAt().compareTo(cursor.createdAt());
+        return byTime < 0 || (byTime == 0 && message.getId().compareTo(cursor.id()) < 0);
+    }
+
+    private static Message newer(Message current, Message candidate) {
+        if (current.getUpdatedAt() == null) {
+            return candidate.getUpdatedAt() != null ? candidate : current;
+        }
+        return candidate.getUpdatedAt() != null && candidate.getUpdatedAt().isAfter(current.getUpdatedAt()) ? candidate : current;
+    }
+
+    private boolean isVisible(Message message, String viewerId) {
+        return viewerId == null || message.getDeleteBy() == null || !message.getDeleteBy().containsKey(viewerId);
+    }
+
+    /**
+     * Collected messages the viewer can see, newest first.
+     */
+    private List<Message> visible(Map<String, Message> collected, String viewerId) {
+        return collected.values().stream().filter(message -> isVisible(message, viewerId)).sorted(NEWEST_FIRST).toList();
+    }
+}
@@ -0,0 +1,118 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface MessageRepositoryCustom {
+    /**
+     * Load one page of a 1:1 conversation, newest-to-oldest when paging backwards and
+     * oldest-to-newest when paging forwards. Fetches {@code limit + 1} rows so the caller can tell if more exist.
+     * Messages {@code viewerId} deleted for themselves are skipped; a null viewer returns every message.
+     */
+    List<Message> findDirectPage(String userId, String otherUserId, String viewerId, MessageCursor before, MessageCursor after, int limit);
+
+    List<Message> findGroupPage(String groupId, String viewerId, MessageCursor before, MessageCursor after, int limit);
+
+    /**
+     * Messages with {@code fromSeq <= seq <= toSeq} in sequence order, skipping those the viewer
+     * deleted for themselves. Numbers absent from the result do not exist for this viewer.
+     */
+    List<Message> findBySeqRange(String conversationId, String viewerId, long fromSeq, long toSeq);
+
+    /**
+     * Newest-first page of media messages of the given types, projected to the gallery fields.
+     * Recalled messages and those the viewer deleted for themselves are skipped. Fetches {@code limit + 1} rows.
+     */
+    List<Message> findDirectMedia(String userId, String otherUserId, Collection<MessageType> types, MessageCursor before, int limit);
+
+    List<Message> findGroupMedia(String groupId, String viewerId, Collection<MessageType> types, MessageCursor before, int limit);
+
+    /**
+     * Messages created or modified after {@code after}, ordered by (updatedAt, id). Messages the
+     * viewer deleted for themselves are included so the client learns about the delete.
+     * Fetches {@code limit + 1} rows.
+     */
+    List<Message> findDirectChanges(String userId, String otherUserId, MessageCursor after, int limit);
+
+    List<Message> findGroupChanges(String groupId, MessageCursor after, int limit);
+
+    List<Message> findDirectPinned(String userId, String otherUserId);
+
+    List<Message> findGroupPinned(String groupId);
+
+    /**
+     * Case-insensitive match on content or file name inside one conversation, newest first,
+     * skipping recalled messages and those the viewer ({@code userId}) deleted for themselves.
+     * Unindexed regex scan, only used while the search index is unavailable.
+     */
+    List<Message> searchDirect(String userId, String otherUserId, String keyword, int offset, int limit);
+
+    List<Message> searchGroup(String groupId, String viewerId, String keyword, int offset, int limit);
+
+    /**
+     * Newest-first search across the user's 1:1 conversations and {@code groupIds}, fetching
+     * {@code limit + 1} rows. Blank keyword, types and range bounds are ignored.
+     */
+    List<Message> searchAll(String userId, Collection<String> groupIds, String keyword, Collection<MessageType> types,
+                            LocalDateTime from, LocalDateTime to, MessageCursor after, int limit);
+
+    /**
+     * Mark every unread message sent to {@code readerId} by {@code otherUserId} up to {@code readUpTo}
+     * as read in a single updateMany. Returns the number of messages changed.
+     */
+    long markDirectReadUpTo(String readerId, String otherUserId, LocalDateTime readUpTo);
+
+    /**
+     * Messages from others created after {@code after}; a range count on the conversation index
+     * used to re-derive an unread counter after a watermark moves.
+     */
+    long countDirectIncomingAfter(String readerId, String otherUserId, LocalDateTime after);
+
+    long countGroupIncomingAfter(String groupId, String readerId, LocalDateTime after);
+
+    /**
+     * Load only the createdAt of a message, used to turn a message id into a read watermark.
+     */
+    Optional<LocalDateTime> findCreatedAtById(String messageId);
+
+    /**
+     * Atomic single-document mutations. Each applies its guard and update in one findAndModify
+     * and returns the updated message, or empty when no message matched the guard.
+     */
+    Optional<Message> recallBySender(String messageId, String senderId, String placeholder);
+
+    Optional<Message> deleteForUser(String messageId, String userId);
+
+    /**
+     * Matches only while the message is still unread, so an empty result for an existing
+     * message means it was already read.
+     */
+    Optional<Message> markReadByReceiver(String messageId, String receiverId);
+
+    Optional<Message> editBySender(String messageId, String senderId, String content);
+
+    Optional<Message> setPinned(String messageId, boolean pinned);
+
+    /**
+     * Called once every message carries a conversationId. Persists the completion marker, from
+     * then on 1:1 queries on every instance use the conversation index instead of the
+     * sender/receiver {@code $or}.
+     */
+    void markConversationIdsBackfilled();
+
+    /**
+     * Whether the conversationId backfill finished, on this or any other instance.
+     */
+    boolean isConversationIdsBackfilled();
+
+    /**
+     * Load the fields needed to render quoted replies and forwards for the given ids with one $in query.
+     */
+    List<Message> findQuotedByIds(Collection<String> ids);
+}
@@ -0,0 +1,370 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.aggregation.LiteralOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.BackfillMarker;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+@RequiredArgsConstructor
+public class MessageRepositoryCustomImpl implements MessageRepositoryCustom {
+    /**
+     * What a chat bubble needs. Video infos, cloud public ids, pre-edit content and the
+     * per-user deleteBy map stay in the database; the full message is served by id.
+     */
+    static final String[] HISTORY_FIELDS = {"senderId", "receiverId", "groupId", "content", "type", "recalled",
+            "imageUrls", "fileName", "thumbnail", "replyToMessageId", "forwardedFrom", "hiddenFor", "status",
+            "isRead", "isPinned", "pinnedAt", "createdAt", "seq"};
+
+    // Until the backfill marker shows up, re-read it at most this often; another node may finish first
+    private static final long BACKFILL_MARKER_RECHECK_MS = 60_000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private volatile boolean conversationIdsBackfilled;
+    private volatile long backfillMarkerCheckedAt;
+
+    @Override
+    public List<Message> findDirectPage(String userId, String otherUserId, String viewerId, MessageCursor before, MessageCursor after, int limit) {
+        return findPage(directScope(userId, otherUserId), viewerId, before, after, limit);
+    }
+
+    @Override
+    public List<Message> findGroupPage(String groupId, String viewerId, MessageCursor before, MessageCursor after, int limit) {
+        return findPage(groupScope(groupId), viewerId, before, after, limit);
+    }
+
+    @Override
+    public List<Message> findDirectMedia(String userId, String otherUserId, Collection<MessageType> types, MessageCursor before, int limit) {
+        return findMedia(directScope(userId, otherUserId), userId, types, before, limit);
+    }
+
+    @Override
+    public List<Message> findGroupMedia(String groupId, String viewerId, Collection<MessageType> types, MessageCursor before, int limit) {
+        return findMedia(groupScope(groupId), viewerId, types, before, limit);
+    }
+
+    @Override
+    public List<Message> findDirectPinned(String userId, String otherUserId) {
+        return findPinned(directScope(userId, otherUserId));
+    }
+
+    @Override
+    public List<Message> findGroupPinned(String groupId) {
+        return findPinned(groupScope(groupId));
+    }
+
+    @Override
+    public List<Message> searchDirect(String userId, String otherUserId, String keyword, int offset, int limit) {
+        return search(directScope(userId, otherUserId), userId, keyword, offset, limit);
+    }
+
+    @Override
+    public List<Message> searchGroup(String groupId, String viewerId, String keyword, int offset, int limit) {
+        return search(groupScope(groupId), viewerId, keyword, offset, limit);
+    }
+
+    @Override
+    public List<Message> searchAll(String userId, Collection<String> groupIds, String keyword, Collection<MessageType> types,
+                                   LocalDateTime from, LocalDateTime to, MessageCursor after, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(new Criteria().orOperator(
+                Criteria.where("senderId").is(userId).and("groupId").is(null),
+                Criteria.where("receiverId").is(userId),
+                Criteria.where("groupId").in(groupIds)
+        ));
+        criteria.add(Criteria.where("hiddenFor").ne(userId).and("recalled").ne(true));
+        if (keyword != null && !keyword.isBlank()) {
+            Pattern pattern = Pattern.compile(Pattern.quote(keyword), Pattern.CASE_INSENSITIVE);
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("content").regex(pattern),
+                    Criteria.where("fileName").regex(pattern)
+            ));
+        }
+        if (types != null && !types.isEmpty()) {
+            criteria.add(Criteria.where("type").in(types));
+        }
+        if (from != null) {
+            criteria.add(Criteria.where("createdAt").gte(from));
+        }
+        if (to != null) {
+            criteria.add(Criteria.where("createdAt").lte(to));
+        }
+        if (after != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("_id").lt(after.id())
+            ));
+        }
+        Query query = new Query(new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(limit + 1);
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    @Override
+    public long markDirectReadUpTo(String readerId, String otherUserId, LocalDateTime readUpTo) {
+        Query query = new Query(new Criteria().andOperator(
+                directScope(readerId, otherUserId),
+                Criteria.where("receiverId").is(readerId)
+                        .and("isRead").is(false)
+                        .and("createdAt").lte(readUpTo)
+        ));
+        Update update = new Update()
+                .set("isRead", true)
+                .set("status", MessageStatus.READ);
+        return mongoTemplate.updateMulti(query, update, Message.class).getModifiedCount();
+    }
+
+    @Override
+    public long countDirectIncomingAfter(String readerId, String otherUserId, LocalDateTime after) {
+        return countIncomingAfter(directScope(readerId, otherUserId), readerId, after);
+    }
+
+    @Override
+    public long countGroupIncomingAfter(String groupId, String readerId, LocalDateTime after) {
+        return countIncomingAfter(groupScope(groupId), readerId, after);
+    }
+
+    @Override
+    public Optional<LocalDateTime> findCreatedAtById(String messageId) {
+        Query query = Query.query(Criteria.where("_id").is(messageId));
+        query.fields().include("createdAt");
+        return Optional.ofNullable(mongoTemplate.findOne(query, Message.class)).map(Message::getCreatedAt);
+    }
+
+    @Override
+    public Optional<Message> recallBySender(String messageId, String senderId, String placeholder) {
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("contentAfterRecallOrDeleteOrEdit").toValueOf(Fields.field("content"))
+                .set("content").toValue(LiteralOperators.Literal.asLiteral(placeholder))
+                .set("recalled").toValue(true)
+                .set("updatedAt").toValue(LocalDateTime.now());
+        // A second recall would copy the placeholder over the saved original
+        return modify(Criteria.where("_id").is(messageId).and("senderId").is(senderId).and("recalled").is(false), update);
+    }
+
+    @Override
+    public Optional<Message> deleteForUser(String messageId, String userId) {
+        // The id becomes a field name under deleteBy, a '.' or '$' in it would address another path
+        if (userId == null || userId.isEmpty() || userId.contains(".") || userId.startsWith("$")) {
+            throw new IllegalArgumentException("Invalid user id: " + userId);
+        }
+        // Only hides the message for this user, the content stays intact for everyone else
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("deleteBy." + userId, now)
+                .addToSet("hiddenFor", userId)
+                .set("updatedAt", now);
+        return modify(Criteria.where("_id").is(messageId), update);
+    }
+
+    @Override
+    public Optional<Message> markReadByReceiver(String messageId, String receiverId) {
+        Update update = new Update()
+                .set("isRead", true)
+                .set("updatedAt", LocalDateTime.now());
+        return modify(Criteria.where("_id").is(messageId).and("receiverId").is(receiverId).and("isRead").is(false), update);
+    }
+
+    @Override
+    public Optional<Message> editBySender(String messageId, String senderId, String content) {
+        // Content comes from the client, $literal keeps a leading '$' from being read as a field path
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("contentAfterRecallOrDeleteOrEdit").toValueOf(Fields.field("content"))
+                .set("content").toValue(LiteralOperators.Literal.asLiteral(content))
+                .set("editId").toValue(true)
+                .set("updatedAt").toValue(LocalDateTime.now());
+        // Someone else deleting it for themselves does not stop the sender, only their own delete does
+        return modify(Criteria.where("_id").is(messageId)
+                .and("senderId").is(senderId)
+                .and("recalled").is(false)
+                .and("hiddenFor").ne(senderId), update);
+    }
+
+    @Override
+    public Optional<Message> setPinned(String messageId, boolean pinned) {
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("isPinned", pinned)
+                .set("pinnedAt", pinned ? now : null)
+                .set("updatedAt", now);
+        return modify(Criteria.where("_id").is(messageId), update);
+    }
+
+    @Override
+    public List<Message> findQuotedByIds(Collection<String> ids) {
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        query.fields().include("senderId", "receiverId", "groupId", "conversationId", "type", "content", "recalled",
+                "imageUrls", "videoInfos", "thumbnail", "fileName", "createdAt", "updatedAt");
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    @Override
+    public void markConversationIdsBackfilled() {
+        mongoTemplate.save(new BackfillMarker(BackfillMarker.CONVERSATION_IDS, LocalDateTime.now(), null));
+        conversationIdsBackfilled = true;
+    }
+
+    @Override
+    public boolean isConversationIdsBackfilled() {
+        if (!conversationIdsBackfilled) {
+            long now = System.currentTimeMillis();
+            if (now - backfillMarkerCheckedAt >= BACKFILL_MARKER_RECHECK_MS) {
+                backfillMarkerCheckedAt = now;
+                conversationIdsBackfilled = mongoTemplate.exists(
+                        Query.query(Criteria.where("_id").is(BackfillMarker.CONVERSATION_IDS)), BackfillMarker.class);
+            }
+        }
+        return conversationIdsBackfilled;
+    }
+
+    private Optional<Message> modify(Criteria guard, UpdateDefinition update) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(new Query(guard), update,
+                FindAndModifyOptions.options().returnNew(true), Message.class));
+    }
+
+    private Criteria directScope(String userId, String otherUserId) {
+        if (isConversationIdsBackfilled()) {
+            return Criteria.where("conversationId").is(ConversationKeys.direct(userId, otherUserId));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("senderId").is(userId).and("receiverId").is(otherUserId),
+                Criteria.where("senderId").is(otherUserId).and("receiverId").is(userId)
+        );
+    }
+
+    private Criteria groupScope(String groupId) {
+        if (isConversationIdsBackfilled()) {
+            return Criteria.where("conversationId").is(ConversationKeys.group(groupId));
+        }
+        return Criteria.where("groupId").is(groupId);
+    }
+
+    private List<Message> findPage(Criteria scope, String viewerId, MessageCursor before, MessageCursor after, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(scope);
+        if (viewerId != null) {
+            criteria.add(Criteria.where("hiddenFor").ne(viewerId));
+        }
+        Sort.Direction direction = Sort.Direction.DESC;
+
+        if (before != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(before.createdAt()),
+                    Criteria.where("createdAt").is(before.createdAt()).and("_id").lt(before.id())
+            ));
+        }
+        if (after != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").gt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("_id").gt(after.id())
+            ));
+            // Only walk forwards when no upper bound is given, otherwise take the newest rows of the range
+            if (before == null) {
+                direction = Sort.Direction.ASC;
+            }
+        }
+
+        Query query = new Query(new Criteria().andOperator(criteria))
+                .with(Sort.by(direction, "createdAt", "_id"))
+                .limit(limit + 1);
+        query.fields().include(HISTORY_FIELDS);
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    @Override
+    public List<Message> findDirectChanges(String userId, String otherUserId, MessageCursor after, int limit) {
+        return findChanges(directScope(userId, otherUserId), after, limit);
+    }
+
+    @Override
+    public List<Message> findGroupChanges(String groupId, MessageCursor after, int limit) {
+        return findChanges(groupScope(groupId), after, limit);
+    }
+
+    @Override
+    public List<Message> findBySeqRange(String conversationId, String viewerId, long fromSeq, long toSeq) {
+        Query query = Query.query(Criteria.where("conversationId").is(conversationId)
+                        .and("seq").gte(fromSeq).lte(toSeq)
+                        .and("hiddenFor").ne(viewerId))
+                .with(Sort.by(Sort.Direction.ASC, "seq"));
+        query.fields().include(HISTORY_FIELDS);
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    private List<Message> findChanges(Criteria scope, MessageCursor after, int limit) {
+        Criteria since = new Criteria().orOperator(
+                Criteria.where("updatedAt").gt(after.createdAt()),
+                Criteria.where("updatedAt").is(after.createdAt()).and("_id").gt(after.id())
+        );
+        Query query = new Query(new Criteria().andOperator(scope, since))
+                .with(Sort.by(Sort.Direction.ASC, "updatedAt", "_id"))
+                .limit(limit + 1);
+        // updatedAt on top of the history fields, the next sync cursor is built from it
+        query.fields().include(HISTORY_FIELDS).include("updatedAt");
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    private List<Message> findMedia(Criteria scope, String viewerId, Collection<MessageType> types, MessageCursor before, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(scope);
+        criteria.add(Criteria.where("type").in(types).and("recalled").ne(true).and("hiddenFor").ne(viewerId));
+        if (before != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(before.createdAt()),
+                    Criteria.where("createdAt").is(before.createdAt()).and("_id").lt(before.id())
+            ));
+        }
+
+        Query query = new Query(new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(limit + 1);
+        query.fields().include("senderId", "type", "content", "imageUrls", "thumbnail", "fileName", "createdAt");
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    private long countIncomingAfter(Criteria scope, String readerId, LocalDateTime after) {
+        return mongoTemplate.count(new Query(new Criteria().andOperator(
+                scope,
+                Criteria.where("createdAt").gt(after).and("senderId").ne(readerId)
+        )), Message.class);
+    }
+
+    private List<Message> findPinned(Criteria scope) {
+        Query query = new Query(new Criteria().andOperator(scope, Criteria.where("isPinned").is(true)))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    private List<Message> search(Criteria scope, String viewerId, String keyword, int offset, int limit) {
+        Pattern pattern = Pattern.compile(Pattern.quote(keyword), Pattern.CASE_INSENSITIVE);
+        // Same visibility as the index: nothing the viewer deleted for themselves, no recall notices
+        Query query = new Query(new Criteria().andOperator(scope,
+                Criteria.where("hiddenFor").ne(viewerId).and("recalled").ne(true),
+                new Criteria().orOperator(
+                        Criteria.where("content").regex(pattern),
+                        Criteria.where("fileName").regex(pattern)
+                ))).with(Sort.by(Sort.Direction.DESC, "createdAt")).skip(offset).limit(limit);
+        return mongoTemplate.find(query, Message.class);
+    }
+}
@@ -0,0 +1,12 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.fit.zalo_app_be.model.ReadWatermark;
+
+import java.util.Optional;
+
+@Repository
+public interface ReadWatermarkRepository extends MongoRepository<ReadWatermark, String>, ReadWatermarkRepositoryCustom {
+    Optional<ReadWatermark> findByUserIdAndConversationId(String userId, String conversationId);
+}
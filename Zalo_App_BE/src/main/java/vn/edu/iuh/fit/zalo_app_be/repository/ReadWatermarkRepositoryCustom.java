@@ -0,0 +1,10 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import java.time.LocalDateTime;
+
+public interface ReadWatermarkRepositoryCustom {
+    /**
+     * Move the user's watermark forward to {@code readUpTo}; never moves it back.
+     */
+    void advance(String userId, String conversationId, LocalDateTime readUpTo);
+}
@@ -0,0 +1,24 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.fit.zalo_app_be.model.ReadWatermark;
+
+import java.time.LocalDateTime;
+
+@RequiredArgsConstructor
+public class ReadWatermarkRepositoryCustomImpl implements ReadWatermarkRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void advance(String userId, String conversationId, LocalDateTime readUpTo) {
+        Query query = Query.query(Criteria.where("userId").is(userId).and("conversationId").is(conversationId));
+        Update update = new Update()
+                .max("readUpTo", readUpTo)
+                .set("updatedAt", LocalDateTime.now());
+        mongoTemplate.upsert(query, update, ReadWatermark.class);
+    }
+}
@@ -0,0 +1,17 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.fit.zalo_app_be.model.UnreadCounter;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UnreadCounterRepository extends MongoRepository<UnreadCounter, String>, UnreadCounterRepositoryCustom {
+    List<UnreadCounter> findByUserIdAndCountGreaterThan(String userId, long count);
+
+    List<UnreadCounter> findByConversationIdAndUserIdIn(String conversationId, Collection<String> userIds);
+
+    List<UnreadCounter> findByUserIdAndConversationIdIn(String userId, Collection<String> conversationIds);
+}
@@ -0,0 +1,18 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import java.util.Collection;
+
+public interface UnreadCounterRepositoryCustom {
+    /**
+     * Add one unread message for every user in {@code userIds}, creating counters as needed,
+     * in a single bulk write.
+     */
+    void incrementAll(String conversationId, Collection<String> userIds);
+
+    void setCount(String userId, String conversationId, long count);
+
+    /**
+     * Subtract {@code by} without going below zero.
+     */
+    void decrement(String userId, String conversationId, long by);
+}
@@ -0,0 +1,56 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.fit.zalo_app_be.model.UnreadCounter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class UnreadCounterRepositoryCustomImpl implements UnreadCounterRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void incrementAll(String conversationId, Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        for (String userId : userIds) {
+            bulk.upsert(key(userId, conversationId), new Update().inc("count", 1).set("updatedAt", now));
+        }
+        bulk.execute();
+    }
+
+    @Override
+    public void setCount(String userId, String conversationId, long count) {
+        mongoTemplate.upsert(key(userId, conversationId),
+                new Update().set("count", count).set("updatedAt", LocalDateTime.now()),
+                UnreadCounter.class);
+    }
+
+    @Override
+    public void decrement(String userId, String conversationId, long by) {
+        // Pipeline update so the floor at zero is applied atomically on the server
+        AggregationExpression floored = context -> new Document("$max",
+                List.of(new Document("$subtract", List.of("$count", by)), 0));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("count").toValue(floored)
+                .set("updatedAt").toValue(LocalDateTime.now());
+        mongoTemplate.updateFirst(key(userId, conversationId), update, UnreadCounter.class);
+    }
+
+    private Query key(String userId, String conversationId) {
+        return Query.query(Criteria.where("userId").is(userId).and("conversationId").is(conversationId));
+    }
+}
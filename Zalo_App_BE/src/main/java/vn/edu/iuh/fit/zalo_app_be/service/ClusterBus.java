@@ -0,0 +1,33 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+import vn.edu.iuh.fit.zalo_app_be.model.ClusterEvent;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Transport between backend instances for broker messages and the presence used to route
+ * them. Selected with {@code app.websocket.cluster.bus}: {@code local} keeps everything in
+ * this JVM, {@code mongo} shares events and presence through MongoDB change streams.
+ */
+public interface ClusterBus {
+    /**
+     * Hand an event to the nodes in its targets, or to every other node when targets is null.
+     * Must return quickly, it runs on the thread that sent the broker message.
+     */
+    void publish(ClusterEvent event);
+
+    /**
+     * Start delivering events other nodes published for {@code nodeId} to {@code listener}.
+     */
+    void subscribe(String nodeId, Consumer<ClusterEvent> listener);
+
+    void markOnline(String nodeId, String userId);
+
+    void markOffline(String nodeId, String userId);
+
+    /**
+     * Nodes currently holding a session of the user, as far as this node knows.
+     */
+    Set<String> nodesOf(String userId);
+}
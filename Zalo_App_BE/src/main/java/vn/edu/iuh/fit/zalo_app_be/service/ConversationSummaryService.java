@@ -0,0 +1,16 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ConversationPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.util.Collection;
+
+public interface ConversationSummaryService {
+    void onMessageSaved(Message message, Collection<String> recipientIds);
+
+    void onMessageChanged(Message message);
+
+    void onMessageDeleted(Message message, String userId);
+
+    ConversationPageResponse getConversations(String userId, String before, int limit);
+}
@@ -3,6 +3,7 @@
 package vn.edu.iuh.fit.zalo_app_be.service;
 
 
+import vn.edu.iuh.fit.zalo_app_be.common.AccessToken;
 import vn.edu.iuh.fit.zalo_app_be.common.TokenType;
 
 public interface JwtService {
@@ -14,5 +15,11 @@ public interface JwtService {
 
     String extractUsername(String token, TokenType tokenType);
 
+    /**
+     * Verify signature, expiry and revocation of an access token without a database query.
+     * Used once per STOMP session instead of on every frame.
+     */
+    AccessToken verifyAccessToken(String token);
+
     void blackListToken(String token, TokenType type);
 }
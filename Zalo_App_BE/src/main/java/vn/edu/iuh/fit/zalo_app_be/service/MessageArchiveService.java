@@ -0,0 +1,21 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.util.List;
+
+public interface MessageArchiveService {
+    /**
+     * Move unpinned messages older than {@code max-age-days} out of the hot collection into
+     * compressed archive segments, one conversation at a time.
+     */
+    void archiveOldMessages();
+
+    /**
+     * Complete a history page read from the hot tier with archived messages when the cursor
+     * range reaches past the archive horizon. Rows and result use the hot query's order and
+     * hide the same messages for {@code viewerId}.
+     */
+    List<Message> mergePage(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit, List<Message> hotRows);
+}
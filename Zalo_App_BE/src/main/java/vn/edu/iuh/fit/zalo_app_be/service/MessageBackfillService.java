@@ -0,0 +1,39 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+public interface MessageBackfillService {
+    /**
+     * Stamp conversationId on messages written before the field existed, in small throttled
+     * batches so it can run while the app is serving traffic. Skipped once any instance
+     * recorded it as finished.
+     */
+    void backfillConversationIds();
+
+    /**
+     * Derive hiddenFor from the deleteBy map on messages deleted for someone before the field
+     * existed, so history queries can filter them server-side.
+     */
+    void backfillHiddenFor();
+
+    /**
+     * Seed the inbox summaries from the newest message of every conversation, in conversation
+     * order. Progress is kept in a {@link vn.edu.iuh.fit.zalo_app_be.model.BackfillMarker}, so an
+     * interrupted run resumes where it stopped; live writes never regress what it seeds.
+     */
+    void backfillConversationSummaries();
+
+    /**
+     * Pack the history of every conversation that has no origin bucket yet into message buckets,
+     * one conversation at a time. Only runs while the bucket layout is enabled. When the layout
+     * was off since the last complete migration, live appends were missed, so every conversation
+     * is invalidated and packed again.
+     */
+    void migrateMessageBuckets();
+
+    /**
+     * Record that a bucket write for the conversation failed. Its history is read from the
+     * messages collection until the next repair pass has migrated it again.
+     */
+    void markBucketsStale(String conversationId);
+
+    boolean isBucketsStale(String conversationId);
+}
@@ -4,39 +4,103 @@ package vn.edu.iuh.fit.zalo_app_be.service;
 
 
 import org.springframework.web.multipart.MultipartFile;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.ReadUpToRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MediaPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageHistoryResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessagePageResponse;
 import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageSearchPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
 import vn.edu.iuh.fit.zalo_app_be.model.Message;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessageService {
     MessageResponse saveMessage(MessageRequest request);
 
+    /**
+     * Queue the message for the next group commit; completes once it is durable. A request
+     * repeating an earlier clientMsgId of the same sender completes with the original message
+     * and {@code duplicate} set, nothing is written for it.
+     */
+    CompletableFuture<SendResult> saveMessageAsync(MessageRequest request);
+
     Map<String,String> uploadFile(MultipartFile files, MessageRequest request);
 
-    List<MessageResponse> getChatHistory(String userOtherId);
+    MessagePageResponse getChatHistory(String userOtherId, String before, String after, int limit);
+
+    MessagePageResponse getGroupChatHistory(String groupId, String before, String after, int limit);
 
-    List<MessageResponse> getGroupChatHistory(String groupId);
+    /**
+     * Messages of a 1:1 conversation or group with sequence numbers in {@code [fromSeq, toSeq]},
+     * for clients filling a gap they noticed in the live stream. At most 200 numbers per call.
+     */
+    List<MessageResponse> getMessagesBySeq(String userId, String otherUserId, String groupId, long fromSeq, long toSeq);
 
-    void recallMessage(String messageId, String userId);
+    /**
+     * Mutations below are single atomic updates and return the updated message, ready to be
+     * handed to the notification layer without reading it again.
+     */
+    MessageResponse recallMessage(String messageId, String userId);
 
-    void deleteMessage(String messageId, String userId);
+    MessageResponse deleteMessage(String messageId, String userId);
 
     MessageResponse forwardMessage(String messageId, String userId, String receiverId, String groupId);
 
-    void readMessage(String messageId, String receiverId);
+    /**
+     * Forward one message to several friends and groups at once: the source is read once, the
+     * targets are validated with one query per kind and all copies are written with one insert.
+     * Nothing is written when any target is invalid. Responses follow the order receivers then groups.
+     */
+    List<MessageResponse> forwardMessage(String messageId, String userId, List<String> receiverIds, List<String> groupIds);
+
+    MessageResponse readMessage(String messageId, String receiverId);
 
-    void editMessage(String messageId, String userId,String content);
+    ReadReceiptResponse markConversationRead(ReadUpToRequest request);
+
+    MessageResponse editMessage(String messageId, String userId, String content);
 
     MessageResponse convertToMessageResponse(Message message);
 
-    void pinMessage(String messageId, String userId);
+    /**
+     * Slim form used in history lists, sync batches and the tail cache: only what a chat bubble
+     * renders, {@code deletedByUsers} taken from hiddenFor. Works on rows read with the history projection.
+     */
+    MessageHistoryResponse convertToHistoryResponse(Message message);
+
+    /**
+     * Every field of one message the user can see, for the detail view of a slim history row.
+     */
+    MessageResponse getMessageDetail(String messageId, String userId);
+
+    MessageResponse pinMessage(String messageId, String userId);
 
-    void unpinMessage(String messageId, String userId);
+    MessageResponse unpinMessage(String messageId, String userId);
 
     List<MessageResponse> getPinnedMessages(String userId, String groupId);
 
-    List<MessageResponse> searchMessages(String userId, String otherUserId, String groupId, String keyword);
+    /**
+     * Ranked, accent-insensitive search inside one conversation, {@code size} results per page.
+     */
+    List<MessageResponse> searchMessages(String userId, String otherUserId, String groupId, String keyword, int page, int size);
+
+    /**
+     * Search every 1:1 conversation and group of the user at once, newest first, one page per cursor.
+     */
+    MessageSearchPageResponse searchAllMessages(String userId, String keyword, List<MessageType> types,
+                                                LocalDateTime from, LocalDateTime to, String cursor, int limit);
+
+    /**
+     * Media gallery of a 1:1 conversation or group, newest first. {@code types} defaults to every
+     * media type and may only contain IMAGE, IMAGE_GROUP, VIDEO, AUDIO and FILE.
+     */
+    MediaPageResponse getMedia(String userId, String otherUserId, String groupId, List<MessageType> types, String before, int limit);
+
+    record SendResult(MessageResponse response, boolean duplicate) {
+    }
 }
@@ -0,0 +1,19 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+import vn.edu.iuh.fit.zalo_app_be.controller.request.SyncRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
+
+import java.util.List;
+
+public interface MessageSyncService {
+    /**
+     * One batch per conversation of what changed after its cursor, for the REST fallback.
+     */
+    List<SyncBatchResponse> nextBatches(String userId, SyncRequest request);
+
+    /**
+     * Push every change after the given cursors to the user's sync queue in bounded batches.
+     * Clients subscribe to their live queues first so nothing written meanwhile is lost.
+     */
+    void stream(String userId, SyncRequest request);
+}
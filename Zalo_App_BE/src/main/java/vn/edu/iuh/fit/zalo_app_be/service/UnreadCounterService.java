@@ -0,0 +1,16 @@
+package vn.edu.iuh.fit.zalo_app_be.service;
+
+import vn.edu.iuh.fit.zalo_app_be.controller.response.UnreadCountResponse;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface UnreadCounterService {
+    void onMessageSaved(String conversationId, Collection<String> recipientIds);
+
+    void onConversationRead(String userId, String conversationId, long remainingUnread);
+
+    void onMessageRead(String userId, String conversationId);
+
+    List<UnreadCountResponse> getUnreadCounts(String userId);
+}
@@ -3,6 +3,9 @@
 package vn.edu.iuh.fit.zalo_app_be.service;
 
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
 import vn.edu.iuh.fit.zalo_app_be.model.Group;
 
 import java.util.List;
@@ -12,6 +15,16 @@ public interface WebSocketService {
 
     void sendGroupMessage(MessageRequest request);
 
+    /**
+     * Echo an already stored message back to its sender only, used for resent frames.
+     */
+    void acknowledgeSend(MessageRequest request);
+
+    /**
+     * Deliver one catch-up batch to the user's sync queue.
+     */
+    void sendSyncBatch(String userId, SyncBatchResponse batch);
+
     void notifyFriendRequest(String receiverId, String senderId);
 
     void notifyFriendRequestAccepted(String sender, String receiverUsername);
@@ -24,23 +37,25 @@ public interface WebSocketService {
 
     void notifyUserUnblocked(String userId, String unblockedUserId);
 
-    void notifyRecall(String messageId, String userId);
+    void notifyRecall(MessageResponse message, String userId);
+
+    void notifyGroupRecall(MessageResponse message, String userId, String groupId);
 
-    void notifyGroupRecall(String messageId, String userId, String groupId);
+    void notifyDelete(MessageResponse message, String userId);
 
-    void notifyDelete(String messageId, String userId);
+    void notifyGroupDelete(MessageResponse message, String userId, String groupId);
 
-    void notifyGroupDelete(String messageId, String userId, String groupId);
+    void notifyRead(MessageResponse message, String userId);
 
-    void notifyRead(String messageId, String userId);
+    void notifyReadUpTo(ReadReceiptResponse receipt);
 
-    void notifyEdit(String messageId, String userId, String content);
+    void notifyEdit(MessageResponse message, String userId);
 
-    void notifyGroupEdit(String messageId, String userId, String groupId);
+    void notifyGroupEdit(MessageResponse message, String userId, String groupId);
 
-    void notifyPin(String messageId, String userId);
+    void notifyPin(MessageResponse message, String userId);
 
-    void notifyUnpin(String messageId, String userId);
+    void notifyUnpin(MessageResponse message, String userId);
 
     void notifyGroupCreate(Group group);
 
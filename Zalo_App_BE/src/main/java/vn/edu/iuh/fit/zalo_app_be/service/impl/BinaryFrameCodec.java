@@ -0,0 +1,157 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional CBOR encoding of STOMP payloads for clients on the native WebSocket endpoint. JSON stays
+ * the default, a client opts in per session:
+ * <ul>
+ *     <li>SEND frames with {@code content-type:application/cbor} are decoded with
+ *     {@link #messageConverter()}, from either endpoint</li>
+ *     <li>a CONNECT with {@code accept-codec:cbor} on the native endpoint gets its JSON MESSAGE
+ *     frames re-encoded as CBOR. They go out as binary WebSocket frames, which Spring only does
+ *     for {@code application/octet-stream}, so they carry {@code codec:cbor} to tell them apart</li>
+ * </ul>
+ * Payloads are serialized once for every subscriber, so a broadcast is transcoded once and the
+ * result shared by all CBOR sessions receiving it.
+ */
+@Component
+@Slf4j(topic = "BINARY-FRAME-CODEC")
+public class BinaryFrameCodec implements ChannelInterceptor {
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+    public static final String ACCEPT_CODEC_HEADER = "accept-codec";
+    public static final String CODEC_HEADER = "codec";
+    public static final String CBOR = "cbor";
+    private static final String NATIVE_TRANSPORT_ATTRIBUTE = "nativeTransport";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    // JSON payload -> CBOR encoding, keyed by identity and dropped with the payload
+    private final Map<byte[], byte[]> encoded = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Counter transcoded;
+    private final Counter failed;
+
+    public BinaryFrameCodec(ObjectMapper jsonMapper, MeterRegistry meterRegistry) {
+        this.jsonMapper = jsonMapper;
+        this.transcoded = meterRegistry.counter("chat.websocket.codec.transcoded", "codec", CBOR, "result", "ok");
+        this.failed = meterRegistry.counter("chat.websocket.codec.transcoded", "codec", CBOR, "result", "failed");
+    }
+
+    /**
+     * Decodes SEND frames sent as CBOR. Strict, so frames without a content type and everything
+     * the application sends keep using JSON.
+     */
+    public MessageConverter messageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    /**
+     * Marks sessions opened on the native endpoint, only those can receive binary frames.
+     */
+    public HandshakeInterceptor nativeTransport() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler handler, Map<String, Object> attributes) {
+                attributes.put(NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler handler, Exception exception) {
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (type == null || sessionId == null) {
+            return message;
+        }
+        switch (type) {
+            case CONNECT -> negotiate(SimpMessageHeaderAccessor.wrap(message), sessionId);
+            case DISCONNECT -> cborSessions.remove(sessionId);
+            case MESSAGE -> {
+                // Registered on both channels: inbound SEND frames are MESSAGE too, but carry no subscription
+                if (SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()) != null && cborSessions.contains(sessionId)) {
+                    return encode(message);
+                }
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private void negotiate(SimpMessageHeaderAccessor accessor, String sessionId) {
+        String accepted = accessor.getFirstNativeHeader(ACCEPT_CODEC_HEADER);
+        if (accepted == null || !accepted.toLowerCase(Locale.ROOT).contains(CBOR)) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTRIBUTE))) {
+            log.debug("Session {} asked for CBOR over SockJS, which only carries text, keeping JSON", sessionId);
+            return;
+        }
+        cborSessions.add(sessionId);
+    }
+
+    private Message<?> encode(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (!(message.getPayload() instanceof byte[] json) || contentType == null
+                || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        byte[] cbor;
+        try {
+            cbor = encoded.get(json);
+            if (cbor == null) {
+                cbor = cborMapper.writeValueAsBytes(jsonMapper.readTree(json));
+                encoded.put(json, cbor);
+            }
+        } catch (IOException e) {
+            failed.increment();
+            log.warn("Failed to encode payload as CBOR, sending JSON: {}", e.getMessage());
+            return message;
+        }
+        transcoded.increment();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(CODEC_HEADER, CBOR);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+}
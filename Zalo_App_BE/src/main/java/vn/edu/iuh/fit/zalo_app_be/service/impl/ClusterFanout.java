@@ -0,0 +1,203 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import vn.edu.iuh.fit.zalo_app_be.model.ClusterEvent;
+import vn.edu.iuh.fit.zalo_app_be.service.ClusterBus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the simple broker work across instances. Registered as an interceptor on the broker
+ * channel, it copies every application message for a user or group destination onto the
+ * cluster bus, and re-sends messages relayed by other nodes into the local broker so they
+ * reach the sessions subscribed here.
+ * <p>
+ * User destinations ({@code /user/{userId}/...}) only go to nodes where the user is online;
+ * group topics go to every node, since any member may be connected anywhere.
+ */
+@Component
+@Slf4j(topic = "CLUSTER-FANOUT")
+public class ClusterFanout implements ChannelInterceptor {
+    static final String ORIGIN_HEADER = "clusterOrigin";
+    private static final String USER_PREFIX = "/user/";
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private final ClusterBus clusterBus;
+    private final MessageChannel brokerChannel;
+    private final String nodeId;
+    // sessionId -> userId of sessions on this node, and how many each user holds
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    private final Map<String, UserSessions> sessionCounts = new ConcurrentHashMap<>();
+    // Bumped each time a user comes online here, tells publishers whether they raced a change
+    private final AtomicLong generations = new AtomicLong();
+    private final Set<String> unpublished = ConcurrentHashMap.newKeySet();
+    private final Counter relayed;
+    private final Counter delivered;
+
+    public ClusterFanout(
+            ClusterBus clusterBus,
+            // The broker channel is built from the WebSocket config, which registers this interceptor
+            @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel,
+            @Value("${app.websocket.cluster.node-id:}") String nodeId,
+            MeterRegistry meterRegistry
+    ) {
+        this.clusterBus = clusterBus;
+        this.brokerChannel = brokerChannel;
+        this.nodeId = nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        this.relayed = meterRegistry.counter("chat.cluster.messages", "direction", "relayed");
+        this.delivered = meterRegistry.counter("chat.cluster.messages", "direction", "delivered");
+    }
+
+    @PostConstruct
+    public void start() {
+        clusterBus.subscribe(nodeId, this::deliver);
+        log.info("Cluster fan-out started as node {}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void sessionOpened(String sessionId, String userId) {
+        if (sessionId == null || userId == null || sessions.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+        UserSessions opened = sessionCounts.compute(userId, (key, current) -> current == null
+                ? new UserSessions(generations.incrementAndGet(), 1)
+                : new UserSessions(current.generation(), current.count() + 1));
+        if (opened.count() == 1) {
+            publishPresence(userId);
+        }
+    }
+
+    public void sessionClosed(String sessionId) {
+        // Disconnect can be reported twice for one session, only the first removal counts
+        String userId = sessionId != null ? sessions.remove(sessionId) : null;
+        if (userId == null) {
+            return;
+        }
+        UserSessions left = sessionCounts.computeIfPresent(userId, (key, current) -> current.count() > 1
+                ? new UserSessions(current.generation(), current.count() - 1)
+                : null);
+        if (left == null) {
+            publishPresence(userId);
+        }
+    }
+
+    /**
+     * Publishes whether the user currently holds a session here. The bus call may be a round trip,
+     * so it runs outside the count update; an open or close racing it can therefore publish
+     * first and be overwritten. Each publisher re-reads the generation afterwards and publishes
+     * again when it changed, so the last write always reflects the current state.
+     */
+    private void publishPresence(String userId) {
+        UserSessions published;
+        do {
+            published = sessionCounts.get(userId);
+            try {
+                if (published != null) {
+                    clusterBus.markOnline(nodeId, userId);
+                } else {
+                    clusterBus.markOffline(nodeId, userId);
+                }
+            } catch (Exception e) {
+                log.error("Failed to publish presence of {}, retrying later: {}", userId, e.getMessage());
+                unpublished.add(userId);
+                return;
+            }
+        } while (generationOf(sessionCounts.get(userId)) != generationOf(published));
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.cluster.presence-retry-ms:5000}")
+    public void retryPresence() {
+        for (String userId : unpublished) {
+            if (unpublished.remove(userId)) {
+                publishPresence(userId);
+            }
+        }
+    }
+
+    private static long generationOf(UserSessions userSessions) {
+        return userSessions != null ? userSessions.generation() : 0;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || destination == null
+                || accessor.getHeader(ORIGIN_HEADER) != null || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        List<String> targets;
+        if (destination.startsWith(USER_PREFIX)) {
+            targets = remoteNodesOf(destination);
+            if (targets.isEmpty()) {
+                return message;
+            }
+        } else if (destination.startsWith(TOPIC_PREFIX)) {
+            targets = null;
+        } else {
+            return message;
+        }
+        MimeType contentType = accessor.getContentType();
+        try {
+            clusterBus.publish(new ClusterEvent(null, nodeId, targets, destination,
+                    contentType != null ? contentType.toString() : null, payload, LocalDateTime.now()));
+            relayed.increment();
+        } catch (Exception e) {
+            // Local delivery must not depend on the bus
+            log.error("Failed to relay {} to the cluster: {}", destination, e.getMessage());
+        }
+        return message;
+    }
+
+    private List<String> remoteNodesOf(String destination) {
+        int end = destination.indexOf('/', USER_PREFIX.length());
+        String userId = destination.substring(USER_PREFIX.length(), end > 0 ? end : destination.length());
+        Set<String> nodes = clusterBus.nodesOf(userId);
+        List<String> remote = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            if (!node.equals(nodeId)) {
+                remote.add(node);
+            }
+        }
+        return remote;
+    }
+
+    private void deliver(ClusterEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(event.getDestination());
+        if (event.getContentType() != null) {
+            accessor.setContentType(MimeType.valueOf(event.getContentType()));
+        }
+        accessor.setHeader(ORIGIN_HEADER, event.getOrigin());
+        brokerChannel.send(MessageBuilder.createMessage(event.getPayload(), accessor.getMessageHeaders()));
+        delivered.increment();
+    }
+
+    private record UserSessions(long generation, int count) {
+    }
+}
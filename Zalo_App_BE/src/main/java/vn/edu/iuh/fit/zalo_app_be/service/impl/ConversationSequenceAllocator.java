@@ -0,0 +1,68 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.repository.ConversationSequenceRepository;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out per-conversation message sequence numbers with an atomic increment on the
+ * counter document. With the default {@code block-size} of 1 every message takes its own
+ * increment, so numbers follow allocation order across all instances. Sequence numbers are
+ * gap tolerant either way: a send that fails after allocating leaves its number unused.
+ * <p>
+ * A larger block saves the round trip for most sends, each instance serving its block from
+ * memory. Numbers are then only ordered per instance: two instances writing to the same
+ * conversation interleave their blocks, and the unused rest of a block is lost on restart or
+ * eviction. Clients treat a missing number as "maybe missing" and confirm it with the range
+ * endpoint, and order by createdAt rather than seq.
+ */
+@Component
+public class ConversationSequenceAllocator {
+    private final ConversationSequenceRepository conversationSequenceRepository;
+    private final int blockSize;
+    private final Map<String, Block> blocks;
+    private final Counter reservations;
+
+    public ConversationSequenceAllocator(
+            ConversationSequenceRepository conversationSequenceRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.message.sequence.block-size:1}") int blockSize,
+            @Value("${app.message.sequence.max-conversations:10000}") int maxConversations
+    ) {
+        this.conversationSequenceRepository = conversationSequenceRepository;
+        this.blockSize = Math.max(1, blockSize);
+        // Access-ordered so blocks of quiet conversations are dropped first
+        this.blocks = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Block> eldest) {
+                return size() > maxConversations;
+            }
+        });
+        this.reservations = meterRegistry.counter("chat.message.sequence.reservations");
+    }
+
+    public long next(String conversationId) {
+        Block block = blocks.computeIfAbsent(conversationId, key -> new Block());
+        synchronized (block) {
+            if (block.next > block.last) {
+                // An evicted block may still be in use here, a fresh reservation never overlaps it
+                long last = conversationSequenceRepository.reserve(conversationId, blockSize);
+                reservations.increment();
+                block.next = last - blockSize + 1;
+                block.last = last;
+            }
+            return block.next++;
+        }
+    }
+
+    private static class Block {
+        private long next = 1;
+        private long last = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ConversationPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ConversationSummaryResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.ConversationSummary;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.UnreadCounter;
+import vn.edu.iuh.fit.zalo_app_be.repository.ConversationSummaryRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.UnreadCounterRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.ConversationSummaryService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j(topic = "CONVERSATION-SUMMARY-SERVICE")
+public class ConversationSummaryServiceImpl implements ConversationSummaryService {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int PREVIEW_LENGTH = 100;
+    private static final String DELETED_PREVIEW = "Tin nhắn đã bị xóa";
+
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final UnreadCounterRepository unreadCounterRepository;
+
+    @Override
+    public void onMessageSaved(Message message, Collection<String> recipientIds) {
+        String conversationId = conversationIdOf(message);
+        if (conversationId == null) {
+            return;
+        }
+        Set<String> participants = new LinkedHashSet<>(recipientIds);
+        participants.add(message.getSenderId());
+
+        String preview = preview(message);
+        List<ConversationSummary> summaries = new ArrayList<>(participants.size());
+        for (String userId : participants) {
+            summaries.add(ConversationSummary.builder()
+                    .userId(userId)
+                    .conversationId(conversationId)
+                    .otherUserId(message.getGroupId() == null ? peerOf(message, userId) : null)
+                    .groupId(message.getGroupId())
+                    .lastMessageId(message.getId())
+                    .lastSenderId(message.getSenderId())
+                    .lastMessagePreview(preview)
+                    .lastMessageType(message.getType())
+                    .lastMessageAt(message.getCreatedAt())
+                    .build());
+        }
+        try {
+            conversationSummaryRepository.upsertLatest(summaries);
+        } catch (Exception e) {
+            // The next message in the conversation rewrites these rows, a missed update only leaves one preview stale
+            log.error("Failed to update conversation summaries for {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessageChanged(Message message) {
+        String conversationId = conversationIdOf(message);
+        if (conversationId != null) {
+            conversationSummaryRepository.updatePreview(conversationId, message.getId(), null, preview(message));
+        }
+    }
+
+    @Override
+    public void onMessageDeleted(Message message, String userId) {
+        String conversationId = conversationIdOf(message);
+        if (conversationId != null) {
+            // Only the deleting user's inbox changes, the other participants still see the message
+            conversationSummaryRepository.updatePreview(conversationId, message.getId(), userId, DELETED_PREVIEW);
+        }
+    }
+
+    @Override
+    public ConversationPageResponse getConversations(String userId, String before, int limit) {
+        int pageSize = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        List<ConversationSummary> rows = conversationSummaryRepository.findPage(userId, MessageCursor.decode(before), pageSize);
+        boolean hasMore = rows.size() > pageSize;
+        List<ConversationSummary> page = hasMore ? rows.subList(0, pageSize) : rows;
+
+        // One $in lookup joins unread counts for the whole page
+        List<String> conversationIds = page.stream().map(ConversationSummary::getConversationId).toList();
+        Map<String, Long> unread = conversationIds.isEmpty() ? Map.of()
+                : unreadCounterRepository.findByUserIdAndConversationIdIn(userId, conversationIds)
+                .stream()
+                .collect(Collectors.toMap(UnreadCounter::getConversationId, UnreadCounter::getCount, (a, b) -> a));
+
+        List<ConversationSummaryResponse> conversations = page.stream()
+                .map(summary -> ConversationSummaryResponse.builder()
+                        .conversationId(summary.getConversationId())
+                        .otherUserId(summary.getOtherUserId())
+                        .groupId(summary.getGroupId())
+                        .lastMessageId(summary.getLastMessageId())
+                        .lastSenderId(summary.getLastSenderId())
+                        .lastMessagePreview(summary.getLastMessagePreview())
+                        .lastMessageType(summary.getLastMessageType())
+                        .lastMessageAt(summary.getLastMessageAt())
+                        .unreadCount(unread.getOrDefault(summary.getConversationId(), 0L))
+                        .build())
+                .collect(Collectors.toList());
+
+        ConversationSummary last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return ConversationPageResponse.builder()
+                .conversations(conversations)
+                .nextCursor(last != null ? new MessageCursor(last.getLastMessageAt(), last.getId()).encode() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private String conversationIdOf(Message message) {
+        return message.getConversationId() != null ? message.getConversationId()
+                : ConversationKeys.of(message.getSenderId(), message.getReceiverId(), message.getGroupId());
+    }
+
+    private String peerOf(Message message, String userId) {
+        return userId.equals(message.getSenderId()) ? message.getReceiverId() : message.getSenderId();
+    }
+
+    private String preview(Message message) {
+        MessageType type = message.getType() != null ? message.getType() : MessageType.TEXT;
+        if (message.isRecalled() || type == MessageType.TEXT || type == MessageType.FORWARD) {
+            return truncate(message.getContent());
+        }
+        return switch (type) {
+            case IMAGE, IMAGE_GROUP -> "[Hình ảnh]";
+            case VIDEO -> "[Video]";
+            case AUDIO -> "[Âm thanh]";
+            case FILE -> "[Tệp] " + (message.getFileName() != null ? message.getFileName() : "");
+            case GIF -> "[GIF]";
+            case STICKER -> "[Sticker]";
+            default -> "";
+        };
+    }
+
+    private String truncate(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) + "…" : content;
+    }
+}
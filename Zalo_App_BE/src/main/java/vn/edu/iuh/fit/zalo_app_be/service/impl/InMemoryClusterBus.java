@@ -0,0 +1,77 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.model.ClusterEvent;
+import vn.edu.iuh.fit.zalo_app_be.service.ClusterBus;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Bus for nodes living in one JVM. With a single instance nobody else is subscribed, so
+ * nothing is ever relayed; several nodes sharing one instance is how the fan-out is tested.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.cluster.bus", havingValue = "local", matchIfMissing = true)
+@Slf4j(topic = "IN-MEMORY-CLUSTER-BUS")
+public class InMemoryClusterBus implements ClusterBus {
+    private final Map<String, Consumer<ClusterEvent>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> presence = new ConcurrentHashMap<>();
+    // Delivery happens off the publishing thread, like it would over the network
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "in-memory-cluster-bus");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void publish(ClusterEvent event) {
+        listeners.forEach((nodeId, listener) -> {
+            boolean addressed = event.getTargets() == null || event.getTargets().contains(nodeId);
+            if (addressed && !nodeId.equals(event.getOrigin())) {
+                dispatcher.execute(() -> {
+                    try {
+                        listener.accept(event);
+                    } catch (Exception e) {
+                        log.error("Node {} failed to deliver {}: {}", nodeId, event.getDestination(), e.getMessage());
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<ClusterEvent> listener) {
+        listeners.put(nodeId, listener);
+    }
+
+    @Override
+    public void markOnline(String nodeId, String userId) {
+        presence.computeIfAbsent(userId, key -> ConcurrentHashMap.newKeySet()).add(nodeId);
+    }
+
+    @Override
+    public void markOffline(String nodeId, String userId) {
+        presence.computeIfPresent(userId, (key, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public Set<String> nodesOf(String userId) {
+        return presence.getOrDefault(userId, Set.of());
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdown();
+    }
+}
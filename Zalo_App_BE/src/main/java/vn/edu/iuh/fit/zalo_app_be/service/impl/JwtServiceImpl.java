@@ -14,6 +14,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.common.AccessToken;
 import vn.edu.iuh.fit.zalo_app_be.common.TokenType;
 import vn.edu.iuh.fit.zalo_app_be.exception.BlackListException;
 import vn.edu.iuh.fit.zalo_app_be.exception.InvalidDataException;
@@ -54,6 +55,7 @@ public class JwtServiceImpl implements JwtService {
     private String resetKey;
 
     private final BlacklistedTokenRepository blacklistedTokenRepository;
+    private final RevokedTokenRegistry revokedTokenRegistry;
 
     @Override
     public String generateAccessToken(String userId, String username) {
@@ -103,6 +105,23 @@ public class JwtServiceImpl implements JwtService {
         return extractClaims(type, token, Claims::getSubject);
     }
 
+    @Override
+    public AccessToken verifyAccessToken(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            throw new IllegalArgumentException("Token is null or empty");
+        }
+
+        Claims claims = extractAllClaim(ACCESS_TOKEN, token);
+        if (revokedTokenRegistry.isRevoked(token)) {
+            log.info("Token is blacklisted");
+            throw new BlackListException(HttpStatus.NOT_FOUND, "Access Denied, token is blacklisted");
+        }
+
+        Date expiration = claims.getExpiration();
+        return new AccessToken(token, claims.getSubject(), claims.get("userId", String.class),
+                expiration != null ? expiration.toInstant() : null);
+    }
+
 
     @Override
     public void blackListToken(String token, TokenType type) {
@@ -114,6 +133,7 @@ public class JwtServiceImpl implements JwtService {
 
         BlacklistedToken blacklistedToken = new BlacklistedToken(token, expiryDate);
         blacklistedTokenRepository.save(blacklistedToken);
+        revokedTokenRegistry.revoke(token, expiryDate);
         log.info("Token blacklisted successfully");
     }
 
@@ -0,0 +1,196 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageArchiveRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageArchiveService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for chat history. Archived messages are always older than {@code max-age-days}
+ * at the time they were moved, so a page whose range stays newer than that horizon never
+ * needs the archive. Raising max-age-days later leaves already archived messages in place;
+ * they are only found again once they fall behind the new horizon.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j(topic = "MESSAGE-ARCHIVE-SERVICE")
+public class MessageArchiveServiceImpl implements MessageArchiveService {
+    private static final Comparator<Message> OLDEST_FIRST =
+            Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final AtomicBoolean running = new AtomicBoolean();
+    // The pass sleeps between segments, keep it off the shared scheduler thread
+    private final ExecutorService archiver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.message.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.message.archive.max-age-days:365}")
+    private long maxAgeDays;
+
+    @Value("${app.message.archive.segment-size:500}")
+    private int segmentSize;
+
+    @Value("${app.message.archive.pause-ms:200}")
+    private long pauseMs;
+
+    @Scheduled(initialDelayString = "${app.message.archive.interval-ms:3600000}",
+            fixedDelayString = "${app.message.archive.interval-ms:3600000}")
+    public void scheduledArchive() {
+        if (enabled && !running.get()) {
+            archiver.execute(this::archiveOldMessages);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        archiver.shutdownNow();
+    }
+
+    @Override
+    public void archiveOldMessages() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = horizon();
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(archivable(cutoff).and("conversationId").exists(true)),
+                    Aggregation.group("conversationId")
+            ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+            long conversations = 0;
+            long archived = 0;
+            try (Stream<Document> rows = mongoTemplate.aggregateStream(aggregation, Message.class, Document.class)) {
+                Iterator<Document> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    archived += archiveConversation(iterator.next().getString("_id"), cutoff);
+                    conversations++;
+                }
+            }
+            log.info("Message archive pass finished, {} messages from {} conversations archived before {}", archived, conversations, cutoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Message archive pass interrupted");
+        } catch (Exception e) {
+            log.error("Message archive pass failed: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public List<Message> mergePage(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit, List<Message> hotRows) {
+        boolean forward = after != null && before == null;
+        LocalDateTime horizon = horizon();
+        boolean reachesArchive;
+        if (forward) {
+            reachesArchive = after.createdAt().isBefore(horizon);
+        } else {
+            // Rows are newest first: a full page that ends after the horizon is complete
+            reachesArchive = hotRows.size() <= limit || hotRows.get(limit).getCreatedAt().isBefore(horizon);
+        }
+        if (!reachesArchive) {
+            return hotRows;
+        }
+
+        List<Message> archived = messageArchiveRepository.findPage(conversationId, viewerId, before, after, limit);
+        if (archived.isEmpty()) {
+            return hotRows;
+        }
+        // Hot rows go first so they win over a stale copy left by an interrupted archive run
+        Map<String, Message> merged = new LinkedHashMap<>();
+        hotRows.forEach(message -> merged.put(message.getId(), message));
+        archived.forEach(message -> merged.putIfAbsent(message.getId(), message));
+        return merged.values().stream()
+                .sorted(forward ? OLDEST_FIRST : OLDEST_FIRST.reversed())
+                .limit(limit + 1L)
+                .toList();
+    }
+
+    private long archiveConversation(String conversationId, LocalDateTime cutoff) throws InterruptedException {
+        Query query = new Query(archivable(cutoff).and("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+        long archived = 0;
+        List<Message> chunk = new ArrayList<>(segmentSize);
+        try (Stream<Message> messages = mongoTemplate.stream(query, Message.class)) {
+            Iterator<Message> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == segmentSize || !iterator.hasNext()) {
+                    archived += moveToArchive(conversationId, chunk);
+                    chunk = new ArrayList<>(segmentSize);
+                    Thread.sleep(pauseMs);
+                }
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Write the segment first, then delete the hot copies. A message changed in between keeps
+     * its hot copy and is dropped from the segment again, so the next pass archives it once,
+     * with its new content.
+     */
+    long moveToArchive(String conversationId, List<Message> chunk) {
+        String segmentId = messageArchiveRepository.writeSegment(conversationId, chunk);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+        for (Message message : chunk) {
+            bulk.remove(Query.query(Criteria.where("_id").is(message.getId()).and("updatedAt").is(message.getUpdatedAt())));
+        }
+        long removed = bulk.execute().getDeletedCount();
+        if (removed < chunk.size()) {
+            Set<String> stillHot = new HashSet<>();
+            Query survivors = Query.query(Criteria.where("_id").in(chunk.stream().map(Message::getId).toList()));
+            survivors.fields().include("_id");
+            mongoTemplate.find(survivors, Message.class).forEach(message -> stillHot.add(message.getId()));
+            List<Message> archived = chunk.stream().filter(message -> !stillHot.contains(message.getId())).toList();
+            messageArchiveRepository.replaceSegment(segmentId, conversationId, archived);
+        }
+        log.debug("Archived {} of {} messages from conversation {}", removed, chunk.size(), conversationId);
+        return removed;
+    }
+
+    private Criteria archivable(LocalDateTime cutoff) {
+        // Pinned messages stay hot so the pinned lists keep working from the messages collection
+        return Criteria.where("createdAt").lt(cutoff).and("isPinned").ne(true);
+    }
+
+    private LocalDateTime horizon() {
+        return LocalDateTime.now().minusDays(maxAgeDays);
+    }
+}
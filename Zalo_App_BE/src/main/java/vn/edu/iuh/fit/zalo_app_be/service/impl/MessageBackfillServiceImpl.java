@@ -0,0 +1,307 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.model.BackfillMarker;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.BackfillMarkerRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.GroupRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageBucketRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.ConversationSummaryService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageBackfillService;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j(topic = "MESSAGE-BACKFILL-SERVICE")
+public class MessageBackfillServiceImpl implements MessageBackfillService {
+    private final MongoTemplate mongoTemplate;
+    private final MessageRepository messageRepository;
+    private final GroupRepository groupRepository;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageBucketRepository messageBucketRepository;
+    private final BackfillMarkerRepository backfillMarkerRepository;
+
+    @Value("${app.message.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.message.backfill.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.message.backfill.pause-ms:200}")
+    private long pauseMs;
+
+    @Value("${app.message.buckets.enabled:false}")
+    private boolean bucketsEnabled;
+
+    @Value("${app.message.buckets.capacity:200}")
+    private int bucketCapacity;
+
+    // Conversations whose buckets missed a write, re-migrated by the repair pass
+    private final Set<String> staleBuckets = ConcurrentHashMap.newKeySet();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread worker = new Thread(() -> {
+            if (!bucketsEnabled) {
+                forgetMessageBuckets();
+            }
+            if (!enabled) {
+                log.info("Conversation backfill is disabled");
+                return;
+            }
+            backfillConversationIds();
+            backfillHiddenFor();
+            backfillConversationSummaries();
+            if (bucketsEnabled) {
+                migrateMessageBuckets();
+            }
+        }, "message-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void backfillConversationIds() {
+        try {
+            if (messageRepository.isConversationIdsBackfilled()) {
+                log.info("Conversation backfill already finished, skipping");
+                return;
+            }
+            String lastId = null;
+            long updated = 0;
+            while (true) {
+                Criteria criteria = Criteria.where("conversationId").exists(false);
+                if (lastId != null) {
+                    criteria = criteria.and("_id").gt(lastId);
+                }
+                Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+                query.fields().include("senderId", "receiverId", "groupId");
+
+                List<Message> batch = mongoTemplate.find(query, Message.class);
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+                int pending = 0;
+                for (Message message : batch) {
+                    String conversationId = ConversationKeys.of(message.getSenderId(), message.getReceiverId(), message.getGroupId());
+                    if (conversationId == null) {
+                        log.warn("Message {} has no receiver or group, skipping", message.getId());
+                        continue;
+                    }
+                    // Guard on the missing field so a concurrent writer is never overwritten
+                    bulk.updateOne(
+                            Query.query(Criteria.where("_id").is(message.getId()).and("conversationId").exists(false)),
+                            Update.update("conversationId", conversationId)
+                    );
+                    pending++;
+                }
+                if (pending > 0) {
+                    updated += bulk.execute().getModifiedCount();
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                log.debug("Backfilled conversationId up to message {} ({} updated so far)", lastId, updated);
+
+                Thread.sleep(pauseMs);
+            }
+
+            messageRepository.markConversationIdsBackfilled();
+            log.info("Conversation backfill finished, {} messages updated", updated);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Conversation backfill interrupted");
+        } catch (Exception e) {
+            log.error("Conversation backfill failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void backfillHiddenFor() {
+        try {
+            // Few messages are ever deleted for someone, so a single server-side update is enough
+            AggregationExpression deleteByKeys = context -> new Document("$map", new Document()
+                    .append("input", new Document("$objectToArray", "$deleteBy"))
+                    .append("in", "$$this.k"));
+            AggregationUpdate update = AggregationUpdate.update().set("hiddenFor").toValueOf(deleteByKeys);
+            long updated = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("deleteBy").type(3).and("hiddenFor").exists(false)), update, Message.class
+            ).getModifiedCount();
+            log.info("hiddenFor backfill finished, {} messages updated", updated);
+        } catch (Exception e) {
+            log.error("hiddenFor backfill failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void backfillConversationSummaries() {
+        try {
+            BackfillMarker marker = backfillMarkerRepository.findById(BackfillMarker.CONVERSATION_SUMMARIES)
+                    .orElseGet(() -> new BackfillMarker(BackfillMarker.CONVERSATION_SUMMARIES, null, null));
+            if (marker.getCompletedAt() != null) {
+                log.info("Conversation summary backfill already finished, skipping");
+                return;
+            }
+            Criteria criteria = Criteria.where("conversationId").exists(true);
+            if (marker.getResumeAfter() != null) {
+                log.info("Resuming conversation summary backfill after {}", marker.getResumeAfter());
+                criteria = Criteria.where("conversationId").gt(marker.getResumeAfter());
+            }
+            // Sort matches the conversation history index so $first is resolved per conversation from the index,
+            // the groups are sorted again so progress can be saved as the last conversation seeded
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(criteria),
+                    Aggregation.sort(Sort.by(Sort.Direction.ASC, "conversationId").and(Sort.by(Sort.Direction.DESC, "createdAt"))),
+                    Aggregation.group("conversationId").first("$$ROOT").as("last"),
+                    Aggregation.sort(Sort.Direction.ASC, "_id")
+            ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+            long seeded = 0;
+            try (Stream<Document> rows = mongoTemplate.aggregateStream(aggregation, Message.class, Document.class)) {
+                Iterator<Document> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    Message last = mongoTemplate.getConverter().read(Message.class, iterator.next().get("last", Document.class));
+                    conversationSummaryService.onMessageSaved(last, recipientsOf(last));
+                    if (++seeded % batchSize == 0) {
+                        marker.setResumeAfter(last.getConversationId());
+                        backfillMarkerRepository.save(marker);
+                        log.debug("Seeded {} conversation summaries so far, up to {}", seeded, last.getConversationId());
+                        Thread.sleep(pauseMs);
+                    }
+                }
+            }
+            marker.setCompletedAt(LocalDateTime.now());
+            marker.setResumeAfter(null);
+            backfillMarkerRepository.save(marker);
+            log.info("Conversation summary backfill finished, {} conversations seeded", seeded);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Conversation summary backfill interrupted");
+        } catch (Exception e) {
+            log.error("Conversation summary backfill failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void migrateMessageBuckets() {
+        try {
+            BackfillMarker marker = backfillMarkerRepository.findById(BackfillMarker.MESSAGE_BUCKETS).orElse(null);
+            if (marker == null) {
+                log.info("Message buckets were not kept up to date, invalidating them before migrating");
+                messageBucketRepository.invalidateAll();
+                marker = backfillMarkerRepository.save(new BackfillMarker(BackfillMarker.MESSAGE_BUCKETS, null, null));
+            }
+            // Live appends are already on for every message sent from here on, anything older is packed
+            LocalDateTime createdBefore = LocalDateTime.now();
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("conversationId").exists(true)),
+                    Aggregation.group("conversationId")
+            ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+            long conversations = 0;
+            long packed = 0;
+            try (Stream<Document> rows = mongoTemplate.aggregateStream(aggregation, Message.class, Document.class)) {
+                Iterator<Document> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    String conversationId = iterator.next().getString("_id");
+                    if (messageBucketRepository.existsByConversationIdAndOriginIsTrue(conversationId)) {
+                        continue;
+                    }
+                    packed += messageBucketRepository.migrate(conversationId, createdBefore, bucketCapacity);
+                    if (++conversations % 100 == 0) {
+                        log.debug("Migrated {} conversations ({} messages) to buckets so far", conversations, packed);
+                    }
+                    Thread.sleep(pauseMs);
+                }
+            }
+            marker.setCompletedAt(LocalDateTime.now());
+            backfillMarkerRepository.save(marker);
+            log.info("Message bucket migration finished, {} conversations and {} messages packed", conversations, packed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Message bucket migration interrupted");
+        } catch (Exception e) {
+            log.error("Message bucket migration failed: {}", e.getMessage());
+        }
+    }
+
+    private void forgetMessageBuckets() {
+        try {
+            // Appends stop from here on, whoever turns the layout back on has to repack everything
+            backfillMarkerRepository.deleteById(BackfillMarker.MESSAGE_BUCKETS);
+        } catch (Exception e) {
+            log.error("Failed to clear the message bucket marker: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void markBucketsStale(String conversationId) {
+        staleBuckets.add(conversationId);
+        try {
+            // Other instances stop reading the buckets too
+            messageBucketRepository.invalidate(conversationId);
+        } catch (Exception e) {
+            log.warn("Failed to invalidate buckets of {}, the repair pass retries: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isBucketsStale(String conversationId) {
+        return staleBuckets.contains(conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.message.buckets.repair-ms:60000}")
+    public void repairStaleBuckets() {
+        if (!bucketsEnabled) {
+            return;
+        }
+        for (String conversationId : List.copyOf(staleBuckets)) {
+            // Removed first, a write failing while this runs marks it stale again
+            staleBuckets.remove(conversationId);
+            try {
+                messageBucketRepository.invalidate(conversationId);
+                long packed = messageBucketRepository.migrate(conversationId, LocalDateTime.now(), bucketCapacity);
+                log.info("Rebuilt buckets of {}, {} messages packed", conversationId, packed);
+            } catch (Exception e) {
+                staleBuckets.add(conversationId);
+                log.error("Failed to rebuild buckets of {}: {}", conversationId, e.getMessage());
+            }
+        }
+    }
+
+    private List<String> recipientsOf(Message message) {
+        if (message.getGroupId() == null) {
+            return message.getReceiverId() != null ? List.of(message.getReceiverId()) : List.of();
+        }
+        return groupRepository.findById(message.getGroupId())
+                .map(group -> group.getMemberIds().stream()
+                        .filter(memberId -> !memberId.equals(message.getSenderId()))
+                        .toList())
+                .orElse(List.of());
+    }
+}
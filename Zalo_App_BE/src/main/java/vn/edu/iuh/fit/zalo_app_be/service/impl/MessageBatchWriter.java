@@ -0,0 +1,259 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.exception.MessageSendException;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Group commit for chat messages: callers enqueue a message and get a future, a single
+ * writer thread collects up to {@code max-batch-size} messages or waits {@code linger-ms}
+ * and persists them with one unordered insertMany. Futures complete only after the insert
+ * returns, in the order messages were submitted, each with the outcome of its own document.
+ */
+@Component
+@Slf4j(topic = "MESSAGE-BATCH-WRITER")
+public class MessageBatchWriter {
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Counter written;
+    private final Counter failed;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+
+    private final int completionThreads;
+    private final int completionQueueCapacity;
+
+    private volatile boolean running;
+    private Thread worker;
+    // Callers chain delivery and counter updates onto the futures; run them off the writer thread,
+    // striped by conversation so each conversation still completes in insert order
+    private ThreadPoolExecutor[] completions;
+
+    public MessageBatchWriter(
+            MongoTemplate mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.message.batch-writer.enabled:true}") boolean enabled,
+            @Value("${app.message.batch-writer.max-batch-size:64}") int maxBatchSize,
+            @Value("${app.message.batch-writer.linger-ms:5}") long lingerMs,
+            @Value("${app.message.batch-writer.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.message.batch-writer.completion-threads:4}") int completionThreads,
+            @Value("${app.message.batch-writer.completion-queue-capacity:1000}") int completionQueueCapacity
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.written = meterRegistry.counter("chat.message.batch_writer.messages", "result", "written");
+        this.failed = meterRegistry.counter("chat.message.batch_writer.messages", "result", "failed");
+        this.batchSizes = DistributionSummary.builder("chat.message.batch_writer.batch_size").register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.message.batch_writer.flush").register(meterRegistry);
+        meterRegistry.gauge("chat.message.batch_writer.queue", queue, BlockingQueue::size);
+        this.completionThreads = Math.max(1, completionThreads);
+        this.completionQueueCapacity = completionQueueCapacity;
+        meterRegistry.gauge("chat.message.batch_writer.completion_queue", this, MessageBatchWriter::completionBacklog);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Message batch writer is disabled, messages are written one by one");
+            return;
+        }
+        running = true;
+        completions = new ThreadPoolExecutor[completionThreads];
+        for (int i = 0; i < completionThreads; i++) {
+            String name = "message-batch-completion-" + i;
+            completions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(completionQueueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }, MessageBatchWriter::waitForRoom);
+        }
+        worker = new Thread(this::runLoop, "message-batch-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (completions != null) {
+            for (ThreadPoolExecutor stripe : completions) {
+                stripe.shutdown();
+            }
+            for (ThreadPoolExecutor stripe : completions) {
+                stripe.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    public CompletableFuture<Message> submit(Message message) {
+        if (!enabled || !running) {
+            try {
+                return CompletableFuture.completedFuture(mongoTemplate.insert(message));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        PendingWrite pending = new PendingWrite(message, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            log.warn("Message batch writer queue is full, rejecting message from {}", message.getSenderId());
+            return CompletableFuture.failedFuture(new MessageSendException("Server is busy, please retry"));
+        }
+        return pending.future();
+    }
+
+    private void runLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown requested: drain what is already queued so no accepted message is lost
+                queue.drainTo(batch);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<Message> messages = batch.stream().map(PendingWrite::message).toList();
+        // Ids are assigned up front so each caller gets its saved document back whatever else failed
+        messages.stream().filter(message -> message.getId() == null).forEach(message -> message.setId(ObjectId.get().toHexString()));
+        List<PendingWrite> done = List.copyOf(batch);
+        Map<Integer, RuntimeException> errors = new HashMap<>();
+        long start = System.nanoTime();
+        try {
+            // Unordered, so a resent client message id or a bad document fails only its own write
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class).insert(messages).execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), toException(error)));
+            log.warn("{} of {} messages in batch failed to write: {}", errors.size(), batch.size(), e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to write batch of {} messages: {}", batch.size(), e.getMessage());
+            failed.increment(batch.size());
+            complete(done, index -> e);
+            return;
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(batch.size());
+        written.increment(batch.size() - errors.size());
+        failed.increment(errors.size());
+        complete(done, errors::get);
+    }
+
+    /**
+     * Hands the outcomes to the completion stripes, one task per stripe and batch, so a slow
+     * conversation only holds up the conversations sharing its stripe.
+     */
+    private void complete(List<PendingWrite> done, IntFunction<Throwable> errorAt) {
+        Map<ThreadPoolExecutor, List<Runnable>> byStripe = new LinkedHashMap<>();
+        for (int i = 0; i < done.size(); i++) {
+            PendingWrite pending = done.get(i);
+            Throwable error = errorAt.apply(i);
+            byStripe.computeIfAbsent(stripe(pending.message()), stripe -> new ArrayList<>()).add(() -> {
+                if (error == null) {
+                    pending.future().complete(pending.message());
+                } else {
+                    pending.future().completeExceptionally(error);
+                }
+            });
+        }
+        byStripe.forEach((stripe, tasks) -> stripe.execute(() -> tasks.forEach(Runnable::run)));
+    }
+
+    private ThreadPoolExecutor stripe(Message message) {
+        return completions[Math.floorMod(Objects.hashCode(message.getConversationId()), completions.length)];
+    }
+
+    private int completionBacklog() {
+        ThreadPoolExecutor[] stripes = completions;
+        return stripes == null ? 0 : Arrays.stream(stripes).mapToInt(stripe -> stripe.getQueue().size()).sum();
+    }
+
+    /**
+     * A full stripe blocks the writer rather than reordering or dropping completions, the writer
+     * queue then fills up and new sends are turned away as busy.
+     */
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor stripe) {
+        if (stripe.isShutdown()) {
+            // Stopping: complete inline rather than leave callers waiting forever
+            task.run();
+            return;
+        }
+        try {
+            stripe.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.run();
+        }
+    }
+
+    /**
+     * Duplicate keys keep Spring's exception, callers resolve a resent client message id from it.
+     */
+    private static RuntimeException toException(BulkWriteError error) {
+        if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+            return new DuplicateKeyException(error.getMessage());
+        }
+        return new MessageSendException("Failed to save message: " + error.getMessage());
+    }
+
+    private record PendingWrite(Message message, CompletableFuture<Message> future) {
+    }
+}
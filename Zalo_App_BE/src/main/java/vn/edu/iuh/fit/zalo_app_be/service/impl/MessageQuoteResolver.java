@@ -0,0 +1,184 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageQuoteResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Embeds a compact quote of the replied-to and forwarded messages into responses, so a history
+ * page renders without follow-up requests. References missing from a small LRU are loaded with
+ * one $in query per page; ids that no longer resolve are remembered as missing too.
+ * A reply quote is only shown when the quoted message is in the same conversation as the
+ * reply. Forward quotes are always shown, forward copies are only created after checking the
+ * forwarder could see the source.
+ */
+@Component
+@Slf4j(topic = "MESSAGE-QUOTE-RESOLVER")
+public class MessageQuoteResolver {
+    private static final int CONTENT_LENGTH = 100;
+
+    private final MessageRepository messageRepository;
+    private final Map<String, CachedQuote> quotes;
+    private final Counter hits;
+    private final Counter misses;
+
+    public MessageQuoteResolver(
+            MessageRepository messageRepository,
+            @Value("${app.message.quotes.cache-size:5000}") int cacheSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.messageRepository = messageRepository;
+        // Access-ordered so the least recently quoted message is evicted first
+        this.quotes = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedQuote> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.hits = meterRegistry.counter("chat.history.quote_cache", "result", "hit");
+        this.misses = meterRegistry.counter("chat.history.quote_cache", "result", "miss");
+    }
+
+    /**
+     * Fill replyToMessage and forwardedMessage on every response in place.
+     */
+    public void hydrate(Collection<MessageResponse> responses) {
+        Set<String> referenced = new LinkedHashSet<>();
+        for (MessageResponse response : responses) {
+            addIfPresent(referenced, response.getReplyToMessageId());
+            addIfPresent(referenced, forwardedId(response));
+        }
+        if (referenced.isEmpty()) {
+            return;
+        }
+
+        Map<String, CachedQuote> resolved = new HashMap<>();
+        for (String id : referenced) {
+            CachedQuote cached = quotes.get(id);
+            if (cached != null && !cached.isStale()) {
+                resolved.put(id, cached);
+            }
+        }
+        hits.increment(resolved.size());
+
+        Set<String> missing = new LinkedHashSet<>(referenced);
+        missing.removeAll(resolved.keySet());
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            try {
+                List<Message> loaded = messageRepository.findQuotedByIds(missing);
+                for (Message message : loaded) {
+                    resolved.put(message.getId(), new CachedQuote(conversationOf(message), message.getUpdatedAt(), toQuote(message)));
+                }
+                for (String id : missing) {
+                    CachedQuote quote = resolved.computeIfAbsent(id, ignored -> CachedQuote.MISSING);
+                    // An edit evicted while this load was in flight leaves a newer marker, keep it
+                    quotes.compute(id, (ignored, current) -> current != null && current.isNewerThan(quote) ? current : quote);
+                }
+            } catch (Exception e) {
+                // Quotes are a convenience, the ids are still in the response for the client to resolve
+                log.warn("Failed to load {} quoted messages: {}", missing.size(), e.getMessage());
+            }
+        }
+
+        for (MessageResponse response : responses) {
+            String conversationId = ConversationKeys.of(response.getSenderId(), response.getReceiverId(), response.getGroupId());
+            CachedQuote reply = lookup(resolved, response.getReplyToMessageId());
+            response.setReplyToMessage(reply != null && Objects.equals(reply.conversationId(), conversationId) ? reply.quote() : null);
+            CachedQuote forwarded = lookup(resolved, forwardedId(response));
+            response.setForwardedMessage(forwarded != null ? forwarded.quote() : null);
+        }
+    }
+
+    /**
+     * Drop the cached quote of a message after it was recalled, edited or deleted. A marker with
+     * the new updatedAt stays behind so a load that read the old version cannot cache it again.
+     */
+    public void evict(Message changed) {
+        if (changed.getId() != null) {
+            quotes.put(changed.getId(), CachedQuote.stale(changed.getUpdatedAt()));
+        }
+    }
+
+    private MessageQuoteResponse toQuote(Message message) {
+        String content = message.getContent();
+        if (content != null && content.length() > CONTENT_LENGTH) {
+            content = content.substring(0, CONTENT_LENGTH);
+        }
+        String thumbnail = message.getThumbnail();
+        if (thumbnail == null && message.getImageUrls() != null && !message.getImageUrls().isEmpty()) {
+            thumbnail = message.getImageUrls().get(0);
+        }
+        if (thumbnail == null && message.getVideoInfos() != null && !message.getVideoInfos().isEmpty()) {
+            thumbnail = message.getVideoInfos().get(0).get("thumbnail");
+        }
+        return MessageQuoteResponse.builder()
+                .id(message.getId())
+                .senderId(message.getSenderId())
+                .type(message.getType())
+                .content(content)
+                .thumbnail(thumbnail)
+                .fileName(message.getFileName())
+                .recalled(message.isRecalled())
+                .createAt(message.getCreatedAt())
+                .build();
+    }
+
+    private CachedQuote lookup(Map<String, CachedQuote> resolved, String id) {
+        return id != null ? resolved.get(id) : null;
+    }
+
+    private String conversationOf(Message message) {
+        return message.getConversationId() != null ? message.getConversationId()
+                : ConversationKeys.of(message.getSenderId(), message.getReceiverId(), message.getGroupId());
+    }
+
+    private String forwardedId(MessageResponse response) {
+        return response.getForwardedFrom() != null ? response.getForwardedFrom().getMessageId() : null;
+    }
+
+    private void addIfPresent(Set<String> ids, String id) {
+        if (id != null && !id.isBlank()) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * A cache entry: the quote with the conversation and version it was read from. A null quote
+     * is either a message that no longer resolves, or, with an updatedAt, an evicted one whose
+     * newer version has not been loaded yet.
+     */
+    private record CachedQuote(String conversationId, LocalDateTime updatedAt, MessageQuoteResponse quote) {
+        static final CachedQuote MISSING = new CachedQuote(null, null, null);
+
+        static CachedQuote stale(LocalDateTime updatedAt) {
+            return new CachedQuote(null, updatedAt != null ? updatedAt : LocalDateTime.now(), null);
+        }
+
+        boolean isStale() {
+            return quote == null && updatedAt != null;
+        }
+
+        boolean isNewerThan(CachedQuote other) {
+            return updatedAt != null && (other.updatedAt == null || updatedAt.isAfter(other.updatedAt));
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.util.CharTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Local Lucene index over message content and file names, kept in step with the message
+ * write path. Text is lower-cased and folded to ASCII so "Đi học" matches "di hoc".
+ * <p>
+ * The index is rebuilt from MongoDB in the background when it is empty; until then
+ * {@link #isReady()} is false and callers fall back to the database search.
+ * <p>
+ * Only messages written through this instance are indexed live, so the index is turned off when
+ * the app runs as several nodes ({@code app.websocket.cluster.bus} other than {@code local}) and
+ * search goes to the database; otherwise it would miss messages written on the other nodes.
+ */
+@Component
+@Slf4j(topic = "MESSAGE-SEARCH-INDEX")
+public class MessageSearchIndex {
+    private static final String ID = "id";
+    private static final String CONVERSATION = "conversationId";
+    private static final String CONTENT = "content";
+    private static final String FILE_NAME = "fileName";
+    private static final String CREATED_AT = "createdAt";
+    private static final String DELETED_BY = "deletedBy";
+    private static final String PARTICIPANT = "participant";
+    private static final String TYPE = "type";
+    private static final String SCHEMA_KEY = "schema";
+    // Bump when documents gain or change fields, an index written with another version is rebuilt
+    private static final String SCHEMA_VERSION = "2";
+    private static final String CHECKPOINT_KEY = "checkpoint";
+    // Messages created shortly before a commit may not be in it yet, replay a little further back
+    private static final long CATCH_UP_MARGIN_MS = 60_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final String clusterBus;
+    private final Path indexDir;
+    private final int rebuildBatchSize;
+    private final Analyzer analyzer = new FoldingAnalyzer();
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private volatile boolean ready;
+    private volatile long checkpoint;
+    // id -> updatedAt of the indexed copy, so a reindex that read a row before a live change never
+    // overwrites the newer copy. Kept while a reindex runs, pruned at commit otherwise
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicInteger reindexing = new AtomicInteger();
+
+    public MessageSearchIndex(
+            MongoTemplate mongoTemplate,
+            @Value("${app.message.search.enabled:true}") boolean enabled,
+            @Value("${app.message.search.index-dir:data/message-index}") String indexDir,
+            @Value("${app.message.search.rebuild-batch-size:1000}") int rebuildBatchSize,
+            @Value("${app.websocket.cluster.bus:local}") String clusterBus
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled && "local".equals(clusterBus);
+        this.clusterBus = clusterBus;
+        this.indexDir = Path.of(indexDir);
+        this.rebuildBatchSize = rebuildBatchSize;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            log.info("Message search index is disabled (cluster bus {}), search falls back to the database", clusterBus);
+            return;
+        }
+        try {
+            Files.createDirectories(indexDir);
+            directory = FSDirectory.open(indexDir);
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            writer = new IndexWriter(directory, config);
+            searcherManager = new SearcherManager(writer, null);
+
+            Map<String, String> commitData = SegmentInfos.readLatestCommit(directory).getUserData();
+            ready = SCHEMA_VERSION.equals(commitData.get(SCHEMA_KEY));
+            checkpoint = Long.parseLong(commitData.getOrDefault(CHECKPOINT_KEY, "0"));
+        } catch (IndexNotFoundException e) {
+            // Fresh directory, nothing committed yet
+            ready = false;
+        } catch (IOException e) {
+            log.error("Failed to open message search index at {}: {}", indexDir, e.getMessage());
+            writer = null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            searcherManager.close();
+            commit();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            log.error("Failed to close message search index: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (writer == null) {
+            return;
+        }
+        Thread worker = new Thread(ready ? this::catchUp : this::rebuild, "message-search-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public boolean isReady() {
+        return writer != null && ready;
+    }
+
+    /**
+     * Add or replace the indexed copy of a message, unless a copy with a later {@code updatedAt}
+     * is already indexed.
+     */
+    public void index(Message message) {
+        if (writer == null || message.getId() == null) {
+            return;
+        }
+        long version = versionOf(message);
+        versions.compute(message.getId(), (id, indexed) -> {
+            if (indexed != null && indexed > version) {
+                return indexed;
+            }
+            try {
+                writer.updateDocument(new Term(ID, id), toDocument(message));
+                return version;
+            } catch (IOException e) {
+                log.error("Failed to index message {}: {}", id, e.getMessage());
+                return indexed;
+            }
+        });
+    }
+
+    /**
+     * Ranked ids of messages in {@code conversationIds} matching every word of {@code keyword};
+     * the last word also matches as a prefix. Messages the user deleted for themselves are skipped.
+     */
+    public SearchHits search(Collection<String> conversationIds, String userId, String keyword, int offset, int limit) {
+        List<String> terms = analyze(keyword);
+        if (terms.isEmpty() || conversationIds.isEmpty() || !isReady()) {
+            return SearchHits.EMPTY;
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(new TermInSetQuery(CONVERSATION, toBytesRefs(conversationIds)), BooleanClause.Occur.FILTER)
+                .add(new TermQuery(new Term(DELETED_BY, userId)), BooleanClause.Occur.MUST_NOT);
+        addWords(query, terms);
+
+        Sort sort = new Sort(SortField.FIELD_SCORE, new SortField(CREATED_AT, SortField.Type.LONG, true));
+        return run(query.build(), sort, null, offset, limit);
+    }
+
+    /**
+     * Newest-first search over every 1:1 conversation of {@code userId} and the given groups,
+     * optionally narrowed by keyword, message types and a creation time range. Pages continue
+     * strictly after {@code after}, so results stay stable while new messages are indexed.
+     */
+    public SearchHits searchAll(String userId, Collection<String> groupIds, String keyword, Collection<MessageType> types,
+                                LocalDateTime from, LocalDateTime to, MessageCursor after, int limit) {
+        List<String> terms = analyze(keyword);
+        boolean filtered = (types != null && !types.isEmpty()) || from != null || to != null;
+        if ((terms.isEmpty() && !filtered) || !isReady()) {
+            return SearchHits.EMPTY;
+        }
+
+        BooleanQuery.Builder scope = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(PARTICIPANT, userId)), BooleanClause.Occur.SHOULD);
+        if (!groupIds.isEmpty()) {
+            scope.add(new TermInSetQuery(CONVERSATION, toBytesRefs(groupIds)), BooleanClause.Occur.SHOULD);
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(scope.setMinimumNumberShouldMatch(1).build(), BooleanClause.Occur.FILTER)
+                .add(new TermQuery(new Term(DELETED_BY, userId)), BooleanClause.Occur.MUST_NOT);
+        if (types != null && !types.isEmpty()) {
+            query.add(new TermInSetQuery(TYPE, toBytesRefs(types.stream().map(MessageType::name).toList())), BooleanClause.Occur.FILTER);
+        }
+        if (from != null || to != null) {
+            long lower = from != null ? toEpochMilli(from) : Long.MIN_VALUE;
+            long upper = to != null ? toEpochMilli(to) : Long.MAX_VALUE;
+            query.add(LongPoint.newRangeQuery(CREATED_AT, lower, upper), BooleanClause.Occur.FILTER);
+        }
+        addWords(query, terms);
+
+        Sort sort = new Sort(new SortField(CREATED_AT, SortField.Type.LONG, true), new SortField(ID, SortField.Type.STRING, true));
+        Object[] afterValues = after != null ? new Object[]{toEpochMilli(after.createdAt()), new BytesRef(after.id())} : null;
+        return run(query.build(), sort, afterValues, 0, limit);
+    }
+
+    private SearchHits run(org.apache.lucene.search.Query query, Sort sort, Object[] afterValues, int offset, int limit) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            // (createdAt, id) is unique, so the doc id of the cursor never decides the order; it only has to be in range
+            FieldDoc after = afterValues != null
+                    ? new FieldDoc(searcher.getIndexReader().maxDoc() - 1, Float.NaN, afterValues)
+                    : null;
+            TopDocs top = searcher.searchAfter(after, query, offset + limit + 1, sort);
+            List<String> ids = new ArrayList<>(limit);
+            MessageCursor last = null;
+            for (int i = offset; i < Math.min(top.scoreDocs.length, offset + limit); i++) {
+                Document document = searcher.storedFields().document(top.scoreDocs[i].doc);
+                ids.add(document.get(ID));
+                last = new MessageCursor(fromEpochMilli(document.getField(CREATED_AT).numericValue().longValue()), document.get(ID));
+            }
+            return new SearchHits(ids, top.scoreDocs.length > offset + limit, last);
+        } catch (IOException e) {
+            log.error("Message search failed: {}", e.getMessage());
+            return SearchHits.EMPTY;
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    log.warn("Failed to release searcher: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.message.search.refresh-ms:1000}")
+    public void refresh() {
+        if (searcherManager == null) {
+            return;
+        }
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.warn("Failed to refresh message search index: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.message.search.commit-ms:30000}")
+    public void commit() {
+        if (writer != null && writer.hasUncommittedChanges()) {
+            forceCommit();
+        }
+        if (reindexing.get() == 0) {
+            // Live writes index the row they just saved, only a reindex can bring back an older copy
+            long horizon = checkpoint - CATCH_UP_MARGIN_MS;
+            versions.values().removeIf(version -> version < horizon);
+        }
+    }
+
+    private void forceCommit() {
+        try {
+            long startedAt = System.currentTimeMillis();
+            writer.setLiveCommitData(Map.of(
+                    SCHEMA_KEY, ready ? SCHEMA_VERSION : "0",
+                    CHECKPOINT_KEY, String.valueOf(startedAt)
+            ).entrySet());
+            writer.commit();
+            checkpoint = startedAt;
+        } catch (IOException e) {
+            log.error("Failed to commit message search index: {}", e.getMessage());
+        }
+    }
+
+    void rebuild() {
+        log.info("Rebuilding message search index from the database");
+        long indexed = reindex(null, false);
+        if (indexed >= 0) {
+            ready = true;
+            forceCommit();
+            log.info("Message search index rebuilt, {} messages indexed", indexed);
+        }
+    }
+
+    /**
+     * Replays every message created or changed (recalled, edited, deleted for someone) since the
+     * last commit.
+     */
+    void catchUp() {
+        LocalDateTime since = fromEpochMilli(checkpoint - CATCH_UP_MARGIN_MS);
+        long indexed = reindex(Criteria.where("updatedAt").gte(since), true);
+        if (indexed > 0) {
+            log.info("Message search index caught up, {} messages changed since {}", indexed, since);
+        }
+    }
+
+    /**
+     * Index matching messages in {@code _id} order, or ({@code updatedAt}, {@code _id}) order when
+     * {@code byUpdatedAt}, one batch at a time. Returns -1 when interrupted by an error.
+     */
+    private long reindex(Criteria filter, boolean byUpdatedAt) {
+        reindexing.incrementAndGet();
+        try {
+            Message last = null;
+            long indexed = 0;
+            org.springframework.data.domain.Sort order = byUpdatedAt
+                    ? org.springframework.data.domain.Sort.by(Direction.ASC, "updatedAt", "_id")
+                    : org.springframework.data.domain.Sort.by(Direction.ASC, "_id");
+            while (true) {
+                Criteria criteria = filter != null ? filter : new Criteria();
+                if (last != null) {
+                    criteria = new Criteria().andOperator(criteria, after(last, byUpdatedAt));
+                }
+                Query query = new Query(criteria).with(order).limit(rebuildBatchSize);
+                List<Message> batch = mongoTemplate.find(query, Message.class);
+                if (batch.isEmpty()) {
+                    return indexed;
+                }
+                for (Message message : batch) {
+                    index(message);
+                }
+                indexed += batch.size();
+                last = batch.get(batch.size() - 1);
+            }
+        } catch (Exception e) {
+            log.error("Message search reindex failed: {}", e.getMessage());
+            return -1;
+        } finally {
+            reindexing.decrementAndGet();
+        }
+    }
+
+    private Criteria after(Message last, boolean byUpdatedAt) {
+        if (!byUpdatedAt) {
+            return Criteria.where("_id").gt(last.getId());
+        }
+        return new Criteria().orOperator(
+                Criteria.where("updatedAt").gt(last.getUpdatedAt()),
+                Criteria.where("updatedAt").is(last.getUpdatedAt()).and("_id").gt(last.getId()));
+    }
+
+    private long versionOf(Message message) {
+        LocalDateTime version = message.getUpdatedAt() != null ? message.getUpdatedAt() : message.getCreatedAt();
+        return version != null ? toEpochMilli(version) : 0;
+    }
+
+    private Document toDocument(Message message) {
+        Document document = new Document();
+        document.add(new StringField(ID, message.getId(), Field.Store.YES));
+        String conversationId = message.getConversationId() != null ? message.getConversationId()
+                : ConversationKeys.of(message.getSenderId(), message.getReceiverId(), message.getGroupId());
+        if (conversationId != null) {
+            document.add(new StringField(CONVERSATION, conversationId, Field.Store.NO));
+        }
+        // Group access is checked against current membership at query time, 1:1 access by participant
+        if (message.getGroupId() == null) {
+            Stream.of(message.getSenderId(), message.getReceiverId())
+                    .filter(Objects::nonNull)
+                    .forEach(userId -> document.add(new StringField(PARTICIPANT, userId, Field.Store.NO)));
+        }
+        document.add(new SortedDocValuesField(ID, new BytesRef(message.getId())));
+        if (message.getType() != null) {
+            document.add(new StringField(TYPE, message.getType().name(), Field.Store.NO));
+        }
+        // A recalled message only carries the recall notice, keep it out of results
+        if (!message.isRecalled() && message.getContent() != null) {
+            document.add(new TextField(CONTENT, message.getContent(), Field.Store.NO));
+        }
+        if (message.getFileName() != null) {
+            document.add(new TextField(FILE_NAME, message.getFileName(), Field.Store.NO));
+        }
+        if (message.getDeleteBy() != null) {
+            message.getDeleteBy().keySet().forEach(userId -> document.add(new StringField(DELETED_BY, userId, Field.Store.NO)));
+        }
+        long createdAt = message.getCreatedAt() != null ? toEpochMilli(message.getCreatedAt()) : 0;
+        document.add(new LongPoint(CREATED_AT, createdAt));
+        document.add(new NumericDocValuesField(CREATED_AT, createdAt));
+        document.add(new StoredField(CREATED_AT, createdAt));
+        return document;
+    }
+
+    private void addWords(BooleanQuery.Builder query, List<String> terms) {
+        for (int i = 0; i < terms.size(); i++) {
+            query.add(wordQuery(terms.get(i), i == terms.size() - 1), BooleanClause.Occur.MUST);
+        }
+    }
+
+    private List<BytesRef> toBytesRefs(Collection<String> values) {
+        return values.stream().map(BytesRef::new).toList();
+    }
+
+    private long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime fromEpochMilli(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private BooleanQuery wordQuery(String term, boolean prefix) {
+        BooleanQuery.Builder word = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(CONTENT, term)), BooleanClause.Occur.SHOULD)
+                .add(new TermQuery(new Term(FILE_NAME, term)), BooleanClause.Occur.SHOULD);
+        if (prefix) {
+            word.add(new PrefixQuery(new Term(CONTENT, term)), BooleanClause.Occur.SHOULD)
+                    .add(new PrefixQuery(new Term(FILE_NAME, term)), BooleanClause.Occur.SHOULD);
+        }
+        return word.build();
+    }
+
+    List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        try (TokenStream stream = analyzer.tokenStream(CONTENT, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            log.warn("Failed to analyze search keyword: {}", e.getMessage());
+        }
+        return terms;
+    }
+
+    /**
+     * @param last position of the last hit, the cursor for the next newest-first page
+     */
+    public record SearchHits(List<String> ids, boolean hasMore, MessageCursor last) {
+        static final SearchHits EMPTY = new SearchHits(List.of(), false, null);
+    }
+
+    /**
+     * Splits on anything that is not a letter, digit or combining mark (so "bao_cao.docx" gives
+     * "bao", "cao", "docx"), lower-cases, then folds to ASCII so Vietnamese tone marks and "đ"
+     * compare equal to their plain letters.
+     */
+    private static final class FoldingAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            CharTokenizer tokenizer = CharTokenizer.fromTokenCharPredicate(
+                    c -> Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK);
+            TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+        }
+    }
+}
@@ -6,28 +6,49 @@ import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.ReadUpToRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MediaItemResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MediaPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageHistoryResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessagePageResponse;
 import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageSearchPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
+import vn.edu.iuh.fit.zalo_app_be.exception.InvalidDataException;
 import vn.edu.iuh.fit.zalo_app_be.exception.ResourceNotFoundException;
 import vn.edu.iuh.fit.zalo_app_be.model.Group;
 import vn.edu.iuh.fit.zalo_app_be.model.Message;
 import vn.edu.iuh.fit.zalo_app_be.model.MessageReference;
 import vn.edu.iuh.fit.zalo_app_be.model.User;
 import vn.edu.iuh.fit.zalo_app_be.repository.GroupRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageBucketRepository;
 import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.ReadWatermarkRepository;
 import vn.edu.iuh.fit.zalo_app_be.repository.UserRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.ConversationSummaryService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageArchiveService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageBackfillService;
 import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.UnreadCounterService;
 import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
 
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -36,24 +57,105 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Slf4j(topic = "MESSASGE-SERVICE")
 public class MessageServiceImpl implements MessageService {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int DEFAULT_SEARCH_SIZE = 20;
+    private static final int DEFAULT_MEDIA_SIZE = 30;
+    private static final int MAX_FORWARD_TARGETS = 50;
+    private static final Set<MessageType> MEDIA_TYPES =
+            EnumSet.of(MessageType.IMAGE, MessageType.IMAGE_GROUP, MessageType.VIDEO, MessageType.AUDIO, MessageType.FILE);
+
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
     private final Cloudinary cloudinary;
+    private final MessageTailCache messageTailCache;
+    private final MessageBatchWriter messageBatchWriter;
+    private final ReadWatermarkRepository readWatermarkRepository;
+    private final UnreadCounterService unreadCounterService;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageBucketRepository messageBucketRepository;
+    private final MessageArchiveService messageArchiveService;
+    private final MessageQuoteResolver messageQuoteResolver;
+    private final RecentSendRegistry recentSendRegistry;
+    private final ConversationSequenceAllocator conversationSequenceAllocator;
+    private final MessageBackfillService messageBackfillService;
+
+    @Value("${app.message.buckets.enabled:false}")
+    private boolean bucketsEnabled;
+
+    @Value("${app.message.buckets.capacity:200}")
+    private int bucketCapacity;
 
     @Override
     public MessageResponse saveMessage(MessageRequest request) {
-        if (request.getGroupId() == null) {
-            validateUser(request.getSenderId(), request.getReceiverId());
-        } else {
-            validateGroup(request.getGroupId(), request.getSenderId());
+        OutgoingMessage outgoing = buildMessage(request);
+        try {
+            return onMessageSaved(messageRepository.save(outgoing.message()), outgoing.recipientIds());
+        } catch (Exception e) {
+            throw new RuntimeException("Error saving message: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<SendResult> saveMessageAsync(MessageRequest request) {
+        String senderId = request.getSenderId();
+        String clientMsgId = request.getClientMsgId();
+        if (clientMsgId == null || clientMsgId.isBlank()) {
+            OutgoingMessage outgoing = buildMessage(request);
+            return messageBatchWriter.submit(outgoing.message())
+                    .thenApply(saved -> new SendResult(onMessageSaved(saved, outgoing.recipientIds()), false));
+        }
+
+        CompletableFuture<MessageResponse> sent = new CompletableFuture<>();
+        CompletableFuture<MessageResponse> earlier = recentSendRegistry.claim(senderId, clientMsgId, sent);
+        if (earlier != null) {
+            return earlier.thenApply(original -> new SendResult(original, true));
         }
+
+        OutgoingMessage outgoing;
+        try {
+            outgoing = buildMessage(request);
+        } catch (RuntimeException e) {
+            recentSendRegistry.release(senderId, clientMsgId, sent);
+            throw e;
+        }
+        return messageBatchWriter.submit(outgoing.message()).handle((saved, error) -> {
+            if (error == null) {
+                MessageResponse response = onMessageSaved(saved, outgoing.recipientIds());
+                sent.complete(response);
+                return new SendResult(response, false);
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof DuplicateKeyException) {
+                // Sent before this instance's memory, the unique index caught it
+                Optional<Message> original = messageRepository.findBySenderIdAndClientMsgId(senderId, clientMsgId);
+                if (original.isPresent()) {
+                    MessageResponse response = convertToMessageResponse(original.get());
+                    messageQuoteResolver.hydrate(List.of(response));
+                    sent.complete(response);
+                    return new SendResult(response, true);
+                }
+            }
+            recentSendRegistry.release(senderId, clientMsgId, sent);
+            sent.completeExceptionally(cause);
+            throw cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+        });
+    }
+
+    private OutgoingMessage buildMessage(MessageRequest request) {
+        List<String> recipientIds = validateTarget(request.getSenderId(), request.getReceiverId(), request.getGroupId());
+        validateReplyTo(request);
         log.info("Sending message from {} to {}: {}", request.getSenderId(), request.getReceiverId(), request.getContent());
         try {
             Message message = new Message();
             message.setSenderId(request.getSenderId());
             message.setReceiverId(request.getReceiverId());
             message.setGroupId(request.getGroupId());
+            message.setConversationId(ConversationKeys.of(request.getSenderId(), request.getReceiverId(), request.getGroupId()));
+            message.setSeq(conversationSequenceAllocator.next(message.getConversationId()));
+            message.setClientMsgId(request.getClientMsgId() != null && !request.getClientMsgId().isBlank() ? request.getClientMsgId() : null);
             message.setContent(request.getContent());
             MessageType type = request.getType() != null ? request.getType() : MessageType.TEXT;
             if (type == MessageType.GIF || type == MessageType.STICKER) {
@@ -70,28 +172,49 @@ public class MessageServiceImpl implements MessageService {
                     request.getForwardedFrom().getMessageId(), request.getForwardedFrom().getOriginalSenderId(), message.getForwardedFrom().getForwardedAt()) : null);
             message.setThumbnail(request.getThumbnail());
             message.setStatus(MessageStatus.SENT);
-            message.setCreatedAt(LocalDateTime.now());
-            message.setUpdatedAt(LocalDateTime.now());
+            // The id is assigned before the insert, so auditing skips @CreatedDate; Mongo keeps millis only
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            message.setCreatedAt(now);
+            message.setUpdatedAt(now);
             message.setRead(false);
             message.setPinned(request.isPinned());
-            message.setPinnedAt(request.isPinned() ? (request.getPinnedAt() != null ? request.getPinnedAt() : LocalDateTime.now()) : null);
+            message.setPinnedAt(request.isPinned() ? (request.getPinnedAt() != null ? request.getPinnedAt() : now) : null);
+            return new OutgoingMessage(message, recipientIds);
+        } catch (Exception e) {
+            throw new RuntimeException("Error saving message: " + e.getMessage());
+        }
+    }
 
-            Message newMessage = messageRepository.save(message);
-            log.info("Message sent from {} to {}: {}", request.getSenderId(), request.getReceiverId(), request.getContent());
+    private MessageResponse onMessageSaved(Message newMessage, List<String> recipientIds) {
+        log.info("Message sent from {} to {}: {}", newMessage.getSenderId(), newMessage.getReceiverId(), newMessage.getContent());
+
+        MessageResponse response = convertToMessageResponse(newMessage);
+        MessageResponse historyRow = convertToHistoryResponse(newMessage);
+        messageQuoteResolver.hydrate(List.of(response, historyRow));
+        messageTailCache.append(newMessage.getConversationId(), historyRow);
+        unreadCounterService.onMessageSaved(newMessage.getConversationId(), recipientIds);
+        conversationSummaryService.onMessageSaved(newMessage, recipientIds);
+        messageSearchIndex.index(newMessage);
+        if (bucketsEnabled) {
+            appendToBucket(newMessage);
+        }
+        return response;
+    }
 
-            return convertToMessageResponse(newMessage);
+    private void appendToBucket(Message message) {
+        try {
+            messageBucketRepository.append(message, bucketCapacity);
         } catch (Exception e) {
-            throw new RuntimeException("Error saving message: " + e.getMessage());
+            // The messages collection stays authoritative; the conversation falls back to it until re-migrated
+            log.error("Failed to append message {} to its bucket: {}", message.getId(), e.getMessage());
+            messageBackfillService.markBucketsStale(message.getConversationId());
         }
     }
 
     @Override
     public Map<String, String> uploadFile(MultipartFile file, MessageRequest request) {
-        if (request.getGroupId() == null) {
-            validateUser(request.getSenderId(), request.getReceiverId());
-        } else {
-            validateGroup(request.getGroupId(), request.getSenderId());
-        }
+        List<String> recipientIds = validateTarget(request.getSenderId(), request.getReceiverId(), request.getGroupId());
+        validateReplyTo(request);
         if (file == null || file.isEmpty()) {
             throw new ResourceNotFoundException("File not found");
         }
@@ -193,6 +316,8 @@ public class MessageServiceImpl implements MessageService {
             message.setSenderId(request.getSenderId());
             message.setReceiverId(request.getReceiverId());
             message.setGroupId(request.getGroupId());
+            message.setConversationId(ConversationKeys.of(request.getSenderId(), request.getReceiverId(), request.getGroupId()));
+            message.setSeq(conversationSequenceAllocator.next(message.getConversationId()));
             message.setType(type);
             message.setContent(finalUrl);  // Use finalUrl instead of url for proper download
             message.setThumbnail(thumbnail);
@@ -200,15 +325,16 @@ public class MessageServiceImpl implements MessageService {
             message.setFileName(originalFileName);
             message.setReplyToMessageId(request.getReplyToMessageId());
             message.setStatus(MessageStatus.SENT);
-            message.setCreatedAt(LocalDateTime.now());
-            message.setUpdatedAt(LocalDateTime.now());
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            message.setCreatedAt(now);
+            message.setUpdatedAt(now);
             message.setRead(false);
 
 
             Message saveMessage = messageRepository.save(message);
             log.info("File uploaded: {} with origin name: {} for sender: {}", originalFileName, originalFileName, request.getSenderId());
 
-            MessageResponse messageResponse = convertToMessageResponse(saveMessage);
+            onMessageSaved(saveMessage, recipientIds);
 
             return Map.of(
                     "url", finalUrl,  // Return finalUrl for proper download
@@ -229,176 +355,294 @@ public class MessageServiceImpl implements MessageService {
 
 
     @Override
-    public List<MessageResponse> getChatHistory(String userOtherId) {
+    public MessagePageResponse getChatHistory(String userOtherId, String before, String after, int limit) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String currentUser = userRepository.findByUsername(authentication.getName()).getId();
 
-        return messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderId(currentUser, userOtherId, currentUser, userOtherId)
-                .stream()
-                .map(this::convertToMessageResponse)
-                .sorted(Comparator.comparing(MessageResponse::getCreateAt))
-                .collect(Collectors.toList());
+        return loadPage(ConversationKeys.direct(currentUser, userOtherId), currentUser, before, after, limit,
+                (viewerId, beforeCursor, afterCursor, size) -> messageRepository.findDirectPage(currentUser, userOtherId, viewerId, beforeCursor, afterCursor, size));
     }
 
     @Override
-    public List<MessageResponse> getGroupChatHistory(String groupId) {
+    public MessagePageResponse getGroupChatHistory(String groupId, String before, String after, int limit) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String currentUser = userRepository.findByUsername(authentication.getName()).getId();
 
         validateGroup(groupId, currentUser);
 
-        return messageRepository.findByGroupId(groupId)
-                .stream()
-                .map(this::convertToMessageResponse)
-                .sorted(Comparator.comparing(MessageResponse::getCreateAt))
-                .collect(Collectors.toList());
+        return loadPage(ConversationKeys.group(groupId), currentUser, before, after, limit,
+                (viewerId, beforeCursor, afterCursor, size) -> messageRepository.findGroupPage(groupId, viewerId, beforeCursor, afterCursor, size));
     }
 
     @Override
-    public void recallMessage(String messageId, String userId) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isPresent()) {
-            Message message = messageOptional.get();
-            if (!message.getSenderId().equals(userId)) {
-                throw new ResourceNotFoundException("User not found");
-            }
-            message.setRecalled(true);
-            message.setContentAfterRecallOrDeleteOrEdit(messageOptional.get().getContent());
-            message.setContent("Tin nhắn đã được thu hồi");
-            messageRepository.save(message);
-            log.info("Message recalled: {} for sender: {}", messageId, message.getSenderId());
+    public List<MessageResponse> getMessagesBySeq(String userId, String otherUserId, String groupId, long fromSeq, long toSeq) {
+        if (fromSeq < 1 || toSeq < fromSeq) {
+            throw new InvalidDataException("fromSeq must be positive and not greater than toSeq");
+        }
+        if (toSeq - fromSeq >= MAX_PAGE_SIZE) {
+            throw new InvalidDataException("At most " + MAX_PAGE_SIZE + " sequence numbers per request");
+        }
+        String conversationId;
+        if (groupId != null) {
+            validateGroup(groupId, userId);
+            conversationId = ConversationKeys.group(groupId);
+        } else if (otherUserId != null) {
+            conversationId = ConversationKeys.direct(userId, otherUserId);
         } else {
-            throw new ResourceNotFoundException("Message not found");
+            throw new ResourceNotFoundException("Either otherUserId or groupId must be provided");
         }
+        return toResponses(messageRepository.findBySeqRange(conversationId, userId, fromSeq, toSeq));
     }
 
     @Override
-    public void deleteMessage(String messageId, String userId) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isEmpty()) {
-            throw new ResourceNotFoundException("Message not found");
+    public MessageResponse recallMessage(String messageId, String userId) {
+        Optional<Message> updated = messageRepository.recallBySender(messageId, userId, "Tin nhắn đã được thu hồi");
+        if (updated.isEmpty()) {
+            // Guard missed: either already recalled, or the caller is not the sender
+            Message message = messageRepository.findById(messageId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+            if (!userId.equals(message.getSenderId())) {
+                throw new ResourceNotFoundException("User not found");
+            }
+            return convertToMessageResponse(message);
         }
+        Message message = updated.get();
+        conversationSummaryService.onMessageChanged(message);
+        messageSearchIndex.index(message);
+        log.info("Message recalled: {} for sender: {}", messageId, message.getSenderId());
+        return refreshTail(message);
+    }
 
-        Message message = messageOptional.get();
-        Map<String, LocalDateTime> deleteBy = message.getDeleteBy();
-        deleteBy.put(userId, LocalDateTime.now());
-        message.setContentAfterRecallOrDeleteOrEdit(messageOptional.get().getContent());
-        message.setContent("Tin nhắn đã bị xóa");
-        message.setDeleteBy(deleteBy);
-
-        messageRepository.save(message);
+    @Override
+    public MessageResponse deleteMessage(String messageId, String userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("User not found");
+        }
+        Message message = messageRepository.deleteForUser(messageId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+        conversationSummaryService.onMessageDeleted(message, userId);
+        messageSearchIndex.index(message);
         log.info("Message deleted: {} for sender: {}", messageId, message.getSenderId());
+        return refreshTail(message);
     }
 
     @Override
     public MessageResponse forwardMessage(String messageId, String userId, String receiverId, String groupId) {
-        if (groupId == null && receiverId != null) {
-            validateUser(userId, receiverId);
-        } else if (groupId != null) {
-            validateGroup(groupId, userId);
-        } else {
+        if (groupId == null && receiverId == null) {
             throw new ResourceNotFoundException("Either receiverId or groupId must be provided");
         }
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isEmpty()) {
-            throw new ResourceNotFoundException("Message not found");
+        return forwardMessage(messageId, userId,
+                receiverId != null && groupId == null ? List.of(receiverId) : List.of(),
+                groupId != null ? List.of(groupId) : List.of()).get(0);
+    }
+
+    @Override
+    public List<MessageResponse> forwardMessage(String messageId, String userId, List<String> receiverIds, List<String> groupIds) {
+        Set<String> receivers = receiverIds != null ? new LinkedHashSet<>(receiverIds) : Set.of();
+        Set<String> groups = groupIds != null ? new LinkedHashSet<>(groupIds) : Set.of();
+        if (receivers.isEmpty() && groups.isEmpty()) {
+            throw new ResourceNotFoundException("Either receiverId or groupId must be provided");
+        }
+        if (receivers.size() + groups.size() > MAX_FORWARD_TARGETS) {
+            throw new InvalidDataException("At most " + MAX_FORWARD_TARGETS + " targets per forward");
+        }
+        Message source = messageRepository.findById(messageId)
+                .filter(message -> canSee(message, userId))
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+
+        // One query per target kind, every target is checked before anything is written
+        Map<String, User> users = new HashMap<>();
+        Set<String> userIds = new HashSet<>(receivers);
+        userIds.add(userId);
+        userRepository.findAllById(userIds).forEach(user -> users.put(user.getId(), user));
+        User sender = users.get(userId);
+        if (sender == null) {
+            throw new ResourceNotFoundException("User not found");
+        }
+        Map<String, Group> groupsById = new HashMap<>();
+        groupRepository.findAllById(groups).forEach(group -> groupsById.put(group.getId(), group));
+
+        for (String receiverId : receivers) {
+            User receiver = users.get(receiverId);
+            if (receiver == null) {
+                throw new ResourceNotFoundException("User not found");
+            }
+            if (receiver.getBlocks().contains(userId)) {
+                throw new ResourceNotFoundException("User blocked you");
+            }
+            if (sender.getBlocks().contains(receiverId)) {
+                throw new ResourceNotFoundException("You blocked user");
+            }
+        }
+        for (String groupId : groups) {
+            Group group = groupsById.get(groupId);
+            if (group == null) {
+                throw new ResourceNotFoundException("Group not found");
+            }
+            if (!group.getMemberIds().contains(userId)) {
+                throw new ResourceNotFoundException("User not in group");
+            }
+        }
+
+        // Sequence numbers are only taken once every target passed
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Message> copies = new ArrayList<>(receivers.size() + groups.size());
+        List<List<String>> recipients = new ArrayList<>(receivers.size() + groups.size());
+        for (String receiverId : receivers) {
+            copies.add(buildForward(source, userId, receiverId, null, now));
+            recipients.add(List.of(receiverId));
+        }
+        for (String groupId : groups) {
+            copies.add(buildForward(source, userId, null, groupId, now));
+            recipients.add(groupsById.get(groupId).getMemberIds().stream()
+                    .filter(memberId -> !memberId.equals(userId)).collect(Collectors.toList()));
+        }
+
+        // All copies are new documents, so this is a single insertMany
+        List<Message> saved = messageRepository.saveAll(copies);
+        log.info("Message forwarded: {} for sender: {} to {} targets", messageId, userId, saved.size());
+        List<MessageResponse> responses = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            responses.add(onMessageSaved(saved.get(i), recipients.get(i)));
         }
+        return responses;
+    }
 
+    private Message buildForward(Message source, String userId, String receiverId, String groupId, LocalDateTime now) {
         Message forwardMessage = new Message();
         forwardMessage.setSenderId(userId);
         forwardMessage.setReceiverId(receiverId);
         forwardMessage.setGroupId(groupId);
-        forwardMessage.setContent(messageOptional.get().getContent());
+        forwardMessage.setConversationId(ConversationKeys.of(userId, receiverId, groupId));
+        forwardMessage.setSeq(conversationSequenceAllocator.next(forwardMessage.getConversationId()));
+        forwardMessage.setContent(source.getContent());
         forwardMessage.setType(MessageType.FORWARD);
-        forwardMessage.setImageUrls(messageOptional.get().getImageUrls());
-        forwardMessage.setVideoInfos(messageOptional.get().getVideoInfos());
-        forwardMessage.setFileName(messageOptional.get().getFileName());
-        forwardMessage.setThumbnail(messageOptional.get().getThumbnail());
-        forwardMessage.setPublicId(messageOptional.get().getPublicId());
-        forwardMessage.setReplyToMessageId(messageOptional.get().getReplyToMessageId());
+        forwardMessage.setImageUrls(source.getImageUrls());
+        forwardMessage.setVideoInfos(source.getVideoInfos());
+        forwardMessage.setFileName(source.getFileName());
+        forwardMessage.setThumbnail(source.getThumbnail());
+        forwardMessage.setPublicId(source.getPublicId());
         forwardMessage.setStatus(MessageStatus.SENT);
-        forwardMessage.setCreatedAt(LocalDateTime.now());
-        forwardMessage.setUpdatedAt(LocalDateTime.now());
+        forwardMessage.setCreatedAt(now);
+        forwardMessage.setUpdatedAt(now);
         forwardMessage.setRead(false);
         forwardMessage.setPinned(false);
-        forwardMessage.setForwardedFrom(new MessageReference(messageId, messageOptional.get().getSenderId(), LocalDateTime.now()));
-
-        // Lưu tin nhắn
-        Message savedMessage = messageRepository.save(forwardMessage);
-
-        log.info("Message forwarded: {} for sender: {}", messageId, userId);
-        return convertToMessageResponse(savedMessage);
+        forwardMessage.setForwardedFrom(new MessageReference(source.getId(), source.getSenderId(), now));
+        return forwardMessage;
     }
 
     @Override
-    public void readMessage(String messageId, String receiverId) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isPresent()) {
-            Message message = messageOptional.get();
-            if (message.getReceiverId().equals(receiverId)) {
-                message.setRead(true);
-                messageRepository.save(message);
-                log.info("Message read: {} for sender: {}", messageId, receiverId);
-            } else {
+    public MessageResponse readMessage(String messageId, String receiverId) {
+        Optional<Message> updated = messageRepository.markReadByReceiver(messageId, receiverId);
+        if (updated.isEmpty()) {
+            // Guard missed: either already read, or the caller is not the receiver
+            Message message = messageRepository.findById(messageId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+            if (!receiverId.equals(message.getReceiverId())) {
                 throw new ResourceNotFoundException("Only receiver have permission to read this message");
             }
-        } else {
-            throw new ResourceNotFoundException("Message not found");
+            return convertToMessageResponse(message);
         }
+
+        Message message = updated.get();
+        unreadCounterService.onMessageRead(receiverId, ConversationKeys.direct(receiverId, message.getSenderId()));
+        log.info("Message read: {} for sender: {}", messageId, receiverId);
+        return refreshTail(message);
     }
 
     @Override
-    public void editMessage(String messageId, String userId, String content) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isEmpty()) {
-            throw new ResourceNotFoundException("Message not found");
-        }
-
-        Message message = messageOptional.get();
-        if (message.isRecalled()) {
-            throw new ResourceNotFoundException("Message is recalled");
+    public ReadReceiptResponse markConversationRead(ReadUpToRequest request) {
+        String readerId = request.getReaderId();
+        String conversationId;
+        if (request.getGroupId() != null) {
+            validateGroup(request.getGroupId(), readerId);
+            conversationId = ConversationKeys.group(request.getGroupId());
+        } else if (request.getOtherUserId() != null) {
+            validateReader(readerId, request.getOtherUserId());
+            conversationId = ConversationKeys.direct(readerId, request.getOtherUserId());
+        } else {
+            throw new ResourceNotFoundException("Either otherUserId or groupId must be provided");
         }
 
-        if (message.getDeleteBy() != null) {
-            throw new ResourceNotFoundException("Message is deleted");
+        LocalDateTime readUpTo = request.getReadUpTo();
+        if (readUpTo == null) {
+            if (request.getMessageId() == null) {
+                throw new ResourceNotFoundException("Either messageId or readUpTo must be provided");
+            }
+            readUpTo = messageRepository.findCreatedAtById(request.getMessageId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
         }
 
-        if (message.getSenderId().equals(userId)) {
-            message.setContentAfterRecallOrDeleteOrEdit(messageOptional.get().getContent());
-            message.setContent(content);
-            message.setEditId(true);
-            messageRepository.save(message);
-            log.info("Message edited: {} for sender: {}", messageId, userId);
-        } else {
-            throw new ResourceNotFoundException("Only sender have permission to edit this message");
+        long updated = 0;
+        if (request.getGroupId() == null) {
+            // Group messages carry a single isRead flag, so only the watermark is meaningful there
+            updated = messageRepository.markDirectReadUpTo(readerId, request.getOtherUserId(), readUpTo);
+            if (updated > 0) {
+                messageTailCache.evict(conversationId);
+                if (bucketsEnabled) {
+                    try {
+                        messageBucketRepository.markReadUpTo(conversationId, readerId, readUpTo);
+                    } catch (Exception e) {
+                        log.error("Failed to mark buckets of {} read: {}", conversationId, e.getMessage());
+                        messageBackfillService.markBucketsStale(conversationId);
+                    }
+                }
+            }
         }
+        readWatermarkRepository.advance(readerId, conversationId, readUpTo);
+
+        long remaining = request.getGroupId() != null
+                ? messageRepository.countGroupIncomingAfter(request.getGroupId(), readerId, readUpTo)
+                : messageRepository.countDirectIncomingAfter(readerId, request.getOtherUserId(), readUpTo);
+        unreadCounterService.onConversationRead(readerId, conversationId, remaining);
+        log.info("Conversation {} read up to {} by {}, {} messages updated", conversationId, readUpTo, readerId, updated);
+
+        return ReadReceiptResponse.builder()
+                .conversationId(conversationId)
+                .readerId(readerId)
+                .otherUserId(request.getOtherUserId())
+                .groupId(request.getGroupId())
+                .readUpTo(readUpTo)
+                .updatedCount(updated)
+                .build();
     }
 
     @Override
-    public void pinMessage(String messageId, String userId) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isEmpty()) {
-            throw new ResourceNotFoundException("Message not found");
+    public MessageResponse editMessage(String messageId, String userId, String content) {
+        Optional<Message> updated = messageRepository.editBySender(messageId, userId, content);
+        if (updated.isEmpty()) {
+            Message message = messageRepository.findById(messageId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+            if (message.isRecalled()) {
+                throw new ResourceNotFoundException("Message is recalled");
+            }
+            if (message.getDeleteBy() != null && message.getDeleteBy().containsKey(userId)) {
+                throw new ResourceNotFoundException("Message is deleted");
+            }
+            throw new ResourceNotFoundException("Only sender have permission to edit this message");
         }
-        messageOptional.get().setPinned(true);
-        messageOptional.get().setPinnedAt(LocalDateTime.now());
 
-        messageRepository.save(messageOptional.get());
+        Message message = updated.get();
+        conversationSummaryService.onMessageChanged(message);
+        messageSearchIndex.index(message);
+        log.info("Message edited: {} for sender: {}", messageId, userId);
+        return refreshTail(message);
+    }
 
+    @Override
+    public MessageResponse pinMessage(String messageId, String userId) {
+        Message message = messageRepository.setPinned(messageId, true)
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
         log.info("Message pinned: {} for sender: {}", messageId, userId);
+        return refreshTail(message);
     }
 
     @Override
-    public void unpinMessage(String messageId, String userId) {
-        Optional<Message> messageOptional = messageRepository.findById(messageId);
-        if (messageOptional.isEmpty()) {
-            throw new ResourceNotFoundException("Message not found");
-        }
-        messageOptional.get().setPinned(false);
-        messageOptional.get().setPinnedAt(null);
-        messageRepository.save(messageOptional.get());
-
+    public MessageResponse unpinMessage(String messageId, String userId) {
+        Message message = messageRepository.setPinned(messageId, false)
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
         log.info("Message unpinned: {} for sender: {}", messageId, userId);
+        return refreshTail(message);
     }
 
     @Override
@@ -409,45 +653,132 @@ public class MessageServiceImpl implements MessageService {
         List<Message> pinnedMessages;
         if (groupId != null) {
             validateGroup(groupId, userId);
-            pinnedMessages = messageRepository.findByGroupIdAndIsPinned(groupId, true);
+            pinnedMessages = messageRepository.findGroupPinned(groupId);
         } else {
             validateUser(userId, otherUserId);
-            pinnedMessages = messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderIdAndIsPinned(userId, otherUserId, userId, otherUserId, true);
+            pinnedMessages = messageRepository.findDirectPinned(userId, otherUserId);
         }
 
         return pinnedMessages
                 .stream()
                 .map(this::convertToMessageResponse)
-                .sorted(Comparator.comparing(MessageResponse::getCreateAt).reversed())
                 .collect(Collectors.toList());
     }
 
     @Override
-    public List<MessageResponse> searchMessages(String userId, String otherUserId, String groupId, String keyword) {
+    public List<MessageResponse> searchMessages(String userId, String otherUserId, String groupId, String keyword, int page, int size) {
+        String conversationId;
         if (groupId != null) {
             validateGroup(groupId, userId);
-            return messageRepository.findByGroupIdAndContentContaining(groupId, keyword)
-                    .stream()
-                    .filter(msg ->
-                            (msg.getContent() != null && msg.getContent().contains(keyword))
-                                    || (msg.getFileName() != null && msg.getFileName().contains(keyword)))
-                    .map(this::convertToMessageResponse)
-                    .sorted(Comparator.comparing(MessageResponse::getCreateAt).reversed())
-                    .collect(Collectors.toList());
+            conversationId = ConversationKeys.group(groupId);
         } else {
             validateUser(userId, otherUserId);
-            return messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderId(userId, otherUserId, userId, otherUserId)
-                    .stream()
-                    .filter(msg ->
-                            (msg.getContent() != null && msg.getContent().toLowerCase().contains(keyword.toLowerCase()))
-                                    || (msg.getFileName() != null && msg.getFileName().toLowerCase().contains(keyword.toLowerCase()))
-                    )
-                    .map(this::convertToMessageResponse)
-                    .sorted(Comparator.comparing(MessageResponse::getCreateAt).reversed())
-                    .collect(Collectors.toList());
+            conversationId = ConversationKeys.direct(userId, otherUserId);
+        }
+        int pageSize = size <= 0 ? DEFAULT_SEARCH_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        int offset = Math.max(page, 0) * pageSize;
+
+        List<Message> messages;
+        if (messageSearchIndex.isReady()) {
+            List<String> ids = messageSearchIndex.search(List.of(conversationId), userId, keyword, offset, pageSize).ids();
+            messages = loadInOrder(ids);
+        } else if (groupId != null) {
+            messages = messageRepository.searchGroup(groupId, userId, keyword, offset, pageSize);
+        } else {
+            messages = messageRepository.searchDirect(userId, otherUserId, keyword, offset, pageSize);
         }
+        return messages
+                .stream()
+                .map(this::convertToMessageResponse)
+                .collect(Collectors.toList());
     }
 
+    @Override
+    public MessageSearchPageResponse searchAllMessages(String userId, String keyword, List<MessageType> types,
+                                                       LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        int pageSize = limit <= 0 ? DEFAULT_SEARCH_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        MessageCursor after = MessageCursor.decode(cursor);
+        List<String> groupIds = groupRepository.findByMemberIdsContaining(userId).stream().map(Group::getId).toList();
+
+        List<Message> messages;
+        MessageCursor next;
+        boolean hasMore;
+        if (messageSearchIndex.isReady()) {
+            MessageSearchIndex.SearchHits hits = messageSearchIndex.searchAll(userId, groupIds, keyword, types, from, to, after, pageSize);
+            messages = loadInOrder(hits.ids());
+            next = hits.last();
+            hasMore = hits.hasMore();
+        } else {
+            List<Message> rows = messageRepository.searchAll(userId, groupIds, keyword, types, from, to, after, pageSize);
+            hasMore = rows.size() > pageSize;
+            messages = hasMore ? rows.subList(0, pageSize) : rows;
+            Message last = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+            next = last != null ? new MessageCursor(last.getCreatedAt(), last.getId()) : null;
+        }
+
+        return MessageSearchPageResponse.builder()
+                .messages(messages.stream().map(this::convertToMessageResponse).collect(Collectors.toList()))
+                .nextCursor(next != null ? next.encode() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    @Override
+    public MediaPageResponse getMedia(String userId, String otherUserId, String groupId, List<MessageType> types, String before, int limit) {
+        Set<MessageType> mediaTypes = types == null || types.isEmpty() ? MEDIA_TYPES : EnumSet.copyOf(types);
+        if (!MEDIA_TYPES.containsAll(mediaTypes)) {
+            throw new InvalidDataException("Only IMAGE, IMAGE_GROUP, VIDEO, AUDIO and FILE are media types");
+        }
+        int pageSize = limit <= 0 ? DEFAULT_MEDIA_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        MessageCursor beforeCursor = MessageCursor.decode(before);
+
+        List<Message> rows;
+        if (groupId != null) {
+            validateGroup(groupId, userId);
+            rows = messageRepository.findGroupMedia(groupId, userId, mediaTypes, beforeCursor, pageSize);
+        } else if (otherUserId != null) {
+            rows = messageRepository.findDirectMedia(userId, otherUserId, mediaTypes, beforeCursor, pageSize);
+        } else {
+            throw new ResourceNotFoundException("Either otherUserId or groupId must be provided");
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<Message> page = hasMore ? rows.subList(0, pageSize) : rows;
+        Message last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return MediaPageResponse.builder()
+                .items(page.stream().map(this::toMediaItem).collect(Collectors.toList()))
+                .nextCursor(last != null ? new MessageCursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private MediaItemResponse toMediaItem(Message message) {
+        boolean imageGroup = message.getType() == MessageType.IMAGE_GROUP;
+        String url = imageGroup && message.getImageUrls() != null && !message.getImageUrls().isEmpty()
+                ? message.getImageUrls().get(0) : message.getContent();
+        return MediaItemResponse.builder()
+                .messageId(message.getId())
+                .senderId(message.getSenderId())
+                .type(message.getType())
+                .url(url)
+                .imageUrls(imageGroup ? message.getImageUrls() : null)
+                .thumbnail(message.getThumbnail())
+                .fileName(message.getFileName())
+                .createAt(message.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * Fetch messages by id in one query and return them in the order of {@code ids}.
+     */
+    private List<Message> loadInOrder(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Message> byId = new HashMap<>();
+        messageRepository.findAllById(ids).forEach(message -> byId.put(message.getId(), message));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
 
     @Override
     public MessageResponse convertToMessageResponse(Message message) {
@@ -473,10 +804,177 @@ public class MessageServiceImpl implements MessageService {
                 message.getCreatedAt(),
                 message.getUpdatedAt(),
                 message.isPinned(),
-                message.getPinnedAt()
+                message.getPinnedAt(),
+                null,
+                null,
+                message.getClientMsgId(),
+                message.getSeq()
         );
     }
 
+    @Override
+    public MessageHistoryResponse convertToHistoryResponse(Message message) {
+        return MessageHistoryResponse.builder()
+                .id(message.getId())
+                .senderId(message.getSenderId())
+                .receiverId(message.getReceiverId())
+                .groupId(message.getGroupId())
+                .content(message.getContent())
+                .type(message.getType())
+                .imageUrls(message.getImageUrls())
+                .fileName(message.getFileName())
+                .replyToMessageId(message.getReplyToMessageId())
+                .thumbnail(message.getThumbnail())
+                .recalled(message.isRecalled())
+                .deletedByUsers(message.getHiddenFor())
+                .status(message.getStatus())
+                .forwardedFrom(message.getForwardedFrom())
+                .isRead(message.isRead())
+                .createAt(message.getCreatedAt())
+                .isPinned(message.isPinned())
+                .pinnedAt(message.getPinnedAt())
+                .seq(message.getSeq())
+                .build();
+    }
+
+    @Override
+    public MessageResponse getMessageDetail(String messageId, String userId) {
+        Message message = messageRepository.findById(messageId)
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found"));
+        if (!canSee(message, userId)) {
+            throw new ResourceNotFoundException("Message not found");
+        }
+        MessageResponse response = convertToMessageResponse(message);
+        messageQuoteResolver.hydrate(List.of(response));
+        return response;
+    }
+
+    private int normalizePageSize(int limit) {
+        if (limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Serve the first page from the in-memory tail when possible, seeding it on a miss.
+     * Pages further back or forward always go to the database. Messages the viewer deleted
+     * for themselves are never returned.
+     */
+    private MessagePageResponse loadPage(String conversationId, String viewerId, String before, String after, int limit, PageQuery query) {
+        int pageSize = normalizePageSize(limit);
+
+        if (before == null && after == null && messageTailCache.isEnabled()) {
+            Optional<MessageTailCache.TailSlice> cached = messageTailCache.latest(conversationId, pageSize, viewerId);
+            if (cached.isPresent()) {
+                return toPage(cached.get().messages(), cached.get().hasOlder());
+            }
+
+            // The tail is shared by every participant, so it is seeded with the unfiltered newest rows
+            long loadToken = messageTailCache.beginLoad();
+            int fetchSize = Math.max(pageSize, messageTailCache.getCapacity());
+            List<Message> rows = findHistory(conversationId, null, null, null, fetchSize, query);
+            boolean hasOlder = rows.size() > fetchSize;
+            List<MessageResponse> newest = toResponses(hasOlder ? rows.subList(0, fetchSize) : rows);
+            messageTailCache.seed(conversationId, newest, hasOlder, loadToken);
+
+            List<MessageResponse> visible = newest.stream().filter(message -> isVisible(message, viewerId)).toList();
+            if (visible.size() >= pageSize || !hasOlder) {
+                int from = Math.max(0, visible.size() - pageSize);
+                return toPage(visible.subList(from, visible.size()), hasOlder || from > 0);
+            }
+            // The viewer deleted most of the tail for themselves, read their page directly
+        }
+
+        List<Message> rows = findHistory(conversationId, viewerId, MessageCursor.decode(before), MessageCursor.decode(after), pageSize, query);
+        boolean hasMore = rows.size() > pageSize;
+        return toPage(toResponses(hasMore ? rows.subList(0, pageSize) : rows), hasMore);
+    }
+
+    private boolean isVisible(MessageResponse message, String viewerId) {
+        return message.getDeletedByUsers() == null || !message.getDeletedByUsers().contains(viewerId);
+    }
+
+    /**
+     * Convert rows in scan order to responses in the order clients render them, oldest first,
+     * with quoted replies and forwards embedded.
+     */
+    private List<MessageResponse> toResponses(List<Message> rows) {
+        List<MessageResponse> responses = rows.stream()
+                .sorted(Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId))
+                .map(this::convertToHistoryResponse)
+                .collect(Collectors.toList());
+        messageQuoteResolver.hydrate(responses);
+        return responses;
+    }
+
+    private MessagePageResponse toPage(List<MessageResponse> page, boolean hasMore) {
+        String beforeCursor = page.isEmpty() ? null
+                : new MessageCursor(page.get(0).getCreateAt(), page.get(0).getId()).encode();
+        String afterCursor = page.isEmpty() ? null
+                : new MessageCursor(page.get(page.size() - 1).getCreateAt(), page.get(page.size() - 1).getId()).encode();
+
+        return MessagePageResponse.builder()
+                .messages(new ArrayList<>(page))
+                .beforeCursor(beforeCursor)
+                .afterCursor(afterCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * One page of rows in scan order: from buckets when they hold the conversation's full
+     * history, otherwise from the messages collection, completed with archived messages when
+     * the range reaches the cold tier.
+     */
+    private List<Message> findHistory(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit, PageQuery hot) {
+        List<Message> rows = findFromBuckets(conversationId, viewerId, before, after, limit)
+                .orElseGet(() -> hot.find(viewerId, before, after, limit));
+        return messageArchiveService.mergePage(conversationId, viewerId, before, after, limit, rows);
+    }
+
+    /**
+     * Newest-first page read from the bucket layout, empty when the conversation is not fully
+     * bucketed yet or the request pages forward, which the messages collection answers instead.
+     */
+    private Optional<List<Message>> findFromBuckets(String conversationId, String viewerId, MessageCursor before, MessageCursor after, int limit) {
+        if (!bucketsEnabled || after != null || messageBackfillService.isBucketsStale(conversationId)) {
+            return Optional.empty();
+        }
+        try {
+            return messageBucketRepository.findNewest(conversationId, viewerId, before, limit);
+        } catch (Exception e) {
+            log.warn("Bucket read failed for conversation {}, using messages: {}", conversationId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private MessageResponse refreshTail(Message message) {
+        String conversationId = message.getConversationId() != null ? message.getConversationId()
+                : ConversationKeys.of(message.getSenderId(), message.getReceiverId(), message.getGroupId());
+        if (bucketsEnabled) {
+            try {
+                messageBucketRepository.replace(message);
+            } catch (Exception e) {
+                log.error("Failed to update message {} in its bucket: {}", message.getId(), e.getMessage());
+                messageBackfillService.markBucketsStale(conversationId);
+            }
+        }
+        messageQuoteResolver.evict(message);
+        MessageResponse response = convertToMessageResponse(message);
+        MessageResponse historyRow = convertToHistoryResponse(message);
+        messageQuoteResolver.hydrate(List.of(response, historyRow));
+        messageTailCache.update(conversationId, historyRow);
+        return response;
+    }
+
+    private record OutgoingMessage(Message message, List<String> recipientIds) {
+    }
+
+    private interface PageQuery {
+        List<Message> find(String viewerId, MessageCursor before, MessageCursor after, int limit);
+    }
+
     private void validateUser(String senderId, String receiverId) {
         Optional<User> userSender = userRepository.findById(senderId);
         if (userSender.isEmpty()) {
@@ -494,7 +992,16 @@ public class MessageServiceImpl implements MessageService {
         }
     }
 
-    private void validateGroup(String groupId, String senderId) {
+    /**
+     * Reading a 1:1 conversation stays allowed after a block, both users only have to exist.
+     */
+    private void validateReader(String readerId, String otherUserId) {
+        if (!userRepository.existsById(readerId) || !userRepository.existsById(otherUserId)) {
+            throw new ResourceNotFoundException("User not found");
+        }
+    }
+
+    private Group validateGroup(String groupId, String senderId) {
         Optional<Group> group = groupRepository.findById(groupId);
         if (group.isEmpty()) {
             throw new ResourceNotFoundException("Group not found");
@@ -502,6 +1009,53 @@ public class MessageServiceImpl implements MessageService {
         if (!group.get().getMemberIds().contains(senderId)) {
             throw new ResourceNotFoundException("User not in group");
         }
+        return group.get();
+    }
+
+    /**
+     * Validate that the sender may write to the receiver or group and return who should
+     * see the message as unread.
+     */
+    private List<String> validateTarget(String senderId, String receiverId, String groupId) {
+        if (groupId == null) {
+            validateUser(senderId, receiverId);
+            return List.of(receiverId);
+        }
+        return validateGroup(groupId, senderId).getMemberIds().stream()
+                .filter(memberId -> !memberId.equals(senderId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Whether the user is a participant of the message's conversation and has not deleted it
+     * for themselves.
+     */
+    private boolean canSee(Message message, String userId) {
+        boolean participant = message.getGroupId() != null
+                ? groupRepository.findById(message.getGroupId()).map(group -> group.getMemberIds().contains(userId)).orElse(false)
+                : userId.equals(message.getSenderId()) || userId.equals(message.getReceiverId());
+        boolean hidden = message.getHiddenFor() != null && message.getHiddenFor().contains(userId);
+        return participant && !hidden;
+    }
+
+    /**
+     * A reply may only quote a message of the conversation it is sent to, the quote is embedded
+     * into what every member of that conversation receives.
+     */
+    private void validateReplyTo(MessageRequest request) {
+        String replyToMessageId = request.getReplyToMessageId();
+        if (replyToMessageId == null || replyToMessageId.isBlank()) {
+            return;
+        }
+        String conversationId = ConversationKeys.of(request.getSenderId(), request.getReceiverId(), request.getGroupId());
+        boolean sameConversation = messageRepository.findById(replyToMessageId)
+                .map(quoted -> quoted.getConversationId() != null ? quoted.getConversationId()
+                        : ConversationKeys.of(quoted.getSenderId(), quoted.getReceiverId(), quoted.getGroupId()))
+                .filter(quotedConversationId -> quotedConversationId.equals(conversationId))
+                .isPresent();
+        if (!sameConversation) {
+            throw new ResourceNotFoundException("Replied message not found");
+        }
     }
 
     private boolean isValidUrl(String url) {
@@ -0,0 +1,194 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.SyncRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageHistoryResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
+import vn.edu.iuh.fit.zalo_app_be.exception.InvalidDataException;
+import vn.edu.iuh.fit.zalo_app_be.exception.ResourceNotFoundException;
+import vn.edu.iuh.fit.zalo_app_be.model.Group;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.GroupRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageSyncService;
+import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Catch-up after a reconnect. Every insert and every recall, edit, pin or delete bumps a
+ * message's updatedAt, so walking a conversation by (updatedAt, id) from the client's cursor
+ * yields what it missed, each message in its current state. The cost is the size of the gap,
+ * not of the conversation.
+ * <p>
+ * updatedAt is taken before the write commits, so a slow write can land behind a cursor the
+ * client already holds. The first batch of every request therefore also re-reads the last
+ * {@code overlap-ms} before the client's cursor; clients upsert by id, so a row sent twice is
+ * harmless. Messages the viewer deleted for themselves go out as blank rows that only carry the
+ * id and the viewer in deletedByUsers, so other devices drop them too.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j(topic = "MESSAGE-SYNC-SERVICE")
+public class MessageSyncServiceImpl implements MessageSyncService {
+    private static final Comparator<Message> CHANGE_ORDER =
+            Comparator.comparing(Message::getUpdatedAt).thenComparing(Message::getId);
+
+    private final MessageRepository messageRepository;
+    private final GroupRepository groupRepository;
+    private final MessageService messageService;
+    private final MessageQuoteResolver messageQuoteResolver;
+    private final WebSocketService webSocketService;
+
+    @Value("${app.message.sync.batch-size:100}")
+    private int defaultBatchSize;
+
+    @Value("${app.message.sync.max-batches:20}")
+    private int maxBatches;
+
+    @Value("${app.message.sync.max-conversations:100}")
+    private int maxConversations;
+
+    @Value("${app.message.sync.overlap-ms:2000}")
+    private long overlapMs;
+
+    @Override
+    public List<SyncBatchResponse> nextBatches(String userId, SyncRequest request) {
+        validate(userId, request);
+        int batchSize = batchSize(request);
+        List<SyncBatchResponse> batches = new ArrayList<>(request.getConversations().size());
+        for (SyncRequest.ConversationCursor conversation : request.getConversations()) {
+            checkAccess(userId, conversation);
+            batches.add(nextBatch(userId, conversation, conversation.getCursor(), batchSize, true));
+        }
+        return batches;
+    }
+
+    @Override
+    public void stream(String userId, SyncRequest request) {
+        validate(userId, request);
+        int batchSize = batchSize(request);
+        for (SyncRequest.ConversationCursor conversation : request.getConversations()) {
+            try {
+                checkAccess(userId, conversation);
+                // Bounded per request, a client that was away for long continues from the last cursor
+                String cursor = conversation.getCursor();
+                int sent = 0;
+                SyncBatchResponse batch;
+                do {
+                    // Only the client's cursor may trail late writes, the following ones are our own
+                    batch = nextBatch(userId, conversation, cursor, batchSize, sent == 0);
+                    webSocketService.sendSyncBatch(userId, batch);
+                    cursor = batch.getCursor();
+                    sent++;
+                } while (batch.isHasMore() && sent < maxBatches);
+            } catch (RuntimeException e) {
+                log.warn("Skipping sync of conversation otherUserId={}, groupId={} for {}: {}",
+                        conversation.getOtherUserId(), conversation.getGroupId(), userId, e.getMessage());
+            }
+        }
+    }
+
+    private SyncBatchResponse nextBatch(String userId, SyncRequest.ConversationCursor conversation, String cursor, int batchSize, boolean overlap) {
+        MessageCursor after = MessageCursor.decode(cursor);
+        if (after == null) {
+            throw new InvalidDataException("A cursor is required, load the history first");
+        }
+        List<Message> rows = changes(userId, conversation, after, batchSize);
+        boolean hasMore = rows.size() > batchSize;
+        List<Message> page = hasMore ? rows.subList(0, batchSize) : rows;
+        Message last = page.isEmpty() ? null : page.get(page.size() - 1);
+
+        Map<String, Message> byId = new LinkedHashMap<>();
+        if (overlap) {
+            // Rows at or before the cursor that may have committed after the client read past them
+            MessageCursor rewound = new MessageCursor(after.createdAt().minus(Duration.ofMillis(overlapMs)), "");
+            for (Message message : changes(userId, conversation, rewound, batchSize)) {
+                if (atOrBefore(message, after)) {
+                    byId.put(message.getId(), message);
+                }
+            }
+        }
+        // A row updated between the two reads shows up in both, its newer state wins
+        page.forEach(message -> byId.put(message.getId(), message));
+
+        List<MessageResponse> messages = byId.values().stream()
+                .sorted(CHANGE_ORDER)
+                .map(message -> toResponse(message, userId))
+                .collect(Collectors.toList());
+        messageQuoteResolver.hydrate(messages);
+        return SyncBatchResponse.builder()
+                .otherUserId(conversation.getOtherUserId())
+                .groupId(conversation.getGroupId())
+                .messages(messages)
+                .cursor(last != null ? new MessageCursor(last.getUpdatedAt(), last.getId()).encode() : cursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private List<Message> changes(String userId, SyncRequest.ConversationCursor conversation, MessageCursor after, int batchSize) {
+        return conversation.getGroupId() != null
+                ? messageRepository.findGroupChanges(conversation.getGroupId(), after, batchSize)
+                : messageRepository.findDirectChanges(userId, conversation.getOtherUserId(), after, batchSize);
+    }
+
+    private MessageResponse toResponse(Message message, String userId) {
+        if (message.getHiddenFor() == null || !message.getHiddenFor().contains(userId)) {
+            return messageService.convertToHistoryResponse(message);
+        }
+        return MessageHistoryResponse.builder()
+                .id(message.getId())
+                .senderId(message.getSenderId())
+                .receiverId(message.getReceiverId())
+                .groupId(message.getGroupId())
+                .deletedByUsers(List.of(userId))
+                .createAt(message.getCreatedAt())
+                .seq(message.getSeq())
+                .build();
+    }
+
+    private static boolean atOrBefore(Message message, MessageCursor cursor) {
+        int byTime = message.getUpdatedAt().compareTo(cursor.createdAt());
+        return byTime < 0 || byTime == 0 && message.getId().compareTo(cursor.id()) <= 0;
+    }
+
+    private void validate(String userId, SyncRequest request) {
+        if (userId == null) {
+            throw new InvalidDataException("Invalid sync request: missing userId");
+        }
+        if (request.getConversations() == null || request.getConversations().isEmpty()) {
+            throw new InvalidDataException("Invalid sync request: no conversations");
+        }
+        if (request.getConversations().size() > maxConversations) {
+            throw new InvalidDataException("At most " + maxConversations + " conversations per sync request");
+        }
+    }
+
+    private void checkAccess(String userId, SyncRequest.ConversationCursor conversation) {
+        if (conversation.getGroupId() != null) {
+            Group group = groupRepository.findById(conversation.getGroupId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Group not found"));
+            if (!group.getMemberIds().contains(userId)) {
+                throw new ResourceNotFoundException("User not in group");
+            }
+        } else if (conversation.getOtherUserId() == null) {
+            throw new ResourceNotFoundException("Either otherUserId or groupId must be provided");
+        }
+    }
+
+    private int batchSize(SyncRequest request) {
+        return request.getBatchSize() <= 0 ? defaultBatchSize : Math.min(request.getBatchSize(), defaultBatchSize);
+    }
+}
@@ -0,0 +1,240 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageQuoteResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the newest messages of recently opened conversations in memory so the first
+ * history page can be answered without a database round trip.
+ * <p>
+ * A conversation only gets a tail after it was seeded from the database, so the buffer is
+ * always the exact newest slice; new messages for unseeded conversations are ignored.
+ * <p>
+ * Only writes made through this instance reach the tail, so it is turned off when the app runs
+ * as several nodes ({@code app.websocket.cluster.bus} other than {@code local}); a node would
+ * otherwise keep serving pages that miss messages, edits and recalls made on the others.
+ */
+@Component
+@Slf4j(topic = "MESSAGE-TAIL-CACHE")
+public class MessageTailCache {
+    private static final int STRIPES = 1024;
+
+    private final boolean enabled;
+    private final int capacity;
+    private final long idleMillis;
+    private final Map<String, Tail> tails;
+    private final Counter hits;
+    private final Counter misses;
+    // Last write sequence per hash stripe, lets seed() detect writes that raced with its database read
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLongArray stripeWrites = new AtomicLongArray(STRIPES);
+
+    public MessageTailCache(
+            @Value("${app.message.tail-cache.capacity:50}") int capacity,
+            @Value("${app.message.tail-cache.max-conversations:10000}") int maxConversations,
+            @Value("${app.message.tail-cache.idle-minutes:30}") long idleMinutes,
+            @Value("${app.websocket.cluster.bus:local}") String clusterBus,
+            MeterRegistry meterRegistry
+    ) {
+        this.enabled = "local".equals(clusterBus);
+        if (!enabled) {
+            log.info("Message tail cache is disabled on the {} cluster bus, first pages are read from the database", clusterBus);
+        }
+        this.capacity = capacity;
+        this.idleMillis = idleMinutes * 60_000;
+        // Access-ordered so the least recently used conversation is evicted first
+        this.tails = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+                return size() > maxConversations;
+            }
+        });
+        this.hits = meterRegistry.counter("chat.history.tail_cache", "result", "hit");
+        this.misses = meterRegistry.counter("chat.history.tail_cache", "result", "miss");
+        Gauge.builder("chat.history.tail_cache.conversations", tails, Map::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Newest {@code limit} messages visible to {@code viewerId}, oldest first, if the tail can
+     * answer the request. The tail is shared by all participants, messages the viewer deleted
+     * for themselves are skipped here.
+     */
+    public Optional<TailSlice> latest(String conversationId, int limit, String viewerId) {
+        Tail tail = conversationId != null ? tails.get(conversationId) : null;
+        if (tail != null) {
+            Optional<TailSlice> slice = tail.latest(limit, viewerId);
+            if (slice.isPresent()) {
+                hits.increment();
+                return slice;
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Token to take before reading the first page from the database, handed back to {@link #seed}.
+     */
+    public long beginLoad() {
+        return writeSequence.get();
+    }
+
+    /**
+     * Replace the tail with a freshly loaded first page (oldest first). Skipped when the
+     * conversation was written to after {@code loadToken}, since the page may already be stale.
+     */
+    public void seed(String conversationId, List<MessageResponse> newest, boolean hasOlder, long loadToken) {
+        if (!enabled || conversationId == null || stripeWrites.get(stripe(conversationId)) > loadToken) {
+            return;
+        }
+        Tail tail = new Tail();
+        synchronized (tail) {
+            int from = Math.max(0, newest.size() - capacity);
+            tail.messages.addAll(newest.subList(from, newest.size()));
+            tail.hasOlder = hasOlder || from > 0;
+        }
+        tails.put(conversationId, tail);
+    }
+
+    public void append(String conversationId, MessageResponse message) {
+        markWrite(conversationId);
+        Tail tail = conversationId != null ? tails.get(conversationId) : null;
+        if (tail != null) {
+            tail.append(message);
+        }
+    }
+
+    /**
+     * Swap a cached message for its new state after recall, edit, delete or pin. A tail that
+     * also holds replies quoting the message is dropped so it reseeds with fresh quotes.
+     */
+    public void update(String conversationId, MessageResponse updated) {
+        markWrite(conversationId);
+        Tail tail = conversationId != null ? tails.get(conversationId) : null;
+        if (tail != null && tail.update(updated)) {
+            tails.remove(conversationId);
+        }
+    }
+
+    public void evict(String conversationId) {
+        if (conversationId != null) {
+            tails.remove(conversationId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.message.tail-cache.sweep-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        synchronized (tails) {
+            Iterator<Tail> iterator = tails.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().lastAccess > idleMillis) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.debug("Evicted {} idle conversation tails", removed);
+        }
+    }
+
+    private void markWrite(String conversationId) {
+        if (conversationId != null) {
+            stripeWrites.accumulateAndGet(stripe(conversationId), writeSequence.incrementAndGet(), Math::max);
+        }
+    }
+
+    private int stripe(String conversationId) {
+        return Math.floorMod(conversationId.hashCode(), STRIPES);
+    }
+
+    public record TailSlice(List<MessageResponse> messages, boolean hasOlder) {
+    }
+
+    private class Tail {
+        private final ArrayDeque<MessageResponse> messages = new ArrayDeque<>();
+        private boolean hasOlder;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized Optional<TailSlice> latest(int limit, String viewerId) {
+            lastAccess = System.currentTimeMillis();
+            List<MessageResponse> page = new ArrayList<>(limit);
+            Iterator<MessageResponse> newestFirst = messages.descendingIterator();
+            while (newestFirst.hasNext() && page.size() < limit) {
+                MessageResponse message = newestFirst.next();
+                if (isVisible(message, viewerId)) {
+                    page.add(message);
+                }
+            }
+            if (page.size() < limit && hasOlder) {
+                return Optional.empty();
+            }
+            boolean olderVisible = false;
+            while (newestFirst.hasNext() && !olderVisible) {
+                olderVisible = isVisible(newestFirst.next(), viewerId);
+            }
+            Collections.reverse(page);
+            return Optional.of(new TailSlice(page, hasOlder || olderVisible));
+        }
+
+        private boolean isVisible(MessageResponse message, String viewerId) {
+            return viewerId == null || message.getDeletedByUsers() == null || !message.getDeletedByUsers().contains(viewerId);
+        }
+
+        synchronized void append(MessageResponse message) {
+            lastAccess = System.currentTimeMillis();
+            messages.addLast(message);
+            while (messages.size() > capacity) {
+                messages.removeFirst();
+                hasOlder = true;
+            }
+        }
+
+        /**
+         * Returns true when another cached message quotes the updated one.
+         */
+        synchronized boolean update(MessageResponse updated) {
+            List<MessageResponse> patched = new ArrayList<>(messages.size());
+            boolean quoted = false;
+            for (MessageResponse message : messages) {
+                patched.add(updated.getId().equals(message.getId()) ? updated : message);
+                quoted |= quotes(message.getReplyToMessage(), updated) || quotes(message.getForwardedMessage(), updated);
+            }
+            messages.clear();
+            messages.addAll(patched);
+            return quoted;
+        }
+
+        private boolean quotes(MessageQuoteResponse quote, MessageResponse message) {
+            return quote != null && message.getId().equals(quote.getId());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.model.ClusterEvent;
+import vn.edu.iuh.fit.zalo_app_be.model.ClusterPresence;
+import vn.edu.iuh.fit.zalo_app_be.service.ClusterBus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cluster bus on MongoDB, which every instance already talks to. Events are appended to a
+ * capped collection by a publisher thread in small batches; each node follows the collection
+ * with a change stream filtered on the server to events addressed to it. Presence lives in a
+ * TTL collection that every node mirrors in memory through a second change stream, so routing
+ * a message never waits for a query. Change streams need a replica set, which Atlas provides.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.cluster.bus", havingValue = "mongo")
+@Slf4j(topic = "MONGO-CLUSTER-BUS")
+public class MongoClusterBus implements ClusterBus {
+    private static final int MAX_BATCH = 256;
+
+    private final MongoTemplate mongoTemplate;
+    private final long eventsCollectionBytes;
+    private final long presenceTtlSeconds;
+    private final BlockingQueue<ClusterEvent> outgoing;
+    // userId -> nodes holding a session, mirrored from cluster_presence
+    private final Map<String, Set<String>> presence = new ConcurrentHashMap<>();
+    // Presence entries this node owns and keeps alive
+    private final Map<String, ClusterPresence> owned = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Counter dropped;
+
+    private volatile boolean running;
+
+    public MongoClusterBus(
+            MongoTemplate mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.websocket.cluster.mongo.events-size-mb:64}") long eventsSizeMb,
+            @Value("${app.websocket.cluster.mongo.presence-ttl-seconds:90}") long presenceTtlSeconds,
+            @Value("${app.websocket.cluster.mongo.queue-capacity:10000}") int queueCapacity
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventsCollectionBytes = eventsSizeMb * 1024 * 1024;
+        this.presenceTtlSeconds = presenceTtlSeconds;
+        this.outgoing = new LinkedBlockingQueue<>(queueCapacity);
+        this.dropped = meterRegistry.counter("chat.cluster.messages", "direction", "dropped");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(ClusterEvent.class)) {
+            try {
+                mongoTemplate.createCollection(ClusterEvent.class, CollectionOptions.empty().capped().size(eventsCollectionBytes));
+            } catch (Exception e) {
+                // Another node created it first
+                log.debug("Cluster events collection not created: {}", e.getMessage());
+            }
+        }
+        running = true;
+        // Open the presence stream before loading the snapshot so nothing falls in between
+        ChangeSource presenceChanges = presenceChanges();
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> presenceCursor = presenceChanges.open(null);
+        startWorker("cluster-presence-watcher", () -> follow(presenceChanges, presenceCursor, this::applyPresence));
+        mongoTemplate.findAll(ClusterPresence.class)
+                .forEach(entry -> presence.computeIfAbsent(entry.getUserId(), key -> ConcurrentHashMap.newKeySet()).add(entry.getNodeId()));
+        startWorker("cluster-event-publisher", this::publishLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        // Leave the cluster right away instead of waiting for the TTL
+        owned.keySet().forEach(id -> mongoTemplate.remove(Query.query(Criteria.where("_id").is(id)), ClusterPresence.class));
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+        if (!outgoing.offer(event)) {
+            dropped.increment();
+            log.warn("Cluster event queue is full, dropping message for {}", event.getDestination());
+        }
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<ClusterEvent> listener) {
+        List<Bson> pipeline = List.of(Aggregates.match(Filters.and(
+                Filters.eq("operationType", "insert"),
+                Filters.ne("fullDocument.origin", nodeId),
+                Filters.or(Filters.eq("fullDocument.targets", null), Filters.eq("fullDocument.targets", nodeId))
+        )));
+        ChangeSource events = resumeToken -> watch(mongoTemplate.getCollectionName(ClusterEvent.class), pipeline, resumeToken);
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> eventCursor = events.open(null);
+        startWorker("cluster-event-watcher", () -> follow(events, eventCursor,
+                change -> listener.accept(mongoTemplate.getConverter().read(ClusterEvent.class, change.getFullDocument()))));
+    }
+
+    @Override
+    public void markOnline(String nodeId, String userId) {
+        ClusterPresence entry = new ClusterPresence(nodeId + ":" + userId, nodeId, userId, expiry());
+        owned.put(entry.getId(), entry);
+        presence.computeIfAbsent(userId, key -> ConcurrentHashMap.newKeySet()).add(nodeId);
+        mongoTemplate.save(entry);
+    }
+
+    @Override
+    public void markOffline(String nodeId, String userId) {
+        String id = nodeId + ":" + userId;
+        owned.remove(id);
+        removePresence(id);
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(id)), ClusterPresence.class);
+    }
+
+    @Override
+    public Set<String> nodesOf(String userId) {
+        return presence.getOrDefault(userId, Set.of());
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.cluster.mongo.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (owned.isEmpty()) {
+            return;
+        }
+        LocalDateTime expiresAt = expiry();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClusterPresence.class);
+        for (ClusterPresence entry : owned.values()) {
+            bulk.upsert(Query.query(Criteria.where("_id").is(entry.getId())), new Update()
+                    .set("nodeId", entry.getNodeId())
+                    .set("userId", entry.getUserId())
+                    .set("expiresAt", expiresAt));
+        }
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            log.error("Failed to refresh {} presence entries: {}", owned.size(), e.getMessage());
+        }
+    }
+
+    private void publishLoop() {
+        List<ClusterEvent> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                ClusterEvent first = outgoing.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outgoing.drainTo(batch, MAX_BATCH - 1);
+                mongoTemplate.insertAll(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                dropped.increment(batch.size());
+                log.error("Failed to publish {} cluster events: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private ChangeSource presenceChanges() {
+        // Heartbeats are updates, only arrivals and departures change the routing table
+        List<Bson> pipeline = List.of(Aggregates.match(Filters.in("operationType", "insert", "delete")));
+        return resumeToken -> watch(mongoTemplate.getCollectionName(ClusterPresence.class), pipeline, resumeToken);
+    }
+
+    private void applyPresence(ChangeStreamDocument<Document> change) {
+        if ("insert".equals(change.getOperationType().getValue()) && change.getFullDocument() != null) {
+            Document entry = change.getFullDocument();
+            presence.computeIfAbsent(entry.getString("userId"), key -> ConcurrentHashMap.newKeySet()).add(entry.getString("nodeId"));
+        } else if (change.getDocumentKey() != null) {
+            removePresence(change.getDocumentKey().getString("_id").getValue());
+        }
+    }
+
+    private void removePresence(String id) {
+        int separator = id.lastIndexOf(':');
+        String nodeId = id.substring(0, separator);
+        presence.computeIfPresent(id.substring(separator + 1), (key, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> watch(String collection, List<Bson> pipeline, BsonDocument resumeToken) {
+        var stream = mongoTemplate.getCollection(collection).watch(pipeline).maxAwaitTime(500, TimeUnit.MILLISECONDS);
+        return (resumeToken != null ? stream.resumeAfter(resumeToken) : stream).cursor();
+    }
+
+    /**
+     * Feed a change stream to {@code handler} until stopped, reopening it after errors from
+     * the last seen position.
+     */
+    private void follow(ChangeSource source, MongoChangeStreamCursor<ChangeStreamDocument<Document>> first,
+                        Consumer<ChangeStreamDocument<Document>> handler) {
+        BsonDocument resumeToken = null;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> opened = first;
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = opened != null ? opened : source.open(resumeToken)) {
+                opened = null;
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    resumeToken = cursor.getResumeToken();
+                    if (change == null) {
+                        continue;
+                    }
+                    try {
+                        handler.accept(change);
+                    } catch (Exception e) {
+                        log.error("Failed to handle cluster change: {}", e.getMessage());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cluster change stream failed, reopening: {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void startWorker(String name, Runnable task) {
+        Thread worker = new Thread(task, name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    private LocalDateTime expiry() {
+        return LocalDateTime.now().plusSeconds(presenceTtlSeconds);
+    }
+
+    private interface ChangeSource {
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> open(BsonDocument resumeToken);
+    }
+}
@@ -0,0 +1,313 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-session outbound limits. Counts the MESSAGE frames accepted for each session that have not
+ * been written to its socket yet, across the outbound channel queue and the send buffer, and
+ * acts by event class once a slow client falls behind:
+ * <ul>
+ *     <li>ephemeral events (presence, unread counters) are held back past {@code ephemeral-limit}.
+ *     Events carrying a {@link #COALESCE_KEY_HEADER} keep only the newest per key and are sent
+ *     once the session drains, events without one are dropped</li>
+ *     <li>chat events are never dropped silently. Past {@code chat-limit} the session is closed
+ *     and the close reason carries a catch-up cursor for {@code /chat.sync}</li>
+ * </ul>
+ * The cursor is taken from the last moment the session had nothing pending, less
+ * {@code resume-margin-ms} for messages saved just before being sent.
+ */
+@Component
+@Slf4j(topic = "OUTBOUND-BACKPRESSURE")
+public class OutboundBackpressure implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+    public static final String COALESCE_KEY_HEADER = "coalesce-key";
+    static final String RESUME_REASON_PREFIX = "resume=";
+    private static final String MIN_OBJECT_ID = "000000000000000000000000";
+    private static final byte[] MESSAGE_FRAME = "MESSAGE".getBytes(StandardCharsets.US_ASCII);
+
+    private final MessageChannel clientOutboundChannel;
+    private final boolean enabled;
+    private final int ephemeralLimit;
+    private final int chatLimit;
+    private final int maxDeferred;
+    private final long resumeMarginMillis;
+    private final List<String> ephemeralDestinations;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Counter ephemeralDeferred;
+    private final Counter ephemeralCoalesced;
+    private final Counter ephemeralDropped;
+    private final Counter ephemeralFlushed;
+    private final Counter chatDisconnects;
+    private final Counter chatDropped;
+    // Closing blocks on the congested socket, keep it off the outbound threads
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbound-backpressure-closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OutboundBackpressure(
+            // The outbound channel is built from the WebSocket config, which registers this interceptor
+            @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+            @Value("${app.websocket.backpressure.enabled:true}") boolean enabled,
+            @Value("${app.websocket.backpressure.ephemeral-limit:64}") int ephemeralLimit,
+            @Value("${app.websocket.backpressure.chat-limit:512}") int chatLimit,
+            @Value("${app.websocket.backpressure.max-deferred:256}") int maxDeferred,
+            @Value("${app.websocket.backpressure.resume-margin-ms:5000}") long resumeMarginMillis,
+            @Value("${app.websocket.backpressure.ephemeral-destinations:/queue/status,/queue/unread}") List<String> ephemeralDestinations,
+            MeterRegistry meterRegistry
+    ) {
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.enabled = enabled;
+        this.ephemeralLimit = ephemeralLimit;
+        this.chatLimit = Math.max(chatLimit, ephemeralLimit);
+        this.maxDeferred = maxDeferred;
+        this.resumeMarginMillis = resumeMarginMillis;
+        this.ephemeralDestinations = List.copyOf(ephemeralDestinations);
+        this.ephemeralDeferred = meterRegistry.counter("chat.websocket.backpressure", "class", "ephemeral", "action", "deferred");
+        this.ephemeralCoalesced = meterRegistry.counter("chat.websocket.backpressure", "class", "ephemeral", "action", "coalesced");
+        this.ephemeralDropped = meterRegistry.counter("chat.websocket.backpressure", "class", "ephemeral", "action", "dropped");
+        this.ephemeralFlushed = meterRegistry.counter("chat.websocket.backpressure", "class", "ephemeral", "action", "flushed");
+        this.chatDisconnects = meterRegistry.counter("chat.websocket.backpressure", "class", "chat", "action", "disconnected");
+        this.chatDropped = meterRegistry.counter("chat.websocket.backpressure", "class", "chat", "action", "dropped");
+        Gauge.builder("chat.websocket.backpressure.congested_sessions", sessions,
+                all -> all.values().stream().filter(state -> state.pending.get() > this.ephemeralLimit).count())
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        closer.shutdownNow();
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        if (!enabled) {
+            return handler;
+        }
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                CountingSession counting = new CountingSession(session);
+                sessions.put(session.getId(), counting.state);
+                super.afterConnectionEstablished(counting);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        SessionState state = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (state == null) {
+            return message;
+        }
+        if (state.closing.get()) {
+            // Already told to resume from its cursor, anything sent now would be caught up twice
+            chatDropped.increment();
+            return null;
+        }
+
+        int pending = state.pending.get();
+        if (isEphemeral(message)) {
+            if (pending >= ephemeralLimit) {
+                defer(state, message);
+                return null;
+            }
+        } else if (pending >= chatLimit) {
+            disconnect(state, pending);
+            return null;
+        }
+        state.pending.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (sent && ex == null || !enabled
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return;
+        }
+        // Counted in preSend but never queued, e.g. a later interceptor dropped it or the send failed
+        SessionState state = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (state != null) {
+            state.pending.decrementAndGet();
+        }
+    }
+
+    private boolean isEphemeral(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        return destination != null && ephemeralDestinations.stream().anyMatch(destination::endsWith);
+    }
+
+    private void defer(SessionState state, Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String key = accessor.getFirstNativeHeader(COALESCE_KEY_HEADER);
+        if (key == null) {
+            ephemeralDropped.increment();
+            return;
+        }
+        synchronized (state.deferred) {
+            String slot = accessor.getDestination() + "|" + key;
+            if (state.deferred.remove(slot) != null) {
+                ephemeralCoalesced.increment();
+            } else if (state.deferred.size() >= maxDeferred) {
+                ephemeralDropped.increment();
+                return;
+            }
+            // Re-inserted so flushing keeps the order of the newest updates
+            state.deferred.put(slot, message);
+        }
+        ephemeralDeferred.increment();
+    }
+
+    private void disconnect(SessionState state, int pending) {
+        if (!state.closing.compareAndSet(false, true)) {
+            return;
+        }
+        chatDisconnects.increment();
+        String cursor = resumeCursor(state);
+        log.warn("Session {} has {} messages pending, closing it with cursor {}", state.session.getId(), pending, cursor);
+        closer.execute(() -> {
+            try {
+                state.session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(RESUME_REASON_PREFIX + cursor));
+            } catch (IOException e) {
+                log.debug("Failed to close session {}: {}", state.session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    String resumeCursor(SessionState state) {
+        LocalDateTime drainedAt = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(state.drainedAt - resumeMarginMillis), ZoneId.systemDefault());
+        return new MessageCursor(drainedAt, MIN_OBJECT_ID).encode();
+    }
+
+    /**
+     * Called once a MESSAGE frame reached the socket.
+     */
+    private void written(SessionState state) {
+        int pending = state.pending.decrementAndGet();
+        if (pending <= 0) {
+            state.drainedAt = System.currentTimeMillis();
+        }
+        if (pending < ephemeralLimit / 2 && !state.closing.get()) {
+            flush(state);
+        }
+    }
+
+    private void flush(SessionState state) {
+        List<Message<?>> ready;
+        synchronized (state.deferred) {
+            if (state.deferred.isEmpty()) {
+                return;
+            }
+            ready = new ArrayList<>(state.deferred.values());
+            state.deferred.clear();
+        }
+        ephemeralFlushed.increment(ready.size());
+        ready.forEach(clientOutboundChannel::send);
+    }
+
+    private static boolean isMessageFrame(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.getPayload().startsWith("MESSAGE");
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload().duplicate();
+            if (payload.remaining() < MESSAGE_FRAME.length) {
+                return false;
+            }
+            for (byte expected : MESSAGE_FRAME) {
+                if (payload.get() != expected) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static final class SessionState {
+        private final WebSocketSession session;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean closing = new AtomicBoolean();
+        // destination|key -> newest deferred event, in the order they were last updated
+        private final Map<String, Message<?>> deferred = new LinkedHashMap<>();
+        private volatile long drainedAt = System.currentTimeMillis();
+
+        SessionState(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * Wraps the raw session below Spring's send buffer, so a frame counts as written only once
+     * the socket took it.
+     */
+    private class CountingSession extends WebSocketSessionDecorator {
+        private final SessionState state;
+
+        CountingSession(WebSocketSession session) {
+            super(session);
+            this.state = new SessionState(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                if (isMessageFrame(message)) {
+                    written(state);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Recently sent (senderId, clientMsgId) pairs, so a frame resent after a reconnect is answered
+ * from memory instead of reaching the database. The unique index on messages stays the
+ * authority for anything evicted from here or sent through another instance.
+ */
+@Component
+public class RecentSendRegistry {
+    private final Map<String, CompletableFuture<MessageResponse>> sends;
+    private final Counter duplicates;
+
+    public RecentSendRegistry(
+            @Value("${app.message.dedup.capacity:100000}") int capacity,
+            MeterRegistry meterRegistry
+    ) {
+        this.sends = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<MessageResponse>> eldest) {
+                return size() > capacity;
+            }
+        });
+        this.duplicates = meterRegistry.counter("chat.message.duplicate_sends", "source", "memory");
+    }
+
+    /**
+     * Register {@code pending} as the send for this id. Returns the earlier send's future when
+     * the id was seen before (possibly still in flight), or null when the caller owns the send.
+     */
+    public CompletableFuture<MessageResponse> claim(String senderId, String clientMsgId, CompletableFuture<MessageResponse> pending) {
+        CompletableFuture<MessageResponse> earlier = sends.putIfAbsent(key(senderId, clientMsgId), pending);
+        if (earlier != null) {
+            duplicates.increment();
+        }
+        return earlier;
+    }
+
+    /**
+     * Forget a send that failed, so the client's retry is written again.
+     */
+    public void release(String senderId, String clientMsgId, CompletableFuture<MessageResponse> pending) {
+        sends.remove(key(senderId, clientMsgId), pending);
+    }
+
+    private String key(String senderId, String clientMsgId) {
+        return senderId + ":" + clientMsgId;
+    }
+}
@@ -0,0 +1,70 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.fit.zalo_app_be.model.BlacklistedToken;
+import vn.edu.iuh.fit.zalo_app_be.repository.BlacklistedTokenRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the unexpired entries in blacklisted_tokens, so checking a token costs a map
+ * lookup instead of a query. Tokens revoked on this instance are seen at once, tokens revoked
+ * on another instance once the next refresh picks them up.
+ * <p>
+ * Until the first load succeeds every check falls back to the database.
+ */
+@Component
+@Slf4j(topic = "REVOKED-TOKEN-REGISTRY")
+public class RevokedTokenRegistry {
+    // Re-read a little before the last refresh so entries written around it, or by an instance
+    // with a slightly different clock, are not missed
+    private static final long OVERLAP_SECONDS = 60;
+
+    private final BlacklistedTokenRepository blacklistedTokenRepository;
+    private final Map<String, LocalDateTime> revoked = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+    private LocalDateTime lastRefresh;
+
+    public RevokedTokenRegistry(BlacklistedTokenRepository blacklistedTokenRepository, MeterRegistry meterRegistry) {
+        this.blacklistedTokenRepository = blacklistedTokenRepository;
+        Gauge.builder("auth.revoked_tokens", revoked, Map::size).register(meterRegistry);
+    }
+
+    public boolean isRevoked(String token) {
+        if (!loaded) {
+            return blacklistedTokenRepository.existsByToken(token);
+        }
+        return revoked.containsKey(token);
+    }
+
+    public void revoke(String token, LocalDateTime expiryDate) {
+        revoked.put(token, expiryDate);
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.auth.revocation-refresh-ms:30000}")
+    public void refresh() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            List<BlacklistedToken> tokens = loaded
+                    ? blacklistedTokenRepository.findByCreateAtAfter(lastRefresh.minusSeconds(OVERLAP_SECONDS))
+                    : blacklistedTokenRepository.findByExpiryDateAfter(now);
+            tokens.forEach(token -> revoked.put(token.getToken(), token.getExpiryDate()));
+            revoked.values().removeIf(expiryDate -> expiryDate != null && expiryDate.isBefore(now));
+            if (!loaded) {
+                log.info("Loaded {} revoked tokens", revoked.size());
+            }
+            lastRefresh = now;
+            loaded = true;
+        } catch (Exception e) {
+            log.warn("Failed to refresh revoked tokens: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.UnreadCountResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.UnreadCounter;
+import vn.edu.iuh.fit.zalo_app_be.repository.UnreadCounterRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.UnreadCounterService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j(topic = "UNREAD-COUNTER-SERVICE")
+public class UnreadCounterServiceImpl implements UnreadCounterService {
+    private final UnreadCounterRepository unreadCounterRepository;
+    private final SimpMessagingTemplate template;
+
+    @Override
+    public void onMessageSaved(String conversationId, Collection<String> recipientIds) {
+        if (conversationId == null || recipientIds.isEmpty()) {
+            return;
+        }
+        try {
+            unreadCounterRepository.incrementAll(conversationId, recipientIds);
+            for (UnreadCounter counter : unreadCounterRepository.findByConversationIdAndUserIdIn(conversationId, recipientIds)) {
+                push(counter.getUserId(), conversationId, counter.getCount());
+            }
+        } catch (Exception e) {
+            // Counters are derived data, never fail the send because of them
+            log.error("Failed to update unread counters for {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onConversationRead(String userId, String conversationId, long remainingUnread) {
+        unreadCounterRepository.setCount(userId, conversationId, remainingUnread);
+        push(userId, conversationId, remainingUnread);
+    }
+
+    @Override
+    public void onMessageRead(String userId, String conversationId) {
+        unreadCounterRepository.decrement(userId, conversationId, 1);
+        unreadCounterRepository.findByConversationIdAndUserIdIn(conversationId, List.of(userId))
+                .forEach(counter -> push(userId, conversationId, counter.getCount()));
+    }
+
+    @Override
+    public List<UnreadCountResponse> getUnreadCounts(String userId) {
+        return unreadCounterRepository.findByUserIdAndCountGreaterThan(userId, 0)
+                .stream()
+                .map(counter -> new UnreadCountResponse(counter.getConversationId(), counter.getCount()))
+                .collect(Collectors.toList());
+    }
+
+    private void push(String userId, String conversationId, long count) {
+        // Only the newest count per conversation matters to a client that fell behind
+        template.convertAndSendToUser(userId, "/queue/unread", new UnreadCountResponse(conversationId, count),
+                Map.of(OutboundBackpressure.COALESCE_KEY_HEADER, conversationId));
+    }
+}
@@ -8,11 +8,11 @@ import org.springframework.stereotype.Service;
 import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
 import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
 import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
 import vn.edu.iuh.fit.zalo_app_be.exception.MessageSendException;
 import vn.edu.iuh.fit.zalo_app_be.exception.ResourceNotFoundException;
 import vn.edu.iuh.fit.zalo_app_be.model.Group;
-import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
-import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
 import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
 
 import java.util.HashMap;
@@ -24,8 +24,6 @@ import java.util.Map;
 @Slf4j(topic = "WEB-SOCKET-SERVICE")
 public class WebSocketServiceImpl implements WebSocketService {
     private final SimpMessagingTemplate template;
-    private final MessageService messageService;
-    private final MessageRepository messageRepository;
 
     @Override
     public void sendMessage(MessageRequest request) {
@@ -59,6 +57,16 @@ public class WebSocketServiceImpl implements WebSocketService {
         }
     }
 
+    @Override
+    public void acknowledgeSend(MessageRequest request) {
+        template.convertAndSendToUser(request.getSenderId(), "/queue/messages", request);
+    }
+
+    @Override
+    public void sendSyncBatch(String userId, SyncBatchResponse batch) {
+        template.convertAndSendToUser(userId, "/queue/sync", batch);
+    }
+
     @Override
     public void notifyFriendRequest(String senderId, String receiverId) {
         if (senderId == null || receiverId == null) {
@@ -125,81 +133,80 @@ public class WebSocketServiceImpl implements WebSocketService {
     }
 
     @Override
-    public void notifyRecall(String messageId, String userId) {
-        MessageResponse messageResponse = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/recall", messageResponse);
-        if (!userId.equals(messageResponse.getReceiverId())) {
-            template.convertAndSendToUser(messageResponse.getReceiverId(), "/queue/recall", messageResponse);
+    public void notifyRecall(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/recall", message);
+        if (!userId.equals(message.getReceiverId())) {
+            template.convertAndSendToUser(message.getReceiverId(), "/queue/recall", message);
         }
-        log.info("Recall notification sent for message {} to user {}", messageId, userId);
+        log.info("Recall notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyGroupRecall(String messageId, String userId, String groupId) {
-        MessageResponse response = messageService.convertToMessageResponse(
-                messageRepository.findById(messageId).orElseThrow()
-        );
-        template.convertAndSend("/topic/group/" + groupId, response);
+    public void notifyGroupRecall(MessageResponse message, String userId, String groupId) {
+        template.convertAndSend("/topic/group/" + groupId, message);
     }
 
     @Override
-    public void notifyDelete(String messageId, String userId) {
-        MessageResponse messageResponse = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/delete", messageResponse);
-        log.info("Delete notification sent for message {} to user {}", messageId, userId);
+    public void notifyDelete(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/delete", message);
+        log.info("Delete notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyGroupDelete(String messageId, String userId, String groupId) {
-        MessageResponse response = messageService.convertToMessageResponse(
-                messageRepository.findById(messageId).orElseThrow()
-        );
-        template.convertAndSend("/topic/group/" + groupId, response);
-        log.info("Group delete notification sent for message {} to user {}", messageId, userId);
+    public void notifyGroupDelete(MessageResponse message, String userId, String groupId) {
+        template.convertAndSend("/topic/group/" + groupId, message);
+        log.info("Group delete notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyRead(String messageId, String userId) {
-        MessageResponse response = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/read", response);
-        log.info("Read notification sent for message {} to user {}", messageId, userId);
+    public void notifyRead(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/read", message);
+        log.info("Read notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyEdit(String messageId, String userId, String content) {
-        MessageResponse response = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/edit", response);
-        if (!userId.equals(response.getReceiverId())) {
-            template.convertAndSendToUser(response.getReceiverId(), "/queue/edit", response);
+    public void notifyReadUpTo(ReadReceiptResponse receipt) {
+        if (receipt.getGroupId() != null) {
+            template.convertAndSend("/topic/group/" + receipt.getGroupId() + "/read", receipt);
+        } else {
+            template.convertAndSendToUser(receipt.getOtherUserId(), "/queue/read", receipt);
+            template.convertAndSendToUser(receipt.getReaderId(), "/queue/read", receipt);
         }
+        log.info("Read receipt sent for conversation {} up to {} by {}", receipt.getConversationId(), receipt.getReadUpTo(), receipt.getReaderId());
+    }
 
-        log.info("Edit notification sent for message {} to user {}", messageId, userId);
+    @Override
+    public void notifyEdit(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/edit", message);
+        if (!userId.equals(message.getReceiverId())) {
+            template.convertAndSendToUser(message.getReceiverId(), "/queue/edit", message);
+        }
+
+        log.info("Edit notification sent for message {} to user {}", message.getId(), userId);
     }
 
-    public void notifyGroupEdit(String messageId, String userId, String groupId) {
-        MessageResponse response = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSend("/topic/group/" + groupId, response);
-        log.info("Group edit notification sent for message {} to user {}", messageId, userId);
+    @Override
+    public void notifyGroupEdit(MessageResponse message, String userId, String groupId) {
+        template.convertAndSend("/topic/group/" + groupId, message);
+        log.info("Group edit notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyPin(String messageId, String userId) {
-        MessageResponse response = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/pin", response);
-        if (response.getGroupId() != null) {
-            template.convertAndSend("/topic/group/" + response.getGroupId(), response);
+    public void notifyPin(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/pin", message);
+        if (message.getGroupId() != null) {
+            template.convertAndSend("/topic/group/" + message.getGroupId(), message);
         }
-        log.info("Pin notification sent for message {} to user {}", messageId, userId);
+        log.info("Pin notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
-    public void notifyUnpin(String messageId, String userId) {
-        MessageResponse response = messageService.convertToMessageResponse(messageRepository.findById(messageId).orElseThrow());
-        template.convertAndSendToUser(userId, "/queue/unpin", response);
-        if (response.getGroupId() != null) {
-            template.convertAndSend("/topic/group/" + response.getGroupId(), response);
+    public void notifyUnpin(MessageResponse message, String userId) {
+        template.convertAndSendToUser(userId, "/queue/unpin", message);
+        if (message.getGroupId() != null) {
+            template.convertAndSend("/topic/group/" + message.getGroupId(), message);
         }
-        log.info("Unpin notification sent for message {} to user {}", messageId, userId);
+        log.info("Unpin notification sent for message {} to user {}", message.getId(), userId);
     }
 
     @Override
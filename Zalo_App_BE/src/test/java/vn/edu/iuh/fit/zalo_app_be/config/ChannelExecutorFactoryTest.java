@@ -0,0 +1,138 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelExecutorFactoryTest {
+    private final MockEnvironment environment = new MockEnvironment();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChannelExecutorFactory factory = new ChannelExecutorFactory(environment, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        factory.shutdown();
+    }
+
+    @Test
+    void directModeLeavesTheChannelWithoutExecutor() {
+        environment.setProperty("app.websocket.executors.broker.mode", "direct");
+        assertNull(factory.create("broker", ChannelExecutorFactory.Mode.POOL, ChannelExecutorFactory.Saturation.REJECT, 1, 1, 1));
+    }
+
+    @Test
+    void saturatedPoolRejectsAndReportsIt() throws InterruptedException {
+        environment.setProperty("app.websocket.executors.inbound.core-pool-size", "1");
+        environment.setProperty("app.websocket.executors.inbound.max-pool-size", "2");
+        environment.setProperty("app.websocket.executors.inbound.queue-capacity", "1");
+        Executor executor = factory.create("inbound", ChannelExecutorFactory.Mode.POOL, ChannelExecutorFactory.Saturation.REJECT, 16, 64, 1000);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            started.countDown();
+            awaitQuietly(release);
+        };
+        executor.execute(blocking); // core thread
+        executor.execute(blocking); // queued
+        executor.execute(blocking); // queue full, grows to max
+        assertThrows(ChannelExecutorFactory.ChannelSaturatedException.class, () -> executor.execute(blocking));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, meterRegistry.get("chat.websocket.executor.active").tag("channel", "inbound").gauge().value());
+        assertEquals(1, meterRegistry.get("chat.websocket.executor.queued").tag("channel", "inbound").gauge().value());
+        assertEquals(1, meterRegistry.get("chat.websocket.executor.rejected").tag("channel", "inbound").counter().count());
+        release.countDown();
+    }
+
+    @Test
+    void aSaturatedRejectingChannelFailsTheSendWithoutHandlingIt() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> handledOn = new CopyOnWriteArrayList<>();
+        ExecutorSubscribableChannel channel = saturatedChannel(ChannelExecutorFactory.Saturation.REJECT, release, handledOn);
+
+        assertThrows(MessageDeliveryException.class, () -> channel.send(frame()));
+
+        release.countDown();
+        assertFalse(handledOn.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void aSaturatedCallerRunsChannelHandlesTheMessageOnTheSender() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> handledOn = new CopyOnWriteArrayList<>();
+        ExecutorSubscribableChannel channel = saturatedChannel(ChannelExecutorFactory.Saturation.CALLER_RUNS, release, handledOn);
+
+        assertTrue(channel.send(frame()));
+
+        release.countDown();
+        assertTrue(handledOn.contains(Thread.currentThread()));
+    }
+
+    /**
+     * An inbound channel on a pool of one thread and a queue of one, with both taken by frames
+     * whose handler waits for {@code release}.
+     */
+    private ExecutorSubscribableChannel saturatedChannel(ChannelExecutorFactory.Saturation saturation, CountDownLatch release,
+                                                         List<Thread> handledOn) throws InterruptedException {
+        environment.setProperty("app.websocket.executors.inbound.core-pool-size", "1");
+        environment.setProperty("app.websocket.executors.inbound.max-pool-size", "1");
+        environment.setProperty("app.websocket.executors.inbound.queue-capacity", "1");
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(
+                factory.create("inbound", ChannelExecutorFactory.Mode.POOL, saturation, 16, 64, 1000));
+        CountDownLatch started = new CountDownLatch(1);
+        channel.subscribe(message -> {
+            handledOn.add(Thread.currentThread());
+            started.countDown();
+            if (Thread.currentThread().getName().startsWith("stomp-inbound-")) {
+                awaitQuietly(release);
+            }
+        });
+        assertTrue(channel.send(frame())); // pool thread
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(channel.send(frame())); // queued
+        return channel;
+    }
+
+    private static Message<byte[]> frame() {
+        return MessageBuilder.withPayload(new byte[0]).build();
+    }
+
+    @Test
+    void virtualModeNeedsJava21() throws InterruptedException {
+        environment.setProperty("app.websocket.executors.inbound.mode", "virtual");
+        if (Runtime.version().feature() < 21) {
+            assertThrows(IllegalStateException.class,
+                    () -> factory.create("inbound", ChannelExecutorFactory.Mode.POOL, ChannelExecutorFactory.Saturation.REJECT, 1, 1, 1));
+            return;
+        }
+        Executor executor = factory.create("inbound", ChannelExecutorFactory.Mode.POOL, ChannelExecutorFactory.Saturation.REJECT, 1, 1, 1);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(() -> {
+            assertTrue(Thread.currentThread().getName().startsWith("stomp-inbound-"));
+            ran.countDown();
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package vn.edu.iuh.fit.zalo_app_be.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import vn.edu.iuh.fit.zalo_app_be.common.AccessToken;
+import vn.edu.iuh.fit.zalo_app_be.model.User;
+import vn.edu.iuh.fit.zalo_app_be.repository.BlacklistedTokenRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.JwtService;
+import vn.edu.iuh.fit.zalo_app_be.service.UserServiceDetail;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.RevokedTokenRegistry;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StompAuthInterceptorTest {
+    private JwtService jwtService;
+    private UserDetailsService userDetailsService;
+    private RevokedTokenRegistry revokedTokenRegistry;
+    private StompAuthInterceptor interceptor;
+    private final Map<String, Object> session = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        userDetailsService = mock(UserDetailsService.class);
+        UserServiceDetail userServiceDetail = mock(UserServiceDetail.class);
+        when(userServiceDetail.userDetailsService()).thenReturn(userDetailsService);
+        BlacklistedTokenRepository blacklistedTokenRepository = mock(BlacklistedTokenRepository.class);
+        when(blacklistedTokenRepository.findByExpiryDateAfter(any())).thenReturn(List.of());
+        revokedTokenRegistry = new RevokedTokenRegistry(blacklistedTokenRepository, new SimpleMeterRegistry());
+        revokedTokenRegistry.refresh();
+        interceptor = new StompAuthInterceptor(jwtService, userServiceDetail, revokedTokenRegistry);
+
+        when(jwtService.verifyAccessToken("t1"))
+                .thenReturn(new AccessToken("t1", "alice", "u1", Instant.now().plusSeconds(3600)));
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenReturn(User.builder().id("u1").username("alice").build());
+    }
+
+    @Test
+    void authenticatesOnceAndAuthorizesLaterFramesFromTheSession() {
+        Principal user = connect("t1");
+        assertNotNull(user);
+        assertEquals("u1", session.get(StompAuthInterceptor.USER_ID_ATTRIBUTE));
+
+        for (int i = 0; i < 5; i++) {
+            interceptor.preSend(frame(StompCommand.SEND, "/app/chat.send", user, null), null);
+        }
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/user/u1/queue/messages", user, "t1"), null);
+
+        verify(jwtService, times(1)).verifyAccessToken(anyString());
+        verify(userDetailsService, times(1)).loadUserByUsername(anyString());
+    }
+
+    @Test
+    void rejectsFramesOnUnauthenticatedSessions() {
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, "/app/chat.send", null, "t1"), null));
+    }
+
+    @Test
+    void rejectsSubscriptionsToAnotherUsersQueue() {
+        Principal user = connect("t1");
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/user/u2/queue/messages", user, null), null));
+    }
+
+    @Test
+    void rejectsFramesOnceTheTokenIsRevoked() {
+        Principal user = connect("t1");
+        revokedTokenRegistry.revoke("t1", LocalDateTime.now().plusDays(1));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, "/app/chat.send", user, null), null));
+    }
+
+    @Test
+    void acceptsARenewedTokenForTheSameUserOnly() {
+        Principal user = connect("t1");
+        when(jwtService.verifyAccessToken("t2"))
+                .thenReturn(new AccessToken("t2", "alice", "u1", Instant.now().plusSeconds(7200)));
+        when(jwtService.verifyAccessToken("t3"))
+                .thenReturn(new AccessToken("t3", "bob", "u2", Instant.now().plusSeconds(7200)));
+
+        interceptor.preSend(frame(StompCommand.SEND, "/app/chat.send", user, "t2"), null);
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, "/app/chat.send", user, "t3"), null));
+    }
+
+    private Principal connect(String token) {
+        Message<?> connect = frame(StompCommand.CONNECT, null, null, token);
+        interceptor.preSend(connect, null);
+        return StompHeaderAccessor.getUser(connect.getHeaders());
+    }
+
+    private Message<?> frame(StompCommand command, String destination, Principal user, String token) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(session);
+        accessor.setDestination(destination);
+        accessor.setUser(user);
+        if (token != null) {
+            accessor.setNativeHeader("Authorization", "Bearer " + token);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,90 @@
+package vn.edu.iuh.fit.zalo_app_be.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.ReadUpToRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.User;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageSyncService;
+import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
+
+import java.security.Principal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatControllerTest {
+    @Mock
+    private WebSocketService webSocketService;
+    @Mock
+    private MessageService messageService;
+    @Mock
+    private MessageSyncService messageSyncService;
+    @InjectMocks
+    private ChatController chatController;
+
+    @Test
+    void forwardsAsTheSessionUserWhateverThePayloadClaims() {
+        when(messageService.forwardMessage(eq("m1"), eq("u1"), anyList(), anyList()))
+                .thenReturn(List.of(MessageResponse.builder().id("m2").receiverId("u3").build()));
+        MessageRequest request = new MessageRequest();
+        request.setId("m1");
+        request.setSenderId("u9");
+        request.setReceiverIds(List.of("u3"));
+
+        chatController.forwardMessageToMany(request, session("u1"));
+
+        verify(messageService).forwardMessage("m1", "u1", List.of("u3"), List.of());
+        verify(messageService, never()).forwardMessage(eq("m1"), eq("u9"), anyList(), anyList());
+    }
+
+    @Test
+    void anUnauthenticatedSessionCannotForward() {
+        MessageRequest request = new MessageRequest();
+        request.setId("m1");
+        request.setSenderId("u1");
+        request.setReceiverId("u3");
+
+        assertThrows(AccessDeniedException.class, () -> chatController.forwardMessage(request, null));
+        verifyNoInteractions(messageService, webSocketService);
+    }
+
+    @Test
+    void readUpToRejectsAReaderOtherThanTheSessionUser() {
+        ReadUpToRequest request = new ReadUpToRequest();
+        request.setReaderId("u2");
+        request.setOtherUserId("u1");
+
+        assertThrows(AccessDeniedException.class, () -> chatController.readUpTo(request, session("u1")));
+        verifyNoInteractions(messageService, webSocketService);
+    }
+
+    @Test
+    void readUpToWithoutAReaderMarksTheSessionUsersConversation() {
+        ReadUpToRequest request = new ReadUpToRequest();
+        request.setOtherUserId("u2");
+
+        chatController.readUpTo(request, session("u1"));
+
+        ArgumentCaptor<ReadUpToRequest> marked = ArgumentCaptor.forClass(ReadUpToRequest.class);
+        verify(messageService).markConversationRead(marked.capture());
+        assertEquals("u1", marked.getValue().getReaderId());
+    }
+
+    private static Principal session(String userId) {
+        User user = new User();
+        user.setId(userId);
+        return new UsernamePasswordAuthenticationToken(user, null, List.of());
+    }
+}
@@ -0,0 +1,152 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageBucket;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares history paging latency of the per-message layout against message buckets on a real
+ * MongoDB. Skipped unless started with {@code -Dbenchmark.mongo-uri=mongodb://...}; it writes to
+ * a throwaway database ({@code -Dbenchmark.database}, default zalo-app-benchmark) and drops it.
+ */
+@EnabledIfSystemProperty(named = "benchmark.mongo-uri", matches = ".+")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MessageBucketBenchmark {
+    private static final String SENDER = "benchmark-user-a";
+    private static final String RECEIVER = "benchmark-user-b";
+    private static final int HISTORY = Integer.getInteger("benchmark.messages", 100_000);
+    private static final int PAGE_SIZE = 50;
+    private static final int CAPACITY = 200;
+    private static final int WARMUP = 200;
+    private static final int SAMPLES = 2_000;
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private MessageRepositoryCustomImpl messages;
+    private MessageBucketRepositoryCustomImpl buckets;
+    private List<Message> history;
+
+    @BeforeAll
+    void seed() {
+        client = MongoClients.create(System.getProperty("benchmark.mongo-uri"));
+        mongoTemplate = new MongoTemplate(client, System.getProperty("benchmark.database", "zalo-app-benchmark"));
+        mongoTemplate.getDb().drop();
+        var resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> type : List.of(Message.class, MessageBucket.class)) {
+            resolver.resolveIndexFor(type).forEach(mongoTemplate.indexOps(type)::ensureIndex);
+        }
+
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        history = new ArrayList<>(HISTORY);
+        for (int i = 0; i < HISTORY; i++) {
+            Message message = new Message();
+            message.setSenderId(i % 2 == 0 ? SENDER : RECEIVER);
+            message.setReceiverId(i % 2 == 0 ? RECEIVER : SENDER);
+            message.setConversationId(ConversationKeys.direct(SENDER, RECEIVER));
+            message.setContent("Tin nhắn số " + i);
+            message.setType(MessageType.TEXT);
+            message.setStatus(MessageStatus.SENT);
+            message.setCreatedAt(start.plusSeconds(i));
+            message.setUpdatedAt(message.getCreatedAt());
+            history.add(message);
+        }
+        for (int from = 0; from < HISTORY; from += 1_000) {
+            mongoTemplate.insertAll(history.subList(from, Math.min(HISTORY, from + 1_000)));
+        }
+
+        messages = new MessageRepositoryCustomImpl(mongoTemplate);
+        messages.markConversationIdsBackfilled();
+        buckets = new MessageBucketRepositoryCustomImpl(mongoTemplate);
+        assertEquals(HISTORY, buckets.migrate(ConversationKeys.direct(SENDER, RECEIVER), LocalDateTime.now(), CAPACITY));
+    }
+
+    @AfterAll
+    void drop() {
+        if (mongoTemplate != null) {
+            mongoTemplate.getDb().drop();
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void comparePagingLatency() {
+        String conversationId = ConversationKeys.direct(SENDER, RECEIVER);
+        Function<MessageCursor, List<Message>> perMessage =
+                before -> messages.findDirectPage(SENDER, RECEIVER, SENDER, before, null, PAGE_SIZE);
+        Function<MessageCursor, List<Message>> bucketed =
+                before -> buckets.findNewest(conversationId, SENDER, before, PAGE_SIZE).orElseThrow();
+
+        // Both layouts must return the same page before their timings mean anything
+        MessageCursor probe = cursorAt(HISTORY / 2);
+        assertEquals(ids(perMessage.apply(probe)), ids(bucketed.apply(probe)));
+
+        long[] messageNanos = measure(perMessage);
+        long[] bucketNanos = measure(bucketed);
+        report("messages", messageNanos);
+        report("buckets", bucketNanos);
+        assertTrue(messageNanos.length == SAMPLES && bucketNanos.length == SAMPLES);
+    }
+
+    private long[] measure(Function<MessageCursor, List<Message>> page) {
+        Random random = new Random(42);
+        for (int i = 0; i < WARMUP; i++) {
+            page.apply(randomCursor(random));
+        }
+        long[] nanos = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            MessageCursor before = randomCursor(random);
+            long start = System.nanoTime();
+            page.apply(before);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private MessageCursor randomCursor(Random random) {
+        // One in ten requests opens the conversation, the rest scroll back from a random depth
+        return random.nextInt(10) == 0 ? null : cursorAt(PAGE_SIZE + random.nextInt(HISTORY - PAGE_SIZE));
+    }
+
+    private MessageCursor cursorAt(int index) {
+        Message message = history.get(index);
+        return new MessageCursor(message.getCreatedAt(), message.getId());
+    }
+
+    private List<String> ids(List<Message> page) {
+        return page.stream().map(Message::getId).toList();
+    }
+
+    private void report(String layout, long[] sortedNanos) {
+        System.out.printf("%-8s p50=%.2fms p95=%.2fms p99=%.2fms (%d messages, page %d)%n", layout,
+                percentile(sortedNanos, 0.50), percentile(sortedNanos, 0.95), percentile(sortedNanos, 0.99), HISTORY, PAGE_SIZE);
+    }
+
+    private double percentile(long[] sortedNanos, double quantile) {
+        return sortedNanos[(int) Math.min(sortedNanos.length - 1, Math.round(quantile * sortedNanos.length))] / 1_000_000.0;
+    }
+}
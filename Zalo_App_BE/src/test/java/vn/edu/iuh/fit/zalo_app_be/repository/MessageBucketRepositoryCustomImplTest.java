@@ -0,0 +1,114 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageBucket;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessageBucketRepositoryCustomImplTest {
+    private static final String CONVERSATION = ConversationKeys.direct("u1", "u2");
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2025, 4, 17, 9, 30);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final MessageBucketRepositoryCustomImpl repository = new MessageBucketRepositoryCustomImpl(mongoTemplate);
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+    }
+
+    @Test
+    void theMostRecentlyChangedCopyWinsWhereBucketsOverlap() {
+        Message kept = message("6803a1f2c4e5b61a2f9d0c21", SENT_AT);
+        Message deleted = message("6803a1f2c4e5b61a2f9d0c22", SENT_AT.plusSeconds(1));
+        Message deletedLater = message(deleted.getId(), deleted.getCreatedAt());
+        deletedLater.setUpdatedAt(SENT_AT.plusHours(1));
+        deletedLater.setDeleteBy(Map.of("u2", SENT_AT.plusHours(1)));
+        // The live bucket still holds the copy from before the delete, the migrated one has it
+        MessageBucket live = bucket(false, kept, deleted);
+        MessageBucket migrated = bucket(true, kept, deletedLater);
+        when(mongoTemplate.stream(any(Query.class), eq(MessageBucket.class))).thenAnswer(invocation -> Stream.of(live, migrated));
+
+        List<Message> page = repository.findNewest(CONVERSATION, "u2", null, 10).orElseThrow();
+
+        assertEquals(List.of(kept.getId()), page.stream().map(Message::getId).toList());
+        assertEquals(2, repository.findNewest(CONVERSATION, "u1", null, 10).orElseThrow().size());
+    }
+
+    @Test
+    void migrateReplacesMessagesChangedWhilePacking() {
+        Message first = message("6803a1f2c4e5b61a2f9d0c21", SENT_AT);
+        Message edited = message("6803a1f2c4e5b61a2f9d0c22", SENT_AT.plusSeconds(1));
+        when(mongoTemplate.stream(any(Query.class), eq(Message.class)))
+                .thenReturn(Stream.of(first, edited))
+                .thenReturn(Stream.of(edited));
+
+        assertEquals(2, repository.migrate(CONVERSATION, SENT_AT.plusDays(1), 200));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).stream(queries.capture(), eq(Message.class));
+        assertTrue(queries.getAllValues().get(1).getQueryObject().containsKey("updatedAt"));
+        ArgumentCaptor<Query> replaced = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateMulti(replaced.capture(), any(UpdateDefinition.class), eq(MessageBucket.class));
+        assertNotNull(replaced.getValue().getQueryObject().get("messages._id"));
+        // The origin is written before the replay, so the replay reaches it
+        var order = inOrder(mongoTemplate);
+        order.verify(mongoTemplate).insert(any(MessageBucket.class));
+        order.verify(mongoTemplate).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(MessageBucket.class));
+    }
+
+    private MessageBucket bucket(boolean origin, Message... messages) {
+        MessageBucket bucket = new MessageBucket();
+        bucket.setConversationId(CONVERSATION);
+        bucket.setOrigin(origin);
+        bucket.setFirst(messages[0].getCreatedAt());
+        bucket.setLast(messages[messages.length - 1].getCreatedAt());
+        bucket.setCount(messages.length);
+        bucket.setMessages(Stream.of(messages).map(message -> {
+            Document document = new Document();
+            converter.write(message, document);
+            return document;
+        }).toList());
+        return bucket;
+    }
+
+    private static Message message(String id, LocalDateTime createdAt) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId("u1");
+        message.setReceiverId("u2");
+        message.setConversationId(CONVERSATION);
+        message.setContent("hi");
+        message.setCreatedAt(createdAt);
+        message.setUpdatedAt(createdAt);
+        return message;
+    }
+}
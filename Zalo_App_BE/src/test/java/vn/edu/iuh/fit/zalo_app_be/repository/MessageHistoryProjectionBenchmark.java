@@ -0,0 +1,217 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.impl.MessageServiceImpl;
+
+import java.lang.reflect.Constructor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares bytes read from MongoDB and JSON bytes sent per history page between full documents
+ * and the slim history projection. Skipped unless started with
+ * {@code -Dbenchmark.mongo-uri=mongodb://...}; it writes to a throwaway database
+ * ({@code -Dbenchmark.database}, default zalo-app-benchmark) and drops it.
+ */
+@EnabledIfSystemProperty(named = "benchmark.mongo-uri", matches = ".+")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MessageHistoryProjectionBenchmark {
+    private static final String SENDER = "benchmark-user-a";
+    private static final String RECEIVER = "benchmark-user-b";
+    private static final int HISTORY = Integer.getInteger("benchmark.messages", 20_000);
+    private static final int PAGE_SIZE = 50;
+    private static final int SAMPLES = 1_000;
+
+    // Reply bytes of every command, reset around each measured query
+    private final AtomicLong replyBytes = new AtomicLong();
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private MessageRepositoryCustomImpl messages;
+    private final MessageService conversions = conversionsOnly();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private List<Message> history;
+
+    @BeforeAll
+    void seed() {
+        CommandListener listener = new CommandListener() {
+            @Override
+            public void commandSucceeded(CommandSucceededEvent event) {
+                BsonDocument response = event.getResponse();
+                replyBytes.addAndGet(new RawBsonDocument(response, new BsonDocumentCodec()).getByteBuffer().remaining());
+            }
+        };
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(System.getProperty("benchmark.mongo-uri")))
+                .addCommandListener(listener)
+                .build());
+        mongoTemplate = new MongoTemplate(client, System.getProperty("benchmark.database", "zalo-app-benchmark"));
+        mongoTemplate.getDb().drop();
+        var resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        resolver.resolveIndexFor(Message.class).forEach(mongoTemplate.indexOps(Message.class)::ensureIndex);
+
+        // A realistic mix: media with cloud metadata, edited texts and messages one side deleted
+        Random random = new Random(7);
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        history = new ArrayList<>(HISTORY);
+        for (int i = 0; i < HISTORY; i++) {
+            Message message = new Message();
+            message.setSenderId(i % 2 == 0 ? SENDER : RECEIVER);
+            message.setReceiverId(i % 2 == 0 ? RECEIVER : SENDER);
+            message.setConversationId(ConversationKeys.direct(SENDER, RECEIVER));
+            message.setStatus(MessageStatus.SENT);
+            message.setSeq((long) i + 1);
+            message.setClientMsgId("client-" + i);
+            int kind = random.nextInt(10);
+            if (kind < 2) {
+                message.setType(MessageType.VIDEO);
+                message.setContent("https://res.cloudinary.com/demo/video/upload/v1/chat/video-" + i + ".mp4");
+                message.setThumbnail("https://res.cloudinary.com/demo/video/upload/v1/chat/video-" + i + ".jpg");
+                message.setPublicId("chat/video-" + i);
+                message.setVideoInfos(List.of(Map.of("url", message.getContent(), "thumbnail", message.getThumbnail())));
+            } else if (kind < 3) {
+                message.setType(MessageType.TEXT);
+                message.setContent("Tin nhắn đã sửa số " + i);
+                message.setContentAfterRecallOrDeleteOrEdit("Nội dung ban đầu của tin nhắn số " + i + " trước khi được chỉnh sửa");
+                message.setEditId(true);
+            } else {
+                message.setType(MessageType.TEXT);
+                message.setContent("Tin nhắn số " + i);
+            }
+            if (kind == 9) {
+                message.setDeleteBy(Map.of(RECEIVER, start));
+                message.setHiddenFor(List.of(RECEIVER));
+            }
+            message.setCreatedAt(start.plusSeconds(i));
+            message.setUpdatedAt(message.getCreatedAt());
+            history.add(message);
+        }
+        for (int from = 0; from < HISTORY; from += 1_000) {
+            mongoTemplate.insertAll(history.subList(from, Math.min(HISTORY, from + 1_000)));
+        }
+
+        messages = new MessageRepositoryCustomImpl(mongoTemplate);
+        messages.markConversationIdsBackfilled();
+    }
+
+    @AfterAll
+    void drop() {
+        if (mongoTemplate != null) {
+            mongoTemplate.getDb().drop();
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void compareBytesPerPage() throws Exception {
+        Function<MessageCursor, List<Message>> slim =
+                before -> messages.findDirectPage(SENDER, RECEIVER, SENDER, before, null, PAGE_SIZE);
+        Function<MessageCursor, List<Message>> full = this::fullPage;
+
+        MessageCursor probe = cursorAt(HISTORY / 2);
+        assertEquals(ids(full.apply(probe)), ids(slim.apply(probe)));
+
+        Totals fullTotals = measure(full, conversions::convertToMessageResponse);
+        Totals slimTotals = measure(slim, conversions::convertToHistoryResponse);
+        report("full", fullTotals);
+        report("slim", slimTotals);
+        assertTrue(slimTotals.mongoBytes() < fullTotals.mongoBytes());
+        assertTrue(slimTotals.jsonBytes() < fullTotals.jsonBytes());
+    }
+
+    /**
+     * The history query as it was before the projection: same filter, sort and limit, every field.
+     */
+    private List<Message> fullPage(MessageCursor before) {
+        Criteria criteria = Criteria.where("conversationId").is(ConversationKeys.direct(SENDER, RECEIVER))
+                .and("hiddenFor").ne(SENDER);
+        if (before != null) {
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(before.createdAt()),
+                    Criteria.where("createdAt").is(before.createdAt()).and("_id").lt(before.id())));
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "createdAt", "_id")).limit(PAGE_SIZE + 1);
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    private Totals measure(Function<MessageCursor, List<Message>> page, Function<Message, Object> toResponse) throws Exception {
+        Random random = new Random(42);
+        long mongoBytes = 0;
+        long jsonBytes = 0;
+        long nanos = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            MessageCursor before = random.nextInt(10) == 0 ? null : cursorAt(PAGE_SIZE + random.nextInt(HISTORY - PAGE_SIZE));
+            replyBytes.set(0);
+            long started = System.nanoTime();
+            List<Message> rows = page.apply(before);
+            nanos += System.nanoTime() - started;
+            mongoBytes += replyBytes.get();
+            jsonBytes += objectMapper.writeValueAsBytes(rows.stream().limit(PAGE_SIZE).map(toResponse).toList()).length;
+        }
+        return new Totals(mongoBytes / SAMPLES, jsonBytes / SAMPLES, nanos / SAMPLES);
+    }
+
+    /**
+     * A real service for its two conversions, which only read the message; every collaborator is null.
+     */
+    private static MessageService conversionsOnly() {
+        try {
+            Constructor<?> constructor = MessageServiceImpl.class.getConstructors()[0];
+            return (MessageService) constructor.newInstance(new Object[constructor.getParameterCount()]);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MessageCursor cursorAt(int index) {
+        Message message = history.get(index);
+        return new MessageCursor(message.getCreatedAt(), message.getId());
+    }
+
+    private List<String> ids(List<Message> page) {
+        return page.stream().map(Message::getId).toList();
+    }
+
+    private void report(String shape, Totals totals) {
+        System.out.printf("%-5s mongo=%d B/page json=%d B/page avg=%.2fms (%d messages, page %d)%n", shape,
+                totals.mongoBytes(), totals.jsonBytes(), totals.avgNanos() / 1_000_000.0, HISTORY, PAGE_SIZE);
+    }
+
+    private record Totals(long mongoBytes, long jsonBytes, long avgNanos) {
+    }
+}
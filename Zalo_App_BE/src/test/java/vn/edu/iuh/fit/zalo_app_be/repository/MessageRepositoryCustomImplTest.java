@@ -0,0 +1,132 @@
+package vn.edu.iuh.fit.zalo_app_be.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.BackfillMarker;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessageRepositoryCustomImplTest {
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final MessageRepositoryCustomImpl repository = new MessageRepositoryCustomImpl(mongoTemplate);
+
+    @Test
+    void usesTheConversationIndexOnceAnyInstanceFinishedTheBackfill() {
+        when(mongoTemplate.exists(any(Query.class), eq(BackfillMarker.class))).thenReturn(true);
+
+        repository.findDirectPage("u1", "u2", "u1", null, null, 10);
+
+        assertEquals(ConversationKeys.direct("u1", "u2"), pageScope().get("conversationId"));
+        // Remembered once seen, the marker is not read again
+        repository.findDirectPage("u1", "u2", "u1", null, null, 10);
+        verify(mongoTemplate, times(1)).exists(any(Query.class), eq(BackfillMarker.class));
+    }
+
+    @Test
+    void keepsTheParticipantQueryUntilTheBackfillFinished() {
+        repository.findDirectPage("u1", "u2", "u1", null, null, 10);
+
+        assertTrue(pageScope().containsKey("$or"));
+    }
+
+    @Test
+    void persistsTheMarkerWhenTheBackfillFinishes() {
+        repository.markConversationIdsBackfilled();
+
+        ArgumentCaptor<BackfillMarker> marker = ArgumentCaptor.forClass(BackfillMarker.class);
+        verify(mongoTemplate).save(marker.capture());
+        assertEquals(BackfillMarker.CONVERSATION_IDS, marker.getValue().getId());
+        assertTrue(repository.isConversationIdsBackfilled());
+    }
+
+    @Test
+    void recallOnlyMatchesMessagesNotRecalledYet() {
+        repository.recallBySender("m1", "u1", "Tin nhắn đã được thu hồi");
+
+        Document guard = modifyGuard();
+        assertEquals("u1", guard.get("senderId"));
+        assertEquals(false, guard.get("recalled"));
+    }
+
+    @Test
+    void editIsOnlyBlockedByTheSendersOwnDelete() {
+        repository.editBySender("m1", "u1", "sửa lại");
+
+        Document guard = modifyGuard();
+        assertFalse(guard.containsKey("deleteBy"));
+        assertEquals(new Document("$ne", "u1"), guard.get("hiddenFor"));
+    }
+
+    @Test
+    void deleteForUserRejectsIdsThatAreNotAFieldName() {
+        assertThrows(IllegalArgumentException.class, () -> repository.deleteForUser("m1", "isPinned.x"));
+        assertThrows(IllegalArgumentException.class, () -> repository.deleteForUser("m1", "$where"));
+        verifyNoInteractions(mongoTemplate);
+
+        repository.deleteForUser("m1", "6803a1f2c4e5b61a2f9d0c11");
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(Message.class));
+        assertTrue(update.getValue().getUpdateObject().get("$set", Document.class).containsKey("deleteBy.6803a1f2c4e5b61a2f9d0c11"));
+    }
+
+    @Test
+    void mediaPagesSkipRecalledAndHiddenRowsAndContinueAfterTheCursor() {
+        MessageCursor before = new MessageCursor(LocalDateTime.of(2025, 4, 17, 9, 30), "6803a1f2c4e5b61a2f9d0c21");
+
+        repository.findGroupMedia("g1", "u1", List.of(MessageType.IMAGE, MessageType.VIDEO), before, 30);
+
+        ArgumentCaptor<Query> captured = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captured.capture(), eq(Message.class));
+        Query query = captured.getValue();
+        List<Document> clauses = query.getQueryObject().getList("$and", Document.class);
+        Document filter = clauses.get(1);
+        assertEquals(List.of(MessageType.IMAGE, MessageType.VIDEO), filter.get("type", Document.class).get("$in"));
+        assertEquals(new Document("$ne", true), filter.get("recalled"));
+        assertEquals(new Document("$ne", "u1"), filter.get("hiddenFor"));
+        assertTrue(clauses.get(2).containsKey("$or"));
+        assertEquals(31, query.getLimit());
+        assertEquals(new Document("createdAt", -1).append("_id", -1), query.getSortObject());
+        assertFalse(query.getFieldsObject().containsKey("videoInfos"));
+    }
+
+    @Test
+    void regexSearchSkipsRowsHiddenForTheViewerAndRecalls() {
+        repository.searchGroup("g1", "u1", "hẹn", 0, 20);
+
+        ArgumentCaptor<Query> captured = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captured.capture(), eq(Message.class));
+        Document visibility = captured.getValue().getQueryObject().getList("$and", Document.class).get(1);
+        assertEquals(new Document("$ne", "u1"), visibility.get("hiddenFor"));
+        assertEquals(new Document("$ne", true), visibility.get("recalled"));
+    }
+
+    private Document modifyGuard() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(Message.class));
+        return query.getValue().getQueryObject();
+    }
+
+    /**
+     * The conversation part of the last history query, the first clause of its $and.
+     */
+    private Document pageScope() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).find(query.capture(), eq(Message.class));
+        return query.getValue().getQueryObject().getList("$and", Document.class).get(0);
+    }
+}
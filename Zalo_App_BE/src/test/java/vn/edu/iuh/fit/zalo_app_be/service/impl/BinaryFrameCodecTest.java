@@ -0,0 +1,209 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageStatus;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageQuoteResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFrameCodecTest {
+    private static final int BENCHMARK_ROUNDS = 20_000;
+
+    private final ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+    private final BinaryFrameCodec codec = new BinaryFrameCodec(jsonMapper, new SimpleMeterRegistry());
+
+    @Test
+    void sendsCborOnlyToNativeSessionsThatAskedForIt() throws Exception {
+        connect("native", true, "cbor");
+        connect("sockjs", false, "cbor");
+        connect("plain", true, null);
+        byte[] json = jsonMapper.writeValueAsBytes(samples().get(0));
+
+        Message<?> cbor = codec.preSend(outbound("native", json), null);
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, SimpMessageHeaderAccessor.wrap(cbor).getContentType());
+        assertEquals(BinaryFrameCodec.CBOR, SimpMessageHeaderAccessor.wrap(cbor).getFirstNativeHeader(BinaryFrameCodec.CODEC_HEADER));
+        assertEquals(jsonMapper.readTree(json), cborMapper.readTree((byte[]) cbor.getPayload()));
+
+        assertSame(json, codec.preSend(outbound("sockjs", json), null).getPayload());
+        assertSame(json, codec.preSend(outbound("plain", json), null).getPayload());
+
+        codec.preSend(frame(SimpMessageType.DISCONNECT, "native"), null);
+        assertSame(json, codec.preSend(outbound("native", json), null).getPayload());
+    }
+
+    @Test
+    void leavesInboundSendFramesAlone() throws Exception {
+        connect("native", true, "cbor");
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("native");
+        accessor.setDestination("/app/chat.send");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        byte[] json = "{\"content\":\"hi\"}".getBytes();
+
+        assertSame(json, codec.preSend(MessageBuilder.createMessage(json, accessor.getMessageHeaders()), null).getPayload());
+    }
+
+    @Test
+    void decodesSendFramesWrittenAsCbor() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSenderId("u1");
+        request.setReceiverId("u2");
+        request.setContent("xin chào");
+        request.setType(MessageType.TEXT);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(BinaryFrameCodec.APPLICATION_CBOR);
+        Message<?> frame = MessageBuilder.createMessage(cborMapper.writeValueAsBytes(request), accessor.getMessageHeaders());
+
+        MessageRequest decoded = (MessageRequest) codec.messageConverter().fromMessage(frame, MessageRequest.class);
+        assertEquals("xin chào", decoded.getContent());
+        assertEquals(MessageType.TEXT, decoded.getType());
+
+        // Frames without a content type keep going to the JSON converter
+        Message<?> untyped = MessageBuilder.withPayload("{}".getBytes()).build();
+        assertNull(codec.messageConverter().fromMessage(untyped, MessageRequest.class));
+    }
+
+    /**
+     * Bytes per chat frame and encode/decode throughput for JSON and CBOR, on message shapes the
+     * chat sends most: plain text, text with a quoted reply, and an image group. Only runs with
+     * {@code -Dbenchmark.codec=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.codec", matches = "true")
+    void measureCodecs() throws Exception {
+        List<MessageResponse> samples = samples();
+        report("json", jsonMapper, samples, MimeTypeUtils.APPLICATION_JSON);
+        report("cbor", cborMapper, samples, MimeTypeUtils.APPLICATION_OCTET_STREAM);
+    }
+
+    private void report(String name, ObjectMapper mapper, List<MessageResponse> samples, MimeType contentType) throws Exception {
+        StompEncoder encoder = new StompEncoder();
+        long payloadBytes = 0;
+        long frameBytes = 0;
+        List<byte[]> payloads = new ArrayList<>();
+        for (MessageResponse sample : samples) {
+            byte[] payload = mapper.writeValueAsBytes(sample);
+            payloads.add(payload);
+            payloadBytes += payload.length;
+            frameBytes += encoder.encode(stompFrame(contentType, payload.length), payload).length;
+        }
+
+        // Warm up, then time
+        encodeDecode(mapper, samples, payloads, BENCHMARK_ROUNDS / 4);
+        long start = System.nanoTime();
+        encodeDecode(mapper, samples, payloads, BENCHMARK_ROUNDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long messages = (long) BENCHMARK_ROUNDS * samples.size();
+
+        System.out.printf("%-4s payload=%.0fB frame=%.0fB per message, %.0f encode+decode/s (%d messages)%n", name,
+                (double) payloadBytes / samples.size(), (double) frameBytes / samples.size(), messages / seconds, messages);
+    }
+
+    private void encodeDecode(ObjectMapper mapper, List<MessageResponse> samples, List<byte[]> payloads, int rounds) throws Exception {
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < samples.size(); i++) {
+                sink += mapper.writeValueAsBytes(samples.get(i)).length;
+                JsonNode decoded = mapper.readTree(payloads.get(i));
+                sink += decoded.size();
+            }
+        }
+        assertTrue(sink > 0);
+    }
+
+    private Map<String, Object> stompFrame(MimeType contentType, int length) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/6803a1f2c4e5b61a2f9d0c11/queue/messages");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("b9d3b1b2-4f7e-2c11-8a55-9e7f0c3d2a10-42");
+        accessor.setContentType(contentType);
+        accessor.setContentLength(length);
+        return new HashMap<>(accessor.getMessageHeaders());
+    }
+
+    private List<MessageResponse> samples() {
+        LocalDateTime now = LocalDateTime.of(2025, 4, 17, 9, 30, 15, 123_000_000);
+        MessageResponse text = base("6803a1f2c4e5b61a2f9d0c21", MessageType.TEXT, now)
+                .content("Tối nay 7h họp nhóm nhé, nhớ mang laptop")
+                .build();
+        MessageResponse reply = base("6803a1f2c4e5b61a2f9d0c22", MessageType.TEXT, now.plusSeconds(40))
+                .content("Ok, mình sẽ tới sớm")
+                .replyToMessageId(text.getId())
+                .replyToMessage(new MessageQuoteResponse(text.getId(), text.getSenderId(), text.getType(), text.getContent(), null, null, false, text.getCreateAt()))
+                .build();
+        MessageResponse images = base("6803a1f2c4e5b61a2f9d0c23", MessageType.IMAGE_GROUP, now.plusSeconds(95))
+                .imageUrls(List.of(
+                        "https://res.cloudinary.com/di7z5erbn/image/upload/v1744853415/zalo/u1/a1b2c3d4.jpg",
+                        "https://res.cloudinary.com/di7z5erbn/image/upload/v1744853415/zalo/u1/e5f6a7b8.jpg",
+                        "https://res.cloudinary.com/di7z5erbn/image/upload/v1744853415/zalo/u1/c9d0e1f2.jpg"))
+                .build();
+        return List.of(text, reply, images);
+    }
+
+    private MessageResponse.MessageResponseBuilder base(String id, MessageType type, LocalDateTime createdAt) {
+        return MessageResponse.builder()
+                .id(id)
+                .clientMsgId("c-" + id)
+                .senderId("6803a1f2c4e5b61a2f9d0c11")
+                .receiverId("6803a1f2c4e5b61a2f9d0c12")
+                .type(type)
+                .status(MessageStatus.SENT)
+                .createAt(createdAt)
+                .updateAt(createdAt)
+                .seq(1042L);
+    }
+
+    private void connect(String sessionId, boolean nativeTransport, String acceptCodec) throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        if (nativeTransport) {
+            codec.nativeTransport().beforeHandshake(null, null, null, attributes);
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        if (acceptCodec != null) {
+            accessor.setNativeHeader(BinaryFrameCodec.ACCEPT_CODEC_HEADER, acceptCodec);
+        }
+        codec.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private Message<?> frame(SimpMessageType type, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private Message<?> outbound(String sessionId, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/user/u2/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json, new MessageHeaders(accessor.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,315 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import vn.edu.iuh.fit.zalo_app_be.service.ClusterBus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several broker nodes in one JVM, each with its own simple broker and fan-out, connected by
+ * a shared bus. Verifies routing; with {@code -Dbenchmark.cluster=true} it also prints the
+ * cross-node delivery latency.
+ */
+class ClusterFanoutTest {
+    private static final int LATENCY_SAMPLES = 1_000;
+
+    private final List<Runnable> cleanups = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        cleanups.forEach(Runnable::run);
+    }
+
+    @Test
+    void userMessageOnlyReachesTheNodeHoldingTheSession() throws Exception {
+        InMemoryClusterBus bus = new InMemoryClusterBus();
+        Node a = node("a", bus);
+        Node b = node("b", bus);
+        Node c = node("c", bus);
+        b.connect("s1", "u1", "/user/u1/queue/messages");
+
+        a.template.convertAndSendToUser("u1", "/queue/messages", Map.of("content", "hello"));
+
+        Message<?> received = b.next();
+        assertNotNull(received);
+        assertTrue(new String((byte[]) received.getPayload(), StandardCharsets.UTF_8).contains("hello"));
+        assertEquals("s1", SimpMessageHeaderAccessor.getSessionId(received.getHeaders()));
+        // Node c holds no session of u1, nothing was addressed to it
+        assertNull(c.poll(200));
+        assertEquals(0, c.meterRegistry.counter("chat.cluster.messages", "direction", "delivered").count());
+    }
+
+    @Test
+    void groupTopicReachesEveryNode() throws Exception {
+        InMemoryClusterBus bus = new InMemoryClusterBus();
+        Node a = node("a", bus);
+        Node b = node("b", bus);
+        Node c = node("c", bus);
+        a.connect("s0", "u0", "/topic/group/g1");
+        b.connect("s1", "u1", "/topic/group/g1");
+        c.connect("s2", "u2", "/topic/group/g1");
+
+        a.template.convertAndSend("/topic/group/g1", Map.of("content", "hi all"));
+
+        assertNotNull(a.next());
+        assertNotNull(b.next());
+        assertNotNull(c.next());
+        // Relayed copies are not relayed again
+        assertEquals(1, a.meterRegistry.counter("chat.cluster.messages", "direction", "relayed").count());
+        assertEquals(0, b.meterRegistry.counter("chat.cluster.messages", "direction", "relayed").count());
+    }
+
+    @Test
+    void closedSessionStopsRouting() throws Exception {
+        InMemoryClusterBus bus = new InMemoryClusterBus();
+        node("a", bus);
+        Node b = node("b", bus);
+        b.connect("s1", "u1", "/user/u1/queue/messages");
+        b.connect("s2", "u1", "/user/u1/queue/messages");
+
+        b.fanout.sessionClosed("s1");
+        assertEquals(Set.of("b"), bus.nodesOf("u1"));
+        b.fanout.sessionClosed("s2");
+        b.fanout.sessionClosed("s2");
+        assertTrue(bus.nodesOf("u1").isEmpty());
+    }
+
+    @Test
+    void aCloseRacingAReopenLeavesTheUserOnline() throws Exception {
+        CountDownLatch closing = new CountDownLatch(1);
+        // Counts the first open and the reopen
+        CountDownLatch reopened = new CountDownLatch(2);
+        InMemoryClusterBus bus = new InMemoryClusterBus() {
+            @Override
+            public void markOnline(String nodeId, String userId) {
+                super.markOnline(nodeId, userId);
+                reopened.countDown();
+            }
+
+            @Override
+            public void markOffline(String nodeId, String userId) {
+                closing.countDown();
+                // Hold the offline write back until the reopen got its chance to publish
+                try {
+                    reopened.await(500, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.markOffline(nodeId, userId);
+            }
+        };
+        Node b = node("b", bus);
+        b.fanout.sessionOpened("s1", "u1");
+
+        CompletableFuture<Void> close = CompletableFuture.runAsync(() -> b.fanout.sessionClosed("s1"));
+        assertTrue(closing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> reopen = CompletableFuture.runAsync(() -> b.fanout.sessionOpened("s2", "u1"));
+        CompletableFuture.allOf(close, reopen).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Set.of("b"), bus.nodesOf("u1"));
+    }
+
+    @Test
+    void aFailedOnlineWriteIsUndoneByTheClose() {
+        InMemoryClusterBus bus = new InMemoryClusterBus() {
+            @Override
+            public void markOnline(String nodeId, String userId) {
+                // Like the Mongo bus, local presence is taken before the write fails
+                super.markOnline(nodeId, userId);
+                throw new IllegalStateException("presence write timed out");
+            }
+        };
+        Node b = node("b", bus);
+
+        b.fanout.sessionOpened("s1", "u1");
+        b.fanout.sessionClosed("s1");
+        b.fanout.retryPresence();
+
+        assertTrue(bus.nodesOf("u1").isEmpty());
+    }
+
+    @Test
+    void aFailedPublishIsRetried() {
+        AtomicInteger failures = new AtomicInteger(1);
+        InMemoryClusterBus bus = new InMemoryClusterBus() {
+            @Override
+            public void markOnline(String nodeId, String userId) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("presence write timed out");
+                }
+                super.markOnline(nodeId, userId);
+            }
+        };
+        Node b = node("b", bus);
+
+        b.fanout.sessionOpened("s1", "u1");
+        assertTrue(bus.nodesOf("u1").isEmpty());
+        b.fanout.retryPresence();
+
+        assertEquals(Set.of("b"), bus.nodesOf("u1"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.cluster", matches = "true")
+    void measureCrossNodeLatency() throws Exception {
+        InMemoryClusterBus bus = new InMemoryClusterBus();
+        Node a = node("a", bus);
+        Node b = node("b", bus);
+        report("in-memory", latency(a, b));
+    }
+
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark.mongo-uri", matches = ".+")
+    class OverMongo {
+        private MongoClient client;
+
+        @AfterEach
+        void close() {
+            if (client != null) {
+                client.close();
+            }
+        }
+
+        @Test
+        void measureCrossNodeLatency() throws Exception {
+            client = MongoClients.create(System.getProperty("benchmark.mongo-uri"));
+            MongoTemplate mongoTemplate = new MongoTemplate(client, System.getProperty("benchmark.database", "zalo-app-benchmark"));
+            mongoTemplate.getDb().drop();
+            try {
+                Node a = node("a", mongoBus(mongoTemplate));
+                Node b = node("b", mongoBus(mongoTemplate));
+                report("mongo", latency(a, b));
+            } finally {
+                mongoTemplate.getDb().drop();
+            }
+        }
+
+        private MongoClusterBus mongoBus(MongoTemplate mongoTemplate) {
+            MongoClusterBus bus = new MongoClusterBus(mongoTemplate, new SimpleMeterRegistry(), 16, 90, 10_000);
+            bus.start();
+            cleanups.add(() -> {
+                try {
+                    bus.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            return bus;
+        }
+    }
+
+    private long[] latency(Node from, Node to) throws Exception {
+        to.connect("s1", "u1", "/user/u1/queue/messages");
+        // Presence has to reach the sending node before it routes to the receiver
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!from.bus.nodesOf("u1").contains(to.fanout.getNodeId()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long[] nanos = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            long start = System.nanoTime();
+            from.template.convertAndSendToUser("u1", "/queue/messages", Map.of("seq", i));
+            assertNotNull(to.next(), "message " + i + " was not delivered");
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private void report(String bus, long[] sortedNanos) {
+        System.out.printf("%-9s cross-node p50=%.3fms p95=%.3fms p99=%.3fms (%d messages)%n", bus,
+                percentile(sortedNanos, 0.50), percentile(sortedNanos, 0.95), percentile(sortedNanos, 0.99), sortedNanos.length);
+    }
+
+    private double percentile(long[] sortedNanos, double quantile) {
+        return sortedNanos[(int) Math.min(sortedNanos.length - 1, Math.round(quantile * sortedNanos.length))] / 1_000_000.0;
+    }
+
+    private Node node(String nodeId, ClusterBus bus) {
+        Node node = new Node(nodeId, bus);
+        cleanups.add(node.broker::stop);
+        return node;
+    }
+
+    /**
+     * What one backend instance contributes: broker channel with the fan-out interceptor, a
+     * simple broker and the outbound channel its WebSocket sessions would read from.
+     */
+    private static class Node {
+        final ClusterBus bus;
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final ClusterFanout fanout;
+        final SimpMessagingTemplate template;
+        final ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        final BlockingQueue<Message<?>> delivered = new LinkedBlockingQueue<>();
+        final SimpleBrokerMessageHandler broker;
+
+        Node(String nodeId, ClusterBus bus) {
+            this.bus = bus;
+            ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+            ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+            clientOutbound.subscribe(message -> {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    delivered.add(message);
+                }
+            });
+            fanout = new ClusterFanout(bus, brokerChannel, nodeId, meterRegistry);
+            fanout.start();
+            brokerChannel.addInterceptor(fanout);
+            broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/user", "/queue", "/topic"));
+            broker.start();
+            template = new SimpMessagingTemplate(brokerChannel);
+            template.setMessageConverter(new MappingJackson2MessageConverter());
+        }
+
+        void connect(String sessionId, String userId, String destination) {
+            SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            connect.setSessionId(sessionId);
+            connect.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{0, 0});
+            clientInbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId(sessionId);
+            subscribe.setSubscriptionId("sub-" + sessionId);
+            subscribe.setDestination(destination);
+            clientInbound.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+            fanout.sessionOpened(sessionId, userId);
+        }
+
+        Message<?> next() throws InterruptedException {
+            return poll(5_000);
+        }
+
+        Message<?> poll(long millis) throws InterruptedException {
+            return delivered.poll(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import vn.edu.iuh.fit.zalo_app_be.repository.ConversationSequenceRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConversationSequenceAllocatorTest {
+
+    @Test
+    void servesABlockFromMemoryBeforeReservingTheNext() {
+        ConversationSequenceRepository repository = mock(ConversationSequenceRepository.class);
+        when(repository.reserve("c1", 3)).thenReturn(3L, 6L);
+        ConversationSequenceAllocator allocator = new ConversationSequenceAllocator(repository, new SimpleMeterRegistry(), 3, 10);
+
+        for (long expected = 1; expected <= 4; expected++) {
+            assertEquals(expected, allocator.next("c1"));
+        }
+        verify(repository, times(2)).reserve("c1", 3);
+    }
+
+    @Test
+    void skipsNumbersReservedByAnotherInstance() {
+        ConversationSequenceRepository repository = mock(ConversationSequenceRepository.class);
+        // Another instance took 3..4 between our two reservations
+        when(repository.reserve("c1", 2)).thenReturn(2L, 6L);
+        ConversationSequenceAllocator allocator = new ConversationSequenceAllocator(repository, new SimpleMeterRegistry(), 2, 10);
+
+        assertEquals(1, allocator.next("c1"));
+        assertEquals(2, allocator.next("c1"));
+        assertEquals(5, allocator.next("c1"));
+    }
+
+    @Test
+    void singleNumberBlocksStayOrderedAcrossInstances() {
+        ConversationSequenceRepository repository = mock(ConversationSequenceRepository.class);
+        when(repository.reserve("c1", 1)).thenReturn(1L, 2L, 3L, 4L);
+        ConversationSequenceAllocator first = new ConversationSequenceAllocator(repository, new SimpleMeterRegistry(), 1, 10);
+        ConversationSequenceAllocator second = new ConversationSequenceAllocator(repository, new SimpleMeterRegistry(), 1, 10);
+
+        assertEquals(1, first.next("c1"));
+        assertEquals(2, second.next("c1"));
+        assertEquals(3, first.next("c1"));
+        assertEquals(4, second.next("c1"));
+    }
+}
@@ -0,0 +1,105 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.model.ConversationSummary;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.ConversationSummaryRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.UnreadCounterRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationSummaryServiceImplTest {
+    @Mock
+    private ConversationSummaryRepository conversationSummaryRepository;
+    @Mock
+    private UnreadCounterRepository unreadCounterRepository;
+    @InjectMocks
+    private ConversationSummaryServiceImpl conversationSummaryService;
+
+    @Test
+    void writesOneRowPerParticipantWithTheirPeer() {
+        Message message = message("m1", "u1", "u2", null, MessageType.TEXT, "xin chào");
+
+        conversationSummaryService.onMessageSaved(message, List.of("u2"));
+
+        Map<String, ConversationSummary> rows = upserted();
+        assertEquals(2, rows.size());
+        assertEquals("u2", rows.get("u1").getOtherUserId());
+        assertEquals("u1", rows.get("u2").getOtherUserId());
+        rows.values().forEach(row -> {
+            assertEquals(ConversationKeys.direct("u1", "u2"), row.getConversationId());
+            assertEquals("m1", row.getLastMessageId());
+            assertEquals("xin chào", row.getLastMessagePreview());
+            assertEquals(message.getCreatedAt(), row.getLastMessageAt());
+        });
+    }
+
+    @Test
+    void groupRowsCarryTheGroupAndAMediaPreview() {
+        Message message = message("m2", "u1", null, "g1", MessageType.FILE, null);
+        message.setFileName("report.pdf");
+
+        conversationSummaryService.onMessageSaved(message, List.of("u2", "u3"));
+
+        Map<String, ConversationSummary> rows = upserted();
+        assertEquals(3, rows.size());
+        rows.values().forEach(row -> {
+            assertEquals("g1", row.getGroupId());
+            assertNull(row.getOtherUserId());
+            assertEquals("[Tệp] report.pdf", row.getLastMessagePreview());
+        });
+    }
+
+    @Test
+    void aFailingUpsertDoesNotFailTheSend() {
+        doThrow(new IllegalStateException("mongo down")).when(conversationSummaryRepository).upsertLatest(any());
+
+        assertDoesNotThrow(() -> conversationSummaryService.onMessageSaved(
+                message("m3", "u1", "u2", null, MessageType.TEXT, "hi"), List.of("u2")));
+    }
+
+    @Test
+    void deletingForOneUserOnlyRewritesTheirPreview() {
+        Message message = message("m4", "u1", "u2", null, MessageType.TEXT, "hi");
+
+        conversationSummaryService.onMessageDeleted(message, "u2");
+
+        verify(conversationSummaryRepository).updatePreview(eq(ConversationKeys.direct("u1", "u2")), eq("m4"), eq("u2"), anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ConversationSummary> upserted() {
+        ArgumentCaptor<Collection<ConversationSummary>> summaries = ArgumentCaptor.forClass(Collection.class);
+        verify(conversationSummaryRepository).upsertLatest(summaries.capture());
+        return summaries.getValue().stream().collect(Collectors.toMap(ConversationSummary::getUserId, row -> row));
+    }
+
+    private static Message message(String id, String senderId, String receiverId, String groupId, MessageType type, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId(senderId);
+        message.setReceiverId(receiverId);
+        message.setGroupId(groupId);
+        message.setConversationId(ConversationKeys.of(senderId, receiverId, groupId));
+        message.setType(type);
+        message.setContent(content);
+        message.setCreatedAt(LocalDateTime.of(2025, 4, 17, 9, 30));
+        return message;
+    }
+}
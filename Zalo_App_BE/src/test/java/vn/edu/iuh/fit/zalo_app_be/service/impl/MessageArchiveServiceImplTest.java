@@ -0,0 +1,105 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageArchiveRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageArchiveServiceImplTest {
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2024, 1, 5, 9, 30);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private MessageArchiveRepository messageArchiveRepository;
+    @Mock
+    private BulkOperations bulk;
+    private MessageArchiveServiceImpl archiveService;
+
+    @BeforeEach
+    void setUp() {
+        archiveService = new MessageArchiveServiceImpl(mongoTemplate, messageArchiveRepository);
+        ReflectionTestUtils.setField(archiveService, "enabled", true);
+        ReflectionTestUtils.setField(archiveService, "maxAgeDays", 365L);
+        ReflectionTestUtils.setField(archiveService, "segmentSize", 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveService.stop();
+    }
+
+    @Test
+    void aMessageChangedWhileMovingIsDroppedFromTheSegment() {
+        Message first = message("m1");
+        Message edited = message("m2");
+        Message third = message("m3");
+        when(messageArchiveRepository.writeSegment(eq("u1_u2"), anyList())).thenReturn("u1_u2:m1");
+        stubRemoved(2);
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of(edited));
+
+        assertEquals(2, archiveService.moveToArchive("u1_u2", List.of(first, edited, third)));
+
+        verify(messageArchiveRepository).replaceSegment("u1_u2:m1", "u1_u2", List.of(first, third));
+    }
+
+    @Test
+    void aFullyMovedChunkKeepsItsSegment() {
+        when(messageArchiveRepository.writeSegment(eq("u1_u2"), anyList())).thenReturn("u1_u2:m1");
+        stubRemoved(2);
+
+        assertEquals(2, archiveService.moveToArchive("u1_u2", List.of(message("m1"), message("m2"))));
+
+        verify(messageArchiveRepository, never()).replaceSegment(any(), any(), any());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Message.class));
+    }
+
+    @Test
+    void theScheduledPassRunsOffTheSchedulerThread() throws Exception {
+        CompletableFuture<Thread> archiver = new CompletableFuture<>();
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(Message.class), eq(Document.class))).thenAnswer(invocation -> {
+            archiver.complete(Thread.currentThread());
+            return Stream.empty();
+        });
+
+        archiveService.scheduledArchive();
+
+        assertNotSame(Thread.currentThread(), archiver.get(5, TimeUnit.SECONDS));
+    }
+
+    private void stubRemoved(int deleted) {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class)).thenReturn(bulk);
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, deleted, 0, List.of(), List.of()));
+    }
+
+    private static Message message(String id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setConversationId("u1_u2");
+        message.setCreatedAt(SENT_AT);
+        message.setUpdatedAt(SENT_AT);
+        return message;
+    }
+}
@@ -0,0 +1,136 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import vn.edu.iuh.fit.zalo_app_be.model.BackfillMarker;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.BackfillMarkerRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageBucketRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.ConversationSummaryService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageBackfillServiceImplTest {
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private MongoConverter converter;
+    @Mock
+    private ConversationSummaryService conversationSummaryService;
+    @Mock
+    private BackfillMarkerRepository backfillMarkerRepository;
+    @Mock
+    private MessageBucketRepository messageBucketRepository;
+    @InjectMocks
+    private MessageBackfillServiceImpl backfillService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(backfillService, "batchSize", 2);
+        ReflectionTestUtils.setField(backfillService, "pauseMs", 0L);
+    }
+
+    @Test
+    void summaryBackfillResumesAfterTheSavedConversationAndRecordsProgress() {
+        when(backfillMarkerRepository.findById(BackfillMarker.CONVERSATION_SUMMARIES))
+                .thenReturn(Optional.of(new BackfillMarker(BackfillMarker.CONVERSATION_SUMMARIES, null, "u1_u2")));
+        List<String> saved = new ArrayList<>();
+        when(backfillMarkerRepository.save(any())).thenAnswer(invocation -> {
+            BackfillMarker marker = invocation.getArgument(0);
+            saved.add(marker.getCompletedAt() != null ? "completed" : marker.getResumeAfter());
+            return marker;
+        });
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregateStream(aggregation.capture(), eq(Message.class), eq(Document.class)))
+                .thenReturn(Stream.of(last("u1_u3"), last("u1_u4"), last("u1_u5")));
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(converter.read(eq(Message.class), any(Document.class))).thenAnswer(invocation -> {
+            Message message = new Message();
+            message.setConversationId(invocation.getArgument(1, Document.class).getString("conversationId"));
+            message.setSenderId("u1");
+            return message;
+        });
+
+        backfillService.backfillConversationSummaries();
+
+        Document match = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$match", Document.class);
+        assertEquals(new Document("$gt", "u1_u2"), match.get("conversationId"));
+        verify(conversationSummaryService, times(3)).onMessageSaved(any(), any());
+        assertEquals(List.of("u1_u4", "completed"), saved);
+    }
+
+    @Test
+    void summaryBackfillSkipsOnceCompleted() {
+        when(backfillMarkerRepository.findById(BackfillMarker.CONVERSATION_SUMMARIES)).thenReturn(Optional.of(
+                new BackfillMarker(BackfillMarker.CONVERSATION_SUMMARIES, LocalDateTime.now(), null)));
+
+        backfillService.backfillConversationSummaries();
+
+        verifyNoInteractions(mongoTemplate, conversationSummaryService);
+    }
+
+    @Test
+    void aStaleConversationIsReadFromMessagesUntilRepaired() {
+        ReflectionTestUtils.setField(backfillService, "bucketsEnabled", true);
+        ReflectionTestUtils.setField(backfillService, "bucketCapacity", 200);
+
+        backfillService.markBucketsStale("u1_u2");
+        assertTrue(backfillService.isBucketsStale("u1_u2"));
+        verify(messageBucketRepository).invalidate("u1_u2");
+
+        backfillService.repairStaleBuckets();
+        verify(messageBucketRepository).migrate(eq("u1_u2"), any(LocalDateTime.class), eq(200));
+        assertFalse(backfillService.isBucketsStale("u1_u2"));
+    }
+
+    @Test
+    void aFailedRepairIsRetried() {
+        ReflectionTestUtils.setField(backfillService, "bucketsEnabled", true);
+        when(messageBucketRepository.migrate(any(), any(), anyInt())).thenThrow(new IllegalStateException("mongo down"));
+
+        backfillService.markBucketsStale("u1_u2");
+        backfillService.repairStaleBuckets();
+
+        assertTrue(backfillService.isBucketsStale("u1_u2"));
+    }
+
+    @Test
+    void bucketsAreRepackedWhenTheLayoutWasOffSinceTheLastMigration() {
+        when(backfillMarkerRepository.findById(BackfillMarker.MESSAGE_BUCKETS)).thenReturn(Optional.empty());
+        when(backfillMarkerRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(Message.class), eq(Document.class)))
+                .thenReturn(Stream.of(new Document("_id", "u1_u2")));
+
+        backfillService.migrateMessageBuckets();
+
+        var order = inOrder(messageBucketRepository);
+        order.verify(messageBucketRepository).invalidateAll();
+        order.verify(messageBucketRepository).migrate(eq("u1_u2"), any(LocalDateTime.class), anyInt());
+        ArgumentCaptor<BackfillMarker> marker = ArgumentCaptor.forClass(BackfillMarker.class);
+        verify(backfillMarkerRepository, times(2)).save(marker.capture());
+        assertNotNull(marker.getValue().getCompletedAt());
+    }
+
+    private static Document last(String conversationId) {
+        return new Document("_id", conversationId).append("last", new Document("conversationId", conversationId));
+    }
+}
@@ -0,0 +1,129 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import vn.edu.iuh.fit.zalo_app_be.exception.MessageSendException;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageBatchWriterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private MessageBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class)).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+        // Batches of three, the linger is long enough that the three submits below always share one
+        writer = new MessageBatchWriter(mongoTemplate, meterRegistry, true, 3, 10_000, 100, 2, 10);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    void failsOnlyTheDocumentsTheBulkInsertRejected() throws Exception {
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key clientMsgId", new BsonDocument(), 0);
+        BulkWriteError invalid = new BulkWriteError(2, "document is invalid", new BsonDocument(), 2);
+        when(bulk.execute()).thenThrow(new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(duplicate, invalid), null, new ServerAddress(), Set.of())));
+
+        CompletableFuture<Message> resent = writer.submit(message("c1"));
+        CompletableFuture<Message> fresh = writer.submit(message("c2"));
+        CompletableFuture<Message> broken = writer.submit(message("c3"));
+
+        assertEquals("c2", fresh.get(5, TimeUnit.SECONDS).getClientMsgId());
+        assertNotNull(fresh.get().getId());
+        assertInstanceOf(DuplicateKeyException.class, cause(resent));
+        assertInstanceOf(MessageSendException.class, cause(broken));
+        verify(bulk).insert(argThat((List<?> documents) -> documents.size() == 3));
+        assertEquals(1, count("written"));
+        assertEquals(2, count("failed"));
+    }
+
+    @Test
+    void failsTheWholeBatchWhenTheInsertNeverRan() {
+        when(bulk.execute()).thenThrow(new IllegalStateException("connection refused"));
+
+        List<CompletableFuture<Message>> futures = List.of(
+                writer.submit(message("c1")), writer.submit(message("c2")), writer.submit(message("c3")));
+
+        futures.forEach(future -> assertInstanceOf(IllegalStateException.class, cause(future)));
+        assertEquals(3, count("failed"));
+    }
+
+    @Test
+    void aSlowConversationDoesNotHoldUpCompletionsOfAnother() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // "a" and "b" hash to different stripes out of two
+        CompletableFuture<Message> slow = writer.submit(message("c1", "a"));
+        slow.thenRun(() -> awaitQuietly(release));
+        CompletableFuture<Message> first = writer.submit(message("c2", "b"));
+        CompletableFuture<Message> second = writer.submit(message("c3", "b"));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        first.thenRun(() -> order.add("c2"));
+        second.thenRun(() -> order.add("c3"));
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("c2", "c3"), order);
+        release.countDown();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("chat.message.batch_writer.messages").tag("result", result).counter().count();
+    }
+
+    private static Throwable cause(CompletableFuture<Message> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return e.getCause();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Message message(String clientMsgId) {
+        return message(clientMsgId, "u1_u2");
+    }
+
+    private static Message message(String clientMsgId, String conversationId) {
+        Message message = new Message();
+        message.setSenderId("u1");
+        message.setClientMsgId(clientMsgId);
+        message.setConversationId(conversationId);
+        return message;
+    }
+}
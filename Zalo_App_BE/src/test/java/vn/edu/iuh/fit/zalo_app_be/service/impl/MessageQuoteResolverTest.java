@@ -0,0 +1,84 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.MessageReference;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class MessageQuoteResolverTest {
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2025, 4, 17, 9, 30);
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final MessageQuoteResolver resolver = new MessageQuoteResolver(messageRepository, 100, new SimpleMeterRegistry());
+
+    @Test
+    void aReplyOnlyQuotesMessagesOfItsOwnConversation() {
+        Message ownConversation = quoted("q1", "u1", "u2", "xin chào");
+        Message otherConversation = quoted("q2", "u3", "u4", "bí mật");
+        when(messageRepository.findQuotedByIds(anyCollection())).thenReturn(List.of(ownConversation, otherConversation));
+        MessageResponse reply = reply("u2", "u1", "q1");
+        MessageResponse probe = reply("u2", "u1", "q2");
+
+        resolver.hydrate(List.of(reply, probe));
+
+        assertEquals("xin chào", reply.getReplyToMessage().getContent());
+        assertNull(probe.getReplyToMessage());
+    }
+
+    @Test
+    void aForwardCopyQuotesItsSourceFromAnotherConversation() {
+        when(messageRepository.findQuotedByIds(anyCollection())).thenReturn(List.of(quoted("q1", "u3", "u4", "chuyển tiếp")));
+        MessageResponse forward = MessageResponse.builder().id("m1").senderId("u3").receiverId("u1")
+                .forwardedFrom(new MessageReference("q1", "u3", SENT_AT)).build();
+
+        resolver.hydrate(List.of(forward));
+
+        assertEquals("chuyển tiếp", forward.getForwardedMessage().getContent());
+    }
+
+    @Test
+    void anEditEvictedDuringTheLoadIsNotCachedStale() {
+        Message before = quoted("q1", "u1", "u2", "trước");
+        Message after = quoted("q1", "u1", "u2", "sau");
+        after.setUpdatedAt(SENT_AT.plusMinutes(1));
+        // The edit lands and evicts while the first load still holds the old version
+        when(messageRepository.findQuotedByIds(anyCollection())).thenAnswer(invocation -> {
+            resolver.evict(after);
+            return List.of(before);
+        }).thenReturn(List.of(after));
+
+        resolver.hydrate(List.of(reply("u2", "u1", "q1")));
+        MessageResponse later = reply("u2", "u1", "q1");
+        resolver.hydrate(List.of(later));
+
+        assertEquals("sau", later.getReplyToMessage().getContent());
+        verify(messageRepository, times(2)).findQuotedByIds(anyCollection());
+    }
+
+    private static MessageResponse reply(String senderId, String receiverId, String replyToMessageId) {
+        return MessageResponse.builder().id("r-" + replyToMessageId).senderId(senderId).receiverId(receiverId)
+                .replyToMessageId(replyToMessageId).build();
+    }
+
+    private static Message quoted(String id, String senderId, String receiverId, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId(senderId);
+        message.setReceiverId(receiverId);
+        message.setConversationId(ConversationKeys.direct(senderId, receiverId));
+        message.setContent(content);
+        message.setCreatedAt(SENT_AT);
+        message.setUpdatedAt(SENT_AT);
+        return message;
+    }
+}
@@ -0,0 +1,110 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessageSearchIndexTest {
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2025, 4, 17, 9, 30);
+    private static final String CONVERSATION = ConversationKeys.direct("u1", "u2");
+
+    @TempDir
+    Path indexDir;
+
+    @Test
+    void foldsVietnameseDiacriticsAndCase() {
+        MessageSearchIndex index = new MessageSearchIndex(null, false, "target/message-index-test", 100, "local");
+
+        assertEquals(List.of("di", "hoc", "duong", "xa"), index.analyze("Đi HỌC đường xá"));
+        assertEquals(List.of("bao", "cao", "docx"), index.analyze("bao_cao.docx"));
+        assertTrue(index.analyze("  ").isEmpty());
+    }
+
+    @Test
+    void staysOffWhenOtherNodesWriteToo() {
+        MessageSearchIndex index = new MessageSearchIndex(null, true, indexDir.toString(), 100, "mongo");
+        index.open();
+
+        assertFalse(index.isReady());
+        index.close();
+    }
+
+    @Test
+    void catchUpReplaysChangesToOlderMessages() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        Message original = message("hẹn gặp lúc 7h", false, SENT_AT);
+        Message recalled = message("Tin nhắn đã được thu hồi", true, SENT_AT.plusDays(1));
+        when(mongoTemplate.find(any(Query.class), eq(Message.class)))
+                .thenReturn(List.of(original), List.of(), List.of(recalled), List.of());
+        MessageSearchIndex index = open(mongoTemplate);
+        try {
+            index.rebuild();
+            index.refresh();
+            assertEquals(List.of("m1"), index.search(List.of(CONVERSATION), "u1", "hen gap", 0, 10).ids());
+
+            index.catchUp();
+            index.refresh();
+
+            assertTrue(index.search(List.of(CONVERSATION), "u1", "hen gap", 0, 10).ids().isEmpty());
+            ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+            verify(mongoTemplate, times(4)).find(queries.capture(), eq(Message.class));
+            // Recalled long after it was sent, only the change time brings it back into catch-up
+            assertTrue(queries.getAllValues().get(2).getQueryObject().containsKey("updatedAt"));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    void anOlderCopyNeverReplacesANewerOne() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenReturn(List.of());
+        MessageSearchIndex index = open(mongoTemplate);
+        try {
+            index.rebuild();
+            // A rebuild read the row before it was recalled and writes it after the live recall
+            index.index(message("Tin nhắn đã được thu hồi", true, SENT_AT.plusMinutes(5)));
+            index.index(message("hẹn gặp lúc 7h", false, SENT_AT));
+            index.refresh();
+            assertTrue(index.search(List.of(CONVERSATION), "u1", "hen gap", 0, 10).ids().isEmpty());
+
+            index.index(message("đổi lịch, hẹn gặp lúc 8h", false, SENT_AT.plusMinutes(10)));
+            index.refresh();
+            assertEquals(List.of("m1"), index.search(List.of(CONVERSATION), "u1", "hen gap", 0, 10).ids());
+        } finally {
+            index.close();
+        }
+    }
+
+    private MessageSearchIndex open(MongoTemplate mongoTemplate) {
+        MessageSearchIndex index = new MessageSearchIndex(mongoTemplate, true, indexDir.toString(), 100, "local");
+        index.open();
+        return index;
+    }
+
+    private static Message message(String content, boolean recalled, LocalDateTime updatedAt) {
+        Message message = new Message();
+        message.setId("m1");
+        message.setSenderId("u1");
+        message.setReceiverId("u2");
+        message.setConversationId(CONVERSATION);
+        message.setContent(content);
+        message.setRecalled(recalled);
+        message.setCreatedAt(SENT_AT);
+        message.setUpdatedAt(updatedAt);
+        return message;
+    }
+}
@@ -0,0 +1,255 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import vn.edu.iuh.fit.zalo_app_be.common.ConversationKeys;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageType;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.MessageRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.ReadUpToRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MediaPageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.ReadReceiptResponse;
+import vn.edu.iuh.fit.zalo_app_be.exception.InvalidDataException;
+import vn.edu.iuh.fit.zalo_app_be.exception.ResourceNotFoundException;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.model.User;
+import vn.edu.iuh.fit.zalo_app_be.repository.GroupRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.ReadWatermarkRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.UserRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.UnreadCounterService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageServiceImplTest {
+    private static final LocalDateTime READ_UP_TO = LocalDateTime.of(2025, 4, 17, 9, 30);
+
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private GroupRepository groupRepository;
+    @Mock
+    private MessageTailCache messageTailCache;
+    @Mock
+    private ReadWatermarkRepository readWatermarkRepository;
+    @Mock
+    private UnreadCounterService unreadCounterService;
+    @Mock
+    private MessageBatchWriter messageBatchWriter;
+    @Mock
+    private ConversationSequenceAllocator conversationSequenceAllocator;
+    @InjectMocks
+    private MessageServiceImpl messageService;
+
+    @Test
+    void markConversationReadRejectsAnUnknownOtherUser() {
+        when(userRepository.existsById("u1")).thenReturn(true);
+        when(userRepository.existsById("ghost")).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.markConversationRead(readUpTo("u1", "ghost")));
+        verifyNoInteractions(messageRepository, readWatermarkRepository, unreadCounterService);
+    }
+
+    @Test
+    void markConversationReadAdvancesTheDirectConversation() {
+        when(userRepository.existsById(anyString())).thenReturn(true);
+        when(messageRepository.markDirectReadUpTo("u1", "u2", READ_UP_TO)).thenReturn(3L);
+        when(messageRepository.countDirectIncomingAfter("u1", "u2", READ_UP_TO)).thenReturn(1L);
+
+        ReadReceiptResponse receipt = messageService.markConversationRead(readUpTo("u1", "u2"));
+
+        String conversationId = ConversationKeys.direct("u1", "u2");
+        assertEquals(conversationId, receipt.getConversationId());
+        assertEquals(3, receipt.getUpdatedCount());
+        verify(readWatermarkRepository).advance("u1", conversationId, READ_UP_TO);
+        verify(unreadCounterService).onConversationRead("u1", conversationId, 1L);
+    }
+
+    @Test
+    void recallingTwiceReturnsTheRecalledMessageUnchanged() {
+        Message recalled = message("m1", "u1", "u2");
+        recalled.setRecalled(true);
+        when(messageRepository.recallBySender(eq("m1"), eq("u1"), anyString())).thenReturn(Optional.empty());
+        when(messageRepository.findById("m1")).thenReturn(Optional.of(recalled));
+
+        assertTrue(messageService.recallMessage("m1", "u1").isRecalled());
+        assertThrows(ResourceNotFoundException.class, () -> messageService.recallMessage("m1", "u2"));
+        verifyNoInteractions(messageTailCache);
+    }
+
+    @Test
+    void editingAMessageTheSenderDeletedReportsItAsDeleted() {
+        Message hidden = message("m1", "u1", "u2");
+        hidden.setDeleteBy(Map.of("u1", READ_UP_TO));
+        when(messageRepository.editBySender("m1", "u1", "sửa lại")).thenReturn(Optional.empty());
+        when(messageRepository.findById("m1")).thenReturn(Optional.of(hidden));
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class,
+                () -> messageService.editMessage("m1", "u1", "sửa lại"));
+        assertEquals("Message is deleted", e.getMessage());
+    }
+
+    @Test
+    void aReplyToAMessageOfAnotherConversationIsRejected() {
+        when(userRepository.findById(anyString())).thenAnswer(invocation -> Optional.of(user(invocation.getArgument(0))));
+        when(messageRepository.findById("m9")).thenReturn(Optional.of(message("m9", "u3", "u4")));
+        MessageRequest request = new MessageRequest();
+        request.setSenderId("u1");
+        request.setReceiverId("u2");
+        request.setContent("trả lời");
+        request.setReplyToMessageId("m9");
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.saveMessageAsync(request));
+        verifyNoInteractions(messageBatchWriter);
+    }
+
+    @Test
+    void mediaRejectsTypesThatAreNotMedia() {
+        assertThrows(InvalidDataException.class,
+                () -> messageService.getMedia("u1", "u2", null, List.of(MessageType.IMAGE, MessageType.TEXT), null, 10));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void aFullMediaPageHandsOutTheCursorOfItsLastItem() {
+        Message newest = media("m3", READ_UP_TO.plusMinutes(2));
+        Message middle = media("m2", READ_UP_TO.plusMinutes(1));
+        Message extra = media("m1", READ_UP_TO);
+        when(messageRepository.findDirectMedia(eq("u1"), eq("u2"), anyCollection(), isNull(), eq(2)))
+                .thenReturn(List.of(newest, middle, extra));
+
+        MediaPageResponse page = messageService.getMedia("u1", "u2", null, null, null, 2);
+
+        assertTrue(page.isHasMore());
+        assertEquals(List.of("m3", "m2"), page.getItems().stream().map(item -> item.getMessageId()).toList());
+        assertEquals(new MessageCursor(middle.getCreatedAt(), "m2"), MessageCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void aSentMessageCarriesMillisecondTimestamps() {
+        when(userRepository.findById(anyString())).thenAnswer(invocation -> Optional.of(user(invocation.getArgument(0))));
+        when(messageBatchWriter.submit(any())).thenReturn(new CompletableFuture<>());
+        MessageRequest request = new MessageRequest();
+        request.setSenderId("u1");
+        request.setReceiverId("u2");
+        request.setContent("xin chào");
+
+        messageService.saveMessageAsync(request);
+
+        ArgumentCaptor<Message> submitted = ArgumentCaptor.forClass(Message.class);
+        verify(messageBatchWriter).submit(submitted.capture());
+        assertEquals(0, submitted.getValue().getCreatedAt().getNano() % 1_000_000);
+        assertEquals(submitted.getValue().getCreatedAt(), submitted.getValue().getUpdatedAt());
+    }
+
+    @Test
+    void aForwardWithAnUnknownGroupTakesNoSequenceNumbers() {
+        when(messageRepository.findById("m1")).thenReturn(Optional.of(message("m1", "u1", "u2")));
+        when(userRepository.findAllById(anyCollection())).thenReturn(List.of(user("u1"), user("u3")));
+        when(groupRepository.findAllById(anyCollection())).thenReturn(List.of());
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> messageService.forwardMessage("m1", "u1", List.of("u3"), List.of("ghost-group")));
+        verifyNoInteractions(conversationSequenceAllocator);
+        verify(messageRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void onlyHistoryRowsLeaveUnsetFieldsOutOfTheJson() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        Message message = message("m1", "u1", "u2");
+
+        JsonNode full = objectMapper.valueToTree(messageService.convertToMessageResponse(message));
+        JsonNode row = objectMapper.valueToTree(messageService.convertToHistoryResponse(message));
+
+        assertTrue(full.has("publicId"));
+        assertTrue(full.get("publicId").isNull());
+        assertFalse(row.has("publicId"));
+        assertFalse(row.has("videoInfos"));
+        assertEquals("m1", row.get("id").asText());
+    }
+
+    @Test
+    void aForwarderWhoCannotSeeTheSourceIsRejected() {
+        Message hidden = message("m1", "u1", "u2");
+        hidden.setHiddenFor(List.of("u1"));
+        when(messageRepository.findById("m1")).thenReturn(Optional.of(hidden));
+        when(messageRepository.findById("m2")).thenReturn(Optional.of(message("m2", "u3", "u4")));
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.forwardMessage("m1", "u1", List.of("u5"), List.of()));
+        assertThrows(ResourceNotFoundException.class, () -> messageService.forwardMessage("m2", "u1", List.of("u5"), List.of()));
+        verifyNoInteractions(userRepository, conversationSequenceAllocator);
+    }
+
+    @Test
+    void aForwardWithOneBlockedReceiverWritesNothing() {
+        User blocking = user("u4");
+        blocking.getBlocks().add("u1");
+        when(messageRepository.findById("m1")).thenReturn(Optional.of(message("m1", "u1", "u2")));
+        when(userRepository.findAllById(anyCollection())).thenReturn(List.of(user("u1"), user("u3"), blocking));
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class,
+                () -> messageService.forwardMessage("m1", "u1", List.of("u3", "u4"), List.of()));
+        assertEquals("User blocked you", e.getMessage());
+        verifyNoInteractions(conversationSequenceAllocator);
+        verify(messageRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void deleteForAnUnknownUserNeverReachesTheMessage() {
+        when(userRepository.existsById("ghost")).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.deleteMessage("m1", "ghost"));
+        verifyNoInteractions(messageRepository);
+    }
+
+    private static Message message(String id, String senderId, String receiverId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId(senderId);
+        message.setReceiverId(receiverId);
+        message.setConversationId(ConversationKeys.direct(senderId, receiverId));
+        message.setCreatedAt(READ_UP_TO);
+        message.setUpdatedAt(READ_UP_TO);
+        return message;
+    }
+
+    private static Message media(String id, LocalDateTime createdAt) {
+        Message message = message(id, "u1", "u2");
+        message.setType(MessageType.IMAGE);
+        message.setContent("https://res.cloudinary.com/demo/" + id + ".jpg");
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static ReadUpToRequest readUpTo(String readerId, String otherUserId) {
+        ReadUpToRequest request = new ReadUpToRequest();
+        request.setReaderId(readerId);
+        request.setOtherUserId(otherUserId);
+        request.setReadUpTo(READ_UP_TO);
+        return request;
+    }
+}
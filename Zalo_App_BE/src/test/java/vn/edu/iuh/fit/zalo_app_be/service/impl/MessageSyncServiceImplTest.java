@@ -0,0 +1,144 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+import vn.edu.iuh.fit.zalo_app_be.controller.request.SyncRequest;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageHistoryResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.SyncBatchResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.Message;
+import vn.edu.iuh.fit.zalo_app_be.repository.GroupRepository;
+import vn.edu.iuh.fit.zalo_app_be.repository.MessageRepository;
+import vn.edu.iuh.fit.zalo_app_be.service.MessageService;
+import vn.edu.iuh.fit.zalo_app_be.service.WebSocketService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageSyncServiceImplTest {
+    private static final LocalDateTime CURSOR_AT = LocalDateTime.of(2025, 4, 17, 9, 30);
+    private static final MessageCursor CURSOR = new MessageCursor(CURSOR_AT, "6803a1f2c4e5b61a2f9d0c20");
+
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private GroupRepository groupRepository;
+    @Mock
+    private MessageService messageService;
+    @Mock
+    private MessageQuoteResolver messageQuoteResolver;
+    @Mock
+    private WebSocketService webSocketService;
+    @InjectMocks
+    private MessageSyncServiceImpl syncService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(syncService, "defaultBatchSize", 100);
+        ReflectionTestUtils.setField(syncService, "maxBatches", 20);
+        ReflectionTestUtils.setField(syncService, "maxConversations", 100);
+        ReflectionTestUtils.setField(syncService, "overlapMs", 2000L);
+        lenient().when(messageService.convertToHistoryResponse(any())).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            return MessageHistoryResponse.builder().id(message.getId()).content(message.getContent()).build();
+        });
+    }
+
+    @Test
+    void streamsTheSessionUsersConversationsWhateverThePayloadClaims() {
+        SyncRequest request = request("u2");
+        request.setUserId("u9");
+        when(messageRepository.findDirectChanges(eq("u1"), eq("u2"), any(), eq(100))).thenReturn(List.of());
+
+        syncService.stream("u1", request);
+
+        verify(messageRepository, never()).findDirectChanges(eq("u9"), any(), any(), anyInt());
+        verify(webSocketService).sendSyncBatch(eq("u1"), any(SyncBatchResponse.class));
+    }
+
+    @Test
+    void reSendsLateWritesBehindTheCursorOnceAndKeepsTheNewestCopy() {
+        Message late = change("6803a1f2c4e5b61a2f9d0c11", CURSOR_AT.minusSeconds(1), "chậm");
+        Message seen = change("6803a1f2c4e5b61a2f9d0c30", CURSOR_AT.plusSeconds(1), "cũ");
+        Message edited = change(seen.getId(), CURSOR_AT.plusSeconds(2), "mới");
+        when(messageRepository.findDirectChanges(eq("u1"), eq("u2"), any(), eq(100))).thenAnswer(invocation -> {
+            MessageCursor after = invocation.getArgument(2);
+            // The overlap read sees the row before its edit, the cursor read after it
+            return after.equals(CURSOR) ? List.of(edited) : List.of(late, seen);
+        });
+
+        SyncBatchResponse batch = syncService.nextBatches("u1", request("u2")).get(0);
+
+        assertEquals(List.of("chậm", "mới"), batch.getMessages().stream().map(MessageResponse::getContent).toList());
+        assertEquals(new MessageCursor(edited.getUpdatedAt(), edited.getId()), MessageCursor.decode(batch.getCursor()));
+    }
+
+    @Test
+    void onlyTheFirstBatchOfAStreamOverlaps() {
+        ReflectionTestUtils.setField(syncService, "defaultBatchSize", 1);
+        Message first = change("6803a1f2c4e5b61a2f9d0c31", CURSOR_AT.plusSeconds(1), "một");
+        Message second = change("6803a1f2c4e5b61a2f9d0c32", CURSOR_AT.plusSeconds(2), "hai");
+        when(messageRepository.findDirectChanges(eq("u1"), eq("u2"), any(), eq(1))).thenAnswer(invocation -> {
+            MessageCursor after = invocation.getArgument(2);
+            if (after.createdAt().isBefore(CURSOR_AT)) {
+                return List.of();
+            }
+            return after.createdAt().isAfter(CURSOR_AT) ? List.of(second) : List.of(first, second);
+        });
+
+        syncService.stream("u1", request("u2"));
+
+        verify(messageRepository, times(3)).findDirectChanges(eq("u1"), eq("u2"), any(), eq(1));
+        verify(webSocketService, times(2)).sendSyncBatch(eq("u1"), any(SyncBatchResponse.class));
+    }
+
+    @Test
+    void aMessageDeletedForTheViewerGoesOutBlank() {
+        Message hidden = change("6803a1f2c4e5b61a2f9d0c31", CURSOR_AT.plusSeconds(1), "đã xoá");
+        hidden.setHiddenFor(List.of("u3", "u1"));
+        when(messageRepository.findDirectChanges(eq("u1"), eq("u2"), any(), eq(100)))
+                .thenAnswer(invocation -> invocation.getArgument(2).equals(CURSOR) ? List.of(hidden) : List.of());
+
+        syncService.stream("u1", request("u2"));
+
+        ArgumentCaptor<SyncBatchResponse> batch = ArgumentCaptor.forClass(SyncBatchResponse.class);
+        verify(webSocketService).sendSyncBatch(eq("u1"), batch.capture());
+        MessageResponse row = batch.getValue().getMessages().get(0);
+        assertEquals(hidden.getId(), row.getId());
+        assertNull(row.getContent());
+        assertEquals(List.of("u1"), row.getDeletedByUsers());
+        verify(messageService, never()).convertToHistoryResponse(hidden);
+    }
+
+    private static SyncRequest request(String otherUserId) {
+        SyncRequest.ConversationCursor conversation = new SyncRequest.ConversationCursor();
+        conversation.setOtherUserId(otherUserId);
+        conversation.setCursor(CURSOR.encode());
+        SyncRequest request = new SyncRequest();
+        request.setConversations(List.of(conversation));
+        return request;
+    }
+
+    private static Message change(String id, LocalDateTime updatedAt, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId("u2");
+        message.setReceiverId("u1");
+        message.setContent(content);
+        message.setCreatedAt(updatedAt);
+        message.setUpdatedAt(updatedAt);
+        return message;
+    }
+}
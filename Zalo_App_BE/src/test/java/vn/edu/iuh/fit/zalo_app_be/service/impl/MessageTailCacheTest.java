@@ -0,0 +1,87 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTailCacheTest {
+
+    private MessageResponse message(String id) {
+        return MessageResponse.builder().id(id).content(id).createAt(LocalDateTime.now()).build();
+    }
+
+    @Test
+    void servesFirstPageOnlyAfterSeeding() {
+        MessageTailCache cache = new MessageTailCache(3, 10, 30, "local", new SimpleMeterRegistry());
+
+        cache.append("c1", message("m0"));
+        assertTrue(cache.latest("c1", 2, null).isEmpty());
+
+        cache.seed("c1", List.of(message("m1"), message("m2")), false, cache.beginLoad());
+        cache.append("c1", message("m3"));
+        cache.append("c1", message("m4"));
+
+        Optional<MessageTailCache.TailSlice> slice = cache.latest("c1", 2, null);
+        assertTrue(slice.isPresent());
+        assertEquals(List.of("m3", "m4"), slice.get().messages().stream().map(MessageResponse::getId).toList());
+        assertTrue(slice.get().hasOlder());
+
+        // m1 fell out of the ring buffer, so a page larger than the tail has to go to the database
+        assertTrue(cache.latest("c1", 5, null).isEmpty());
+    }
+
+    @Test
+    void skipsSeedWhenConversationWasWrittenDuringLoad() {
+        MessageTailCache cache = new MessageTailCache(3, 10, 30, "local", new SimpleMeterRegistry());
+
+        long token = cache.beginLoad();
+        cache.append("c1", message("m1"));
+        cache.seed("c1", List.of(), false, token);
+
+        assertTrue(cache.latest("c1", 1, null).isEmpty());
+    }
+
+    @Test
+    void patchesCachedMessageInPlace() {
+        MessageTailCache cache = new MessageTailCache(3, 10, 30, "local", new SimpleMeterRegistry());
+        cache.seed("c1", List.of(message("m1")), false, cache.beginLoad());
+
+        MessageResponse recalled = message("m1");
+        recalled.setRecalled(true);
+        cache.update("c1", recalled);
+
+        assertTrue(cache.latest("c1", 1, null).orElseThrow().messages().get(0).isRecalled());
+    }
+
+    @Test
+    void skipsMessagesDeletedForTheViewer() {
+        MessageTailCache cache = new MessageTailCache(5, 10, 30, "local", new SimpleMeterRegistry());
+        MessageResponse hidden = message("m2");
+        hidden.setDeletedByUsers(List.of("u1"));
+        cache.seed("c1", List.of(message("m1"), hidden, message("m3")), false, cache.beginLoad());
+
+        MessageTailCache.TailSlice forDeleter = cache.latest("c1", 2, "u1").orElseThrow();
+        assertEquals(List.of("m1", "m3"), forDeleter.messages().stream().map(MessageResponse::getId).toList());
+        assertFalse(forDeleter.hasOlder());
+
+        MessageTailCache.TailSlice forOther = cache.latest("c1", 2, "u2").orElseThrow();
+        assertEquals(List.of("m2", "m3"), forOther.messages().stream().map(MessageResponse::getId).toList());
+        assertTrue(forOther.hasOlder());
+    }
+
+    @Test
+    void staysEmptyWhenOtherNodesWriteToo() {
+        MessageTailCache cache = new MessageTailCache(3, 10, 30, "mongo", new SimpleMeterRegistry());
+
+        cache.seed("c1", List.of(message("m1")), false, cache.beginLoad());
+
+        assertFalse(cache.isEnabled());
+        assertTrue(cache.latest("c1", 1, null).isEmpty());
+    }
+}
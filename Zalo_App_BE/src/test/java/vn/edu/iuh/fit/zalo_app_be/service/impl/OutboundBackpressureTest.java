@@ -0,0 +1,135 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import vn.edu.iuh.fit.zalo_app_be.common.MessageCursor;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OutboundBackpressureTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MessageChannel outbound;
+    private WebSocketSession raw;
+    private WebSocketSession counting;
+    private OutboundBackpressure backpressure;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        outbound = mock(MessageChannel.class);
+        backpressure = new OutboundBackpressure(outbound, true, 2, 4, 10, 5000, List.of("/queue/status"), meterRegistry);
+
+        raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("s1");
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        backpressure.decorate(handler).afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> session = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(session.capture());
+        counting = session.getValue();
+    }
+
+    @Test
+    void coalescesEphemeralEventsWhileBehindAndFlushesOnceDrained() throws Exception {
+        assertNotNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+        assertNotNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+
+        Message<?> older = message("/user/u1/queue/status", "friend-1");
+        Message<?> newer = message("/user/u1/queue/status", "friend-1");
+        assertNull(backpressure.preSend(older, outbound));
+        assertNull(backpressure.preSend(newer, outbound));
+        assertNull(backpressure.preSend(message("/user/u1/queue/status", null), outbound));
+        verifyNoInteractions(outbound);
+
+        counting.sendMessage(new TextMessage("MESSAGE\n\n"));
+        counting.sendMessage(new TextMessage("MESSAGE\n\n"));
+
+        verify(outbound).send(newer);
+        verifyNoMoreInteractions(outbound);
+        assertEquals(1, count("ephemeral", "coalesced"));
+        assertEquals(1, count("ephemeral", "dropped"));
+    }
+
+    @Test
+    void closesASessionThatFallsBehindOnChatWithAResumeCursor() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+        }
+        assertNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+        assertNull(backpressure.preSend(message("/topic/group/g1", null), outbound));
+
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(raw, timeout(1000)).close(status.capture());
+        String reason = status.getValue().getReason();
+        assertTrue(reason.startsWith(OutboundBackpressure.RESUME_REASON_PREFIX));
+        assertNotNull(MessageCursor.decode(reason.substring(OutboundBackpressure.RESUME_REASON_PREFIX.length())));
+        assertEquals(1, count("chat", "disconnected"));
+    }
+
+    @Test
+    void heartbeatsAndReceiptsDoNotCountAsWritten() throws Exception {
+        assertNotNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+        assertNotNull(backpressure.preSend(message("/user/u1/queue/messages", null), outbound));
+        counting.sendMessage(new TextMessage("\n"));
+        counting.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n"));
+
+        assertNull(backpressure.preSend(message("/user/u1/queue/status", "friend-1"), outbound));
+    }
+
+    @Test
+    void framesThatNeverLeaveTheChannelAreNotLeftPending() {
+        // Spring runs a task the executor rejects on the caller, which then fails to write it
+        ExecutorSubscribableChannel rejecting = new ExecutorSubscribableChannel(task -> {
+            throw new RejectedExecutionException("outbound pool saturated");
+        });
+        rejecting.subscribe(frame -> {
+            throw new MessageDeliveryException(frame, "send buffer overflow");
+        });
+        rejecting.addInterceptor(backpressure);
+        ExecutorSubscribableChannel vetoed = new ExecutorSubscribableChannel();
+        vetoed.addInterceptor(backpressure);
+        vetoed.addInterceptor(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                return null;
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(MessageDeliveryException.class, () -> rejecting.send(message("/user/u1/queue/messages", null)));
+            assertFalse(vetoed.send(message("/user/u1/queue/messages", null)));
+        }
+
+        assertNotNull(backpressure.preSend(message("/user/u1/queue/status", "friend-1"), outbound));
+    }
+
+    private double count(String eventClass, String action) {
+        return meterRegistry.get("chat.websocket.backpressure").tag("class", eventClass).tag("action", action).counter().count();
+    }
+
+    private Message<?> message(String destination, String coalesceKey) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setDestination(destination);
+        if (coalesceKey != null) {
+            accessor.setNativeHeader(OutboundBackpressure.COALESCE_KEY_HEADER, coalesceKey);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
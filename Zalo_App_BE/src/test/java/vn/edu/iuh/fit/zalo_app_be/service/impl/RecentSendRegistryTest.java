@@ -0,0 +1,34 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.MessageResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentSendRegistryTest {
+
+    @Test
+    void returnsTheFirstSendForARepeatedClientId() {
+        RecentSendRegistry registry = new RecentSendRegistry(10, new SimpleMeterRegistry());
+        CompletableFuture<MessageResponse> first = new CompletableFuture<>();
+
+        assertNull(registry.claim("u1", "c1", first));
+        assertSame(first, registry.claim("u1", "c1", new CompletableFuture<>()));
+        // Client ids are only unique per sender
+        assertNull(registry.claim("u2", "c1", new CompletableFuture<>()));
+    }
+
+    @Test
+    void releasedSendCanBeClaimedAgain() {
+        RecentSendRegistry registry = new RecentSendRegistry(10, new SimpleMeterRegistry());
+        CompletableFuture<MessageResponse> failed = new CompletableFuture<>();
+        registry.claim("u1", "c1", failed);
+
+        registry.release("u1", "c1", failed);
+
+        assertNull(registry.claim("u1", "c1", new CompletableFuture<>()));
+    }
+}
@@ -0,0 +1,90 @@
+package vn.edu.iuh.fit.zalo_app_be.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import vn.edu.iuh.fit.zalo_app_be.controller.response.UnreadCountResponse;
+import vn.edu.iuh.fit.zalo_app_be.model.UnreadCounter;
+import vn.edu.iuh.fit.zalo_app_be.repository.UnreadCounterRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UnreadCounterServiceImplTest {
+    @Mock
+    private UnreadCounterRepository unreadCounterRepository;
+    @Mock
+    private SimpMessagingTemplate template;
+    @InjectMocks
+    private UnreadCounterServiceImpl unreadCounterService;
+
+    @Test
+    void pushesTheNewCountToEveryRecipientWithACoalesceKey() {
+        List<String> recipients = List.of("u2", "u3");
+        when(unreadCounterRepository.findByConversationIdAndUserIdIn("group:g1", recipients))
+                .thenReturn(List.of(counter("u2", "group:g1", 4), counter("u3", "group:g1", 1)));
+
+        unreadCounterService.onMessageSaved("group:g1", recipients);
+
+        verify(unreadCounterRepository).incrementAll("group:g1", recipients);
+        assertEquals(4, pushed("u2").getUnreadCount());
+        assertEquals(1, pushed("u3").getUnreadCount());
+    }
+
+    @Test
+    void aFailingCounterUpdateDoesNotFailTheSend() {
+        doThrow(new IllegalStateException("mongo down")).when(unreadCounterRepository).incrementAll(any(), any());
+
+        assertDoesNotThrow(() -> unreadCounterService.onMessageSaved("u1_u2", List.of("u2")));
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void skipsMessagesWithoutRecipients() {
+        unreadCounterService.onMessageSaved("group:g1", List.of());
+
+        verifyNoInteractions(unreadCounterRepository, template);
+    }
+
+    @Test
+    void readingAConversationSetsTheRemainingCount() {
+        unreadCounterService.onConversationRead("u1", "u1_u2", 2);
+
+        verify(unreadCounterRepository).setCount("u1", "u1_u2", 2);
+        assertEquals(2, pushed("u1").getUnreadCount());
+    }
+
+    @Test
+    void readingOneMessagePushesTheDecrementedCount() {
+        when(unreadCounterRepository.findByConversationIdAndUserIdIn("u1_u2", List.of("u1")))
+                .thenReturn(List.of(counter("u1", "u1_u2", 0)));
+
+        unreadCounterService.onMessageRead("u1", "u1_u2");
+
+        verify(unreadCounterRepository).decrement("u1", "u1_u2", 1);
+        assertEquals(0, pushed("u1").getUnreadCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private UnreadCountResponse pushed(String userId) {
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<Map<String, Object>> headers = ArgumentCaptor.forClass(Map.class);
+        verify(template).convertAndSendToUser(eq(userId), eq("/queue/unread"), payload.capture(), headers.capture());
+        UnreadCountResponse response = (UnreadCountResponse) payload.getValue();
+        assertEquals(response.getConversationId(), headers.getValue().get(OutboundBackpressure.COALESCE_KEY_HEADER));
+        return response;
+    }
+
+    private static UnreadCounter counter(String userId, String conversationId, long count) {
+        return new UnreadCounter(null, userId, conversationId, count, null);
+    }
+}
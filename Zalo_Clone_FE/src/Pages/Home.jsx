@@ -3,6 +3,7 @@ import React, {
     useEffect,
     useCallback,
     useMemo,
+    useRef,
     Component,
 } from 'react';
 import { ThemeProvider, styled } from '@mui/material/styles';
@@ -133,6 +134,47 @@ const HeaderContainer = styled(Box)(({ theme }) => ({
     borderBottom: '1px solid #e0e0e0',
 }));
 
+// Chuẩn hoá một trang lịch sử từ API thành tin nhắn hiển thị, bỏ các id trùng
+const toChatMessages = (history) => {
+    return history.reduce((acc, msg) => {
+        if (!acc.some((item) => item.id === msg.id)) {
+            let createAt = msg.createAt || msg.createdAt;
+            let parsedDate = new Date(createAt);
+            if (isNaN(parsedDate.getTime())) {
+                console.warn(
+                    'Invalid createAt value in chat history:',
+                    createAt,
+                    'Using current time as fallback',
+                );
+                parsedDate = new Date();
+            } else if (
+                typeof createAt === 'string' &&
+                !createAt.endsWith('Z') &&
+                !createAt.includes('+')
+            ) {
+                createAt = `${createAt}Z`;
+                parsedDate = new Date(createAt);
+            }
+            acc.push({
+                id: msg.id,
+                senderId: msg.senderId,
+                receiverId: msg.receiverId,
+                groupId: msg.groupId,
+                content: msg.content,
+                type: msg.type,
+                createAt: parsedDate.toISOString(),
+                recalled: msg.recalled || false,
+                deletedByUsers: msg.deletedByUsers || [],
+                isRead: msg.isRead || false,
+                // Coerce to boolean to avoid string "false" being truthy
+                isPinned: msg.isPinned === true,
+                isEdited: msg.isEdited || false,
+            });
+        }
+        return acc;
+    }, []);
+};
+
 const Home = () => {
     const location = useLocation();
     const navigate = useNavigate();
@@ -147,6 +189,11 @@ const Home = () => {
     );
     const [selectedContact, setSelectedContact] = useState(null);
     const [messages, setMessages] = useState([]);
+    // Con trỏ để tải trang lịch sử cũ hơn của cuộc trò chuyện đang mở
+    const [historyCursor, setHistoryCursor] = useState(null);
+    const [hasOlderHistory, setHasOlderHistory] = useState(false);
+    const [isLoadingOlder, setIsLoadingOlder] = useState(false);
+    const historyContactRef = useRef(null);
     const [messageInput, setMessageInput] = useState('');
     const [currentView, setCurrentView] = useState('messages');
     const [anchorEl, setAnchorEl] = useState(null);
@@ -792,59 +839,21 @@ const Home = () => {
             ),
         );
 
+        const contactId = selectedContact.id;
+        historyContactRef.current = contactId;
+        setHistoryCursor(null);
+        setHasOlderHistory(false);
+
         const loadChatHistory = async () => {
             try {
-                let chatHistory;
-                if (selectedContact.isGroup) {
-                    chatHistory = await getGroupChatHistory(
-                        selectedContact.id,
-                        token,
-                    );
-                } else {
-                    chatHistory = await getChatHistory(
-                        selectedContact.id,
-                        token,
-                    );
-                }
-                console.log('Chat history loaded:', chatHistory);
-                const uniqueMessages = chatHistory.reduce((acc, msg) => {
-                    if (!acc.some((item) => item.id === msg.id)) {
-                        let createAt = msg.createAt || msg.createdAt;
-                        let parsedDate = new Date(createAt);
-                        if (isNaN(parsedDate.getTime())) {
-                            console.warn(
-                                'Invalid createAt value in chat history:',
-                                createAt,
-                                'Using current time as fallback',
-                            );
-                            parsedDate = new Date();
-                        } else if (
-                            typeof createAt === 'string' &&
-                            !createAt.endsWith('Z') &&
-                            !createAt.includes('+')
-                        ) {
-                            createAt = `${createAt}Z`;
-                            parsedDate = new Date(createAt);
-                        }
-                        acc.push({
-                            id: msg.id,
-                            senderId: msg.senderId,
-                            receiverId: msg.receiverId,
-                            groupId: msg.groupId,
-                            content: msg.content,
-                            type: msg.type,
-                            createAt: parsedDate.toISOString(),
-                            recalled: msg.recalled || false,
-                            deletedByUsers: msg.deletedByUsers || [],
-                            isRead: msg.isRead || false,
-                            // Coerce to boolean to avoid string "false" being truthy
-                            isPinned: msg.isPinned === true,
-                            isEdited: msg.isEdited || false,
-                        });
-                    }
-                    return acc;
-                }, []);
-                setMessages(uniqueMessages);
+                const page = selectedContact.isGroup
+                    ? await getGroupChatHistory(contactId, token)
+                    : await getChatHistory(contactId, token);
+                // Đã chuyển sang cuộc trò chuyện khác trong lúc tải
+                if (historyContactRef.current !== contactId) return;
+                setMessages(toChatMessages(page.messages));
+                setHistoryCursor(page.nextCursor);
+                setHasOlderHistory(page.hasMore);
             } catch (error) {
                 setSnackbarMessage(
                     'Lỗi tải lịch sử tin nhắn: ' +
@@ -857,6 +866,35 @@ const Home = () => {
         loadChatHistory();
     }, [selectedContact, token]);
 
+    // Tải trang tin nhắn cũ hơn khi cuộn lên đầu khung chat
+    const loadOlderMessages = useCallback(async () => {
+        if (!selectedContact || !historyCursor || isLoadingOlder) return;
+        const contactId = selectedContact.id;
+        setIsLoadingOlder(true);
+        try {
+            const page = selectedContact.isGroup
+                ? await getGroupChatHistory(contactId, token, historyCursor)
+                : await getChatHistory(contactId, token, historyCursor);
+            if (historyContactRef.current !== contactId) return;
+            const older = toChatMessages(page.messages);
+            setMessages((prev) => {
+                const known = new Set(prev.map((msg) => msg.id));
+                return [...older.filter((msg) => !known.has(msg.id)), ...prev];
+            });
+            setHistoryCursor(page.nextCursor);
+            setHasOlderHistory(page.hasMore);
+        } catch (error) {
+            setSnackbarMessage(
+                'Lỗi tải tin nhắn cũ hơn: ' +
+                    (error.response?.data?.message || error.message),
+            );
+            setSnackbarSeverity('error');
+            setOpenSnackbar(true);
+        } finally {
+            setIsLoadingOlder(false);
+        }
+    }, [selectedContact, token, historyCursor, isLoadingOlder]);
+
     const handleSendMessage = useCallback(
         (message) => {
             console.log('Sending message:', message);
@@ -1295,6 +1333,9 @@ const Home = () => {
             contacts,
             token,
             onUpdateContact: handleUpdateContact,
+            hasOlderMessages: hasOlderHistory,
+            isLoadingOlder,
+            onLoadOlderMessages: loadOlderMessages,
         }),
         [
             selectedContact,
@@ -1305,6 +1346,9 @@ const Home = () => {
             userId,
             contacts,
             token,
+            hasOlderHistory,
+            isLoadingOlder,
+            loadOlderMessages,
         ],
     );
 
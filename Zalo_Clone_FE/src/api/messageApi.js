@@ -7,27 +7,39 @@ const SOCKJS_URL = '/ws';
 
 let stompClient = null;
 
-// Hàm lấy lịch sử tin nhắn 1-1
-export const getChatHistory = async (userId, token) => {
-    try {
-        const response = await axios.get(
-            `${API_BASE_URL}/chat-history/${userId}`,
-            {
-                headers: {
-                    Authorization: `Bearer ${token}`,
-                },
-            },
-        );
-        const deletedMessageIds = JSON.parse(
-            localStorage.getItem('deletedMessageIds') || '[]',
-        );
-        return response.data
+// Một trang lịch sử (cũ nhất trước). `before` là con trỏ của trang trước đó để tải tin cũ hơn;
+// nextCursor/hasMore cho biết còn tin cũ hơn để tải tiếp hay không
+const fetchHistoryPage = async (url, token, before) => {
+    const response = await axios.get(url, {
+        headers: {
+            Authorization: `Bearer ${token}`,
+        },
+        params: before ? { before } : undefined,
+    });
+    const deletedMessageIds = JSON.parse(
+        localStorage.getItem('deletedMessageIds') || '[]',
+    );
+    return {
+        messages: response.data.messages
             .filter((msg) => !deletedMessageIds.includes(msg._id || msg.id))
             .map((msg) => ({
                 ...msg,
                 id: msg._id || msg.id,
                 _id: undefined,
-            }));
+            })),
+        nextCursor: response.data.beforeCursor || null,
+        hasMore: response.data.hasMore === true,
+    };
+};
+
+// Hàm lấy lịch sử tin nhắn 1-1
+export const getChatHistory = async (userId, token, before = null) => {
+    try {
+        return await fetchHistoryPage(
+            `${API_BASE_URL}/chat-history/${userId}`,
+            token,
+            before,
+        );
     } catch (error) {
         console.error('Error fetching chat history:', error);
         throw error;
@@ -35,26 +47,13 @@ export const getChatHistory = async (userId, token) => {
 };
 
 // Hàm lấy lịch sử tin nhắn nhóm
-export const getGroupChatHistory = async (groupId, token) => {
+export const getGroupChatHistory = async (groupId, token, before = null) => {
     try {
-        const response = await axios.get(
+        return await fetchHistoryPage(
             `${API_BASE_URL}/chat-history/group/${groupId}`,
-            {
-                headers: {
-                    Authorization: `Bearer ${token}`,
-                },
-            },
+            token,
+            before,
         );
-        const deletedMessageIds = JSON.parse(
-            localStorage.getItem('deletedMessageIds') || '[]',
-        );
-        return response.data
-            .filter((msg) => !deletedMessageIds.includes(msg._id || msg.id))
-            .map((msg) => ({
-                ...msg,
-                id: msg._id || msg.id,
-                _id: undefined,
-            }));
     } catch (error) {
         console.error('Error fetching group chat history:', error);
         throw error;
@@ -1,4 +1,10 @@
-import React, { useEffect, useState, useRef, useMemo } from 'react';
+import React, {
+    useEffect,
+    useLayoutEffect,
+    useState,
+    useRef,
+    useMemo,
+} from 'react';
 import {
     Box,
     Avatar,
@@ -125,6 +131,9 @@ const ChatWindow = ({
     contacts,
     token,
     onUpdateContact,
+    hasOlderMessages,
+    isLoadingOlder,
+    onLoadOlderMessages,
 }) => {
     const [localMessages, setLocalMessages] = useState(messages);
     const [isSending, setIsSending] = useState(false);
@@ -142,6 +151,9 @@ const ChatWindow = ({
     const fileInputRef = useRef(null);
     const documentInputRef = useRef(null);
     const messagesEndRef = useRef(null);
+    const messagesBoxRef = useRef(null);
+    // Vị trí cuộn trước khi chèn trang tin cũ hơn lên đầu, để giữ nguyên tin đang xem
+    const scrollAnchorRef = useRef(null);
     const [isFriendModalOpen, setIsFriendModalOpen] = useState(false);
     const [profileData, setProfileData] = useState(null);
     const [showSearchBar, setShowSearchBar] = useState(false);
@@ -218,6 +230,34 @@ const ChatWindow = ({
         });
     }, [messages, syncedPinnedIds]);
 
+    useLayoutEffect(() => {
+        const box = messagesBoxRef.current;
+        const anchor = scrollAnchorRef.current;
+        if (!box || !anchor) return;
+        scrollAnchorRef.current = null;
+        box.scrollTop =
+            box.scrollHeight - anchor.scrollHeight + anchor.scrollTop;
+    }, [localMessages]);
+
+    // Trang đầu chưa đủ dài để cuộn thì không có sự kiện cuộn, tải tiếp ngay
+    useEffect(() => {
+        const box = messagesBoxRef.current;
+        if (!box || !hasOlderMessages || isLoadingOlder) return;
+        if (box.scrollHeight <= box.clientHeight) {
+            onLoadOlderMessages?.();
+        }
+    }, [localMessages, hasOlderMessages, isLoadingOlder, onLoadOlderMessages]);
+
+    const handleMessagesScroll = (event) => {
+        const box = event.currentTarget;
+        if (box.scrollTop > 50 || !hasOlderMessages || isLoadingOlder) return;
+        scrollAnchorRef.current = {
+            scrollHeight: box.scrollHeight,
+            scrollTop: box.scrollTop,
+        };
+        onLoadOlderMessages?.();
+    };
+
     // Tách riêng useEffect để đánh dấu tin nhắn đã đọc
     useEffect(() => {
         if (!selectedContact || selectedContact.isGroup || !token) return;
@@ -1178,11 +1218,18 @@ const ChatWindow = ({
                 )}
 
                 <Box
+                    ref={messagesBoxRef}
+                    onScroll={handleMessagesScroll}
                     flex={1}
                     overflow="auto"
                     p={2}
                     sx={{ bgcolor: '#f0f0f0', position: 'relative' }}
                 >
+                    {isLoadingOlder && (
+                        <Box display="flex" justifyContent="center" my={1}>
+                            <CircularProgress size={20} />
+                        </Box>
+                    )}
                     {isSending && (
                         <Box display="flex" justifyContent="center" my={2}>
                             <CircularProgress size={24} />